@@ -3,137 +3,704 @@ package Controller;
 import Model.Account;
 import Model.Message;
 
+import DAO.MessageSink;
+import DAO.Storage;
 import Service.AccountService;
 import Service.MessageService;
+import Util.AppConfig;
+import Util.ConnectionUtil;
+import Util.JsonCodec;
+import Util.Metrics;
+import Util.RateLimiter;
 
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.javalin.Javalin;
+import io.javalin.compression.Brotli;
+import io.javalin.compression.CompressionStrategy;
+import io.javalin.compression.Gzip;
+import io.javalin.config.JavalinConfig;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.ForbiddenResponse;
+import io.javalin.http.Handler;
+import io.javalin.http.HandlerType;
+import io.javalin.http.HttpResponseException;
+import io.javalin.http.ServiceUnavailableResponse;
+import io.javalin.http.UnauthorizedResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 
 public class SocialMediaController {
 
+    // Largest page a client may ask for with ?limit=
+    private static final int MAX_PAGE_LIMIT = AppConfig.getInt("api.page.maxLimit", 1000);
+    // Largest number of messages accepted by one POST /messages/batch
+    private static final int MAX_BATCH_SIZE = AppConfig.getInt("api.batch.maxSize", 1000);
+    // Answer listing requests carrying If-None-Match / If-Modified-Since with 304 when the listing has not changed
+    private static final boolean CONDITIONAL_LISTINGS = AppConfig.getBoolean("api.conditionalGet.enabled", true);
+    // Response compression: gzip, brotli (needs jvm-brotli on the classpath, otherwise gzip is used) or none
+    private static final String COMPRESSION = AppConfig.getString("api.compression", "gzip");
+    // Responses smaller than this are sent uncompressed
+    private static final int COMPRESSION_MIN_SIZE = AppConfig.getInt("api.compression.minSize", 1500);
+    private static final int COMPRESSION_LEVEL = AppConfig.getInt("api.compression.level", 6);
+    // Answer message writes that carry no session token with 401, instead of accepting them as before sessions
+    private static final boolean SESSION_REQUIRED = AppConfig.getBoolean("auth.session.required", false);
+
+    // Response header carrying the token of a new session, and the request header it may be sent back in, as an
+    // alternative to Authorization: Bearer
+    private static final String SESSION_HEADER = "X-Session-Token";
+
+    // Per-client rate limits applied with ratelimit.enabled, as METHOD path=rate/burst: each client may send burst
+    // requests to the route at once and then rate per second
+    private static final String DEFAULT_RATE_LIMITS = "POST /login=5/10,POST /register=1/5,POST /messages=20/40,"
+            + "POST /messages/batch=2/5,PATCH /messages/{message_id}=20/40,DELETE /messages/{message_id}=20/40";
+
+    private static final String METRICS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // Hands the future of an asynchronous reply from reply() back to instrument() on the same request thread, so the
+    // request can be timed to its real end; one reusable holder per thread, so nothing is allocated per request
+    private static final ThreadLocal<PendingReply> PENDING_REPLY = ThreadLocal.withInitial(PendingReply::new);
+
+    private static final class PendingReply {
+        CompletableFuture<?> future;
+    }
+
     AccountService accountService;
     MessageService messageService;
 
+    // Bounds the requests doing database work at the same time, or null when unlimited
+    // Without it every request thread may be waiting on the connection pool at once, so this is what stops a burst of
+    // requests from piling up on the connection pool and the database
+    private Semaphore inFlight;
+    private long inFlightTimeoutMillis;
+
+    // Page size applied to listings requested without any paging parameters, so that no response is unbounded;
+    // 0 returns every row, as before paging
+    private int defaultPageLimit;
+
+    // Write unpaged listings to the response row by row instead of building the whole list first
+    private boolean streamListings;
+
+    // Both services work on the DAOs of one storage engine, so that they see each other's writes
     public SocialMediaController () {
-        this.accountService = new AccountService();
-        this.messageService = new MessageService();
+        Storage storage = Storage.open();
+        this.accountService = new AccountService(storage.getAccountDAO());
+        this.messageService = new MessageService(storage.getMessageDAO());
     }
 
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        // Size of the request thread pool, 0 for Javalin's default
+        int maxThreads = AppConfig.getInt("server.maxThreads", 0);
+
+        // With the database executor enabled, its threads and queue bound the database work instead: a handler
+        // returns as soon as it has handed its call to the executor, so a permit held by the handler would bound nothing
+        int maxInFlight = AppConfig.getInt("db.maxInFlight", 0);
+        this.inFlight = maxInFlight > 0 && ConnectionUtil.getDbExecutor() == null ? new Semaphore(maxInFlight) : null;
+        this.inFlightTimeoutMillis = AppConfig.getLong("db.maxInFlight.timeoutMillis", 1000);
+        this.defaultPageLimit = Math.min(AppConfig.getInt("api.page.defaultLimit", MAX_PAGE_LIMIT), MAX_PAGE_LIMIT);
+        this.streamListings = AppConfig.getBoolean("api.json.streaming", false);
+
+        Javalin app = Javalin.create(config -> {
+            config.jsonMapper(JsonCodec.javalinMapper());
+            if (maxThreads > 0) {
+                config.jetty.server(() -> new Server(new QueuedThreadPool(maxThreads, Math.min(8, maxThreads), 60_000)));
+            }
+            configureCompression(config);
+        });
+
+        limitRates(app);
+
+        // A saturated database or password hashing executor turns work away rather than queueing it without bound
+        app.exception(RejectedExecutionException.class, (e, ctx) -> ctx.status(503).result("server busy"));
 
         // Routes for account and message operations
-        app.post("/register", this::registerAccountHandler);
-        app.post("/login", this::loginAccountHandler);
-        app.post("/messages", this::createMessageHandler);
-        app.get("/messages", this::getAllMessagesHandler);
-        app.get("/messages/{message_id}", this::getMessageHandler);
-        app.delete("/messages/{message_id}", this::deleteMessageHandler);
-        app.patch("/messages/{message_id}", this::updateMessageHandler);
-        app.get("/accounts/{account_id}/messages", this::getMessageForUserHandler);
+        endpoint(app, HandlerType.POST, "/register", this::registerAccountHandler);
+        endpoint(app, HandlerType.POST, "/login", this::loginAccountHandler);
+        endpoint(app, HandlerType.POST, "/logout", this::logoutHandler);
+        endpoint(app, HandlerType.POST, "/messages", this::createMessageHandler);
+        endpoint(app, HandlerType.POST, "/messages/batch", this::createMessagesHandler);
+        endpoint(app, HandlerType.GET, "/messages", this::getAllMessagesHandler);
+        endpoint(app, HandlerType.GET, "/messages/{message_id}", this::getMessageHandler);
+        endpoint(app, HandlerType.DELETE, "/messages/{message_id}", this::deleteMessageHandler);
+        endpoint(app, HandlerType.PATCH, "/messages/{message_id}", this::updateMessageHandler);
+        endpoint(app, HandlerType.GET, "/accounts/{account_id}/messages", this::getMessageForUserHandler);
+
+        // Prometheus scrape endpoint
+        if (AppConfig.getBoolean("api.metrics.enabled", true)) {
+            app.get("/metrics", ctx -> ctx.contentType(METRICS_CONTENT_TYPE).result(Metrics.scrape()));
+        }
 
         return app;
     }
 
-    // Handle user registration
-    private void registerAccountHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
-        Account addedAccount = accountService.addAccount(account);
+    // Adds a before-handler per rate limited route, with its own limiter, when ratelimit.enabled is set
+    // Requests are limited per account when they carry a valid session token and per client address otherwise, and
+    // one over the limit is answered with 429 and a Retry-After of the seconds until it would be allowed, before any
+    // database or hashing work is done for it
+    private void limitRates(Javalin app) {
+        if (!AppConfig.getBoolean("ratelimit.enabled", false)) {
+            return;
+        }
+        int maxKeys = AppConfig.getInt("ratelimit.maxKeys", 1000000);
+        String rules = AppConfig.getString("ratelimit.routes", DEFAULT_RATE_LIMITS);
+        for (String rule : rules.split(",")) {
+            HandlerType type;
+            String path;
+            RateLimiter limiter;
+            try {
+                String[] routeAndLimit = rule.trim().split("=");
+                String[] methodAndPath = routeAndLimit[0].trim().split("\\s+");
+                String[] rateAndBurst = routeAndLimit[1].trim().split("/");
+                type = HandlerType.valueOf(methodAndPath[0]);
+                path = methodAndPath[1];
+                limiter = new RateLimiter(Double.parseDouble(rateAndBurst[0]), Integer.parseInt(rateAndBurst[1]),
+                        maxKeys);
+            }
+            catch (RuntimeException e) {
+                System.out.println("Ignoring invalid value for ratelimit.routes: " + rule.trim());
+                continue;
+            }
+            String labels = "method=\"" + Metrics.escape(type.name()) + "\",route=\"" + Metrics.escape(path) + "\"";
+            Metrics.counter("ratelimit_allowed_total", "Requests let through by the route's rate limiter.", labels,
+                    limiter::getAllowed);
+            Metrics.counter("ratelimit_rejected_total", "Requests answered with 429 by the route's rate limiter.", labels,
+                    limiter::getRejected);
+            Metrics.counter("ratelimit_overflow_total",
+                    "Requests limited by the shared overflow bucket because the limiter held ratelimit.maxKeys clients.",
+                    labels, limiter::getOverflowed);
+            Metrics.gauge("ratelimit_keys", "Clients with a bucket in the route's rate limiter.", labels, limiter::size);
+            app.before(path, ctx -> {
+                if (ctx.method() == type) {
+                    checkRate(ctx, limiter);
+                }
+            });
+        }
+    }
 
-        if (addedAccount != null) {
-            ctx.json(addedAccount).status(200);
+    private void checkRate(Context ctx, RateLimiter limiter) {
+        long waitNanos = limiter.acquire(rateKey(ctx));
+        if (waitNanos > 0) {
+            ctx.header("Retry-After", Long.toString(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999))));
+            throw new HttpResponseException(429, "too many requests");
         }
-        else {
-            ctx.status(400);
+    }
+
+    // The account of the request's session, or the client address when it has no valid token
+    private String rateKey(Context ctx) {
+        String token = sessionToken(ctx);
+        Integer account_id = token != null ? accountService.authenticate(token) : null;
+        return account_id != null ? "account:" + account_id : "address:" + ctx.ip();
+    }
+
+    // Compresses responses of at least api.compression.minSize bytes for clients that accept it
+    // Listings are the large responses; single messages and accounts stay under the threshold and go out as they are
+    private static void configureCompression(JavalinConfig config) {
+        String compression = COMPRESSION;
+        if (compression.equals("brotli") && !brotliAvailable()) {
+            System.out.println("api.compression is brotli but jvm-brotli is not on the classpath, using gzip");
+            compression = "gzip";
         }
+        CompressionStrategy strategy;
+        switch (compression) {
+            case "none":
+                strategy = CompressionStrategy.NONE;
+                break;
+            case "brotli":
+                strategy = new CompressionStrategy(new Brotli(Math.min(COMPRESSION_LEVEL, 11)), new Gzip(COMPRESSION_LEVEL));
+                break;
+            default:
+                strategy = new CompressionStrategy(null, new Gzip(COMPRESSION_LEVEL));
+                break;
+        }
+        strategy.setMinSizeForCompression(COMPRESSION_MIN_SIZE);
+        config.compression.custom(strategy);
     }
 
-    // Handle user login
-    private void loginAccountHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
-        Account addedAccount = accountService.loginAccount(account);
+    private static boolean brotliAvailable() {
+        try {
+            Class.forName("com.nixxcode.jvmbrotli.common.BrotliLoader");
+            return true;
+        }
+        catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    // Registers a route whose requests are counted and timed for /metrics and subject to the in-flight limit
+    private void endpoint(Javalin app, HandlerType type, String path, Handler handler) {
+        app.addHandler(type, path, instrument(Metrics.route(type.name(), path), limitInFlight(handler)));
+    }
 
-        if (addedAccount != null) {
-            ctx.json(addedAccount).status(200);
+    // Wraps a handler so that every request is recorded in the route's metrics with its status and latency
+    // A request answered asynchronously through reply() is recorded when its future completes
+    private Handler instrument(Metrics.Route metrics, Handler handler) {
+        return ctx -> {
+            long started = System.nanoTime();
+            PendingReply pending = PENDING_REPLY.get();
+            pending.future = null;
+            try {
+                handler.handle(ctx);
+            }
+            catch (Exception e) {
+                pending.future = null;
+                metrics.record(statusOf(e), System.nanoTime() - started);
+                throw e;
+            }
+            CompletableFuture<?> future = pending.future;
+            if (future == null) {
+                metrics.record(ctx.statusCode(), System.nanoTime() - started);
+                return;
+            }
+            pending.future = null;
+            future.whenComplete((result, error) ->
+                    metrics.record(error == null ? ctx.statusCode() : statusOf(error), System.nanoTime() - started));
+        };
+    }
+
+    // The status Javalin will answer a failed request with
+    private static int statusOf(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof HttpResponseException) {
+            return ((HttpResponseException) cause).getStatus();
+        }
+        return cause instanceof RejectedExecutionException ? 503 : 500;
+    }
+
+    // Wraps a handler so that it waits for one of the db.maxInFlight permits before running
+    // A request that cannot get a permit within db.maxInFlight.timeoutMillis is answered with 503
+    private Handler limitInFlight(Handler handler) {
+        return ctx -> {
+            if (inFlight == null) {
+                handler.handle(ctx);
+                return;
+            }
+            boolean acquired;
+            try {
+                acquired = inFlight.tryAcquire(inFlightTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+            if (!acquired) {
+                throw new ServiceUnavailableResponse("too many requests in progress");
+            }
+            try {
+                handler.handle(ctx);
+            }
+            finally {
+                inFlight.release();
+            }
+        };
+    }
+
+    // Sends the response once the service call completes
+    // A call that already completed, which is always the case without the database executor, is answered on the
+    // request thread as before; otherwise the request is suspended with ctx.future and the request thread is freed
+    private <T> void reply(Context ctx, CompletableFuture<T> result, Consumer<T> respond) {
+        if (result.isDone() && !result.isCompletedExceptionally()) {
+            respond.accept(result.join());
         }
         else {
-            ctx.status(401);
+            CompletableFuture<Void> done = result.thenAccept(respond);
+            PENDING_REPLY.get().future = done;
+            ctx.future(() -> done);
         }
     }
 
-    // Handle creating a new message
-    private void createMessageHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Message message = mapper.readValue(ctx.body(), Message.class);
-        Message addedMessage = messageService.addMessage(message);
+    // Answers 304 Not Modified, without running the query, when the client's copy of a listing is still current;
+    // otherwise adds the listing's validators to the response and returns false
+    // The validators are read before the query runs, so a write that lands while it runs can only make the client
+    // fetch the listing again next time, never keep a stale copy
+    private boolean notModified(Context ctx, Integer account_id) {
+        if (!CONDITIONAL_LISTINGS) {
+            return false;
+        }
+        String etag = messageService.getListingETag(account_id);
+        long lastModified = messageService.getListingLastModified(account_id) / 1000;
+        ctx.header("ETag", etag);
+        ctx.header("Cache-Control", "no-cache");
+        // Last-Modified has one second resolution, so it is only sent once the second of the last change is over;
+        // otherwise a second change within that second would go unnoticed by If-Modified-Since
+        if (System.currentTimeMillis() / 1000 > lastModified) {
+            ctx.header("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                    ZonedDateTime.ofInstant(Instant.ofEpochSecond(lastModified), ZoneOffset.UTC)));
+        }
 
-        if (addedMessage != null) {
-            ctx.json(addedMessage).status(200);
+        String ifNoneMatch = ctx.header("If-None-Match");
+        String ifModifiedSince = ctx.header("If-Modified-Since");
+        boolean current;
+        if (ifNoneMatch != null) {
+            current = etagMatches(ifNoneMatch, etag);
+        }
+        else if (ifModifiedSince != null) {
+            current = lastModified <= parseHttpDate(ifModifiedSince);
         }
         else {
-            ctx.status(400);
+            current = false;
         }
+        if (current) {
+            ctx.status(304);
+        }
+        return current;
     }
 
-     // Handle fetching all messages
-    private void getAllMessagesHandler(Context ctx) throws JsonProcessingException {
-        List<Message> messages = messageService.getAllMessages();
-        ctx.json(messages);
+    // Weak comparison of an If-None-Match list against the listing's ETag, as RFC 9110 requires for GET
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || (candidate.startsWith("W/") ? candidate.substring(2) : candidate).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    // Handle fetching a specific message by ID
-    private void getMessageHandler(Context ctx) throws JsonProcessingException {
-        int message_id = Integer.parseInt(ctx.pathParam("message_id"));
-        Message message = messageService.getMessage(message_id);
-            
-        if (message != null) {
-            ctx.json(message);
+    // Returns the epoch second of an HTTP date, or -1 if it cannot be parsed, which never matches
+    private static long parseHttpDate(String value) {
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
         }
-        else {
-            ctx.result("");
+        catch (DateTimeParseException e) {
+            return -1;
         }
     }
 
-    // Handle deleting a message by ID
-    private void deleteMessageHandler(Context ctx) throws JsonProcessingException {
-        int message_id = Integer.parseInt(ctx.pathParam("message_id"));
-        Message message = messageService.deleteMessage(message_id);
+    // Returns the session token a request carries, as Authorization: Bearer <token> or X-Session-Token, or null
+    private static String sessionToken(Context ctx) {
+        String authorization = ctx.header("Authorization");
+        if (authorization != null && authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return authorization.substring(7).trim();
+        }
+        return ctx.header(SESSION_HEADER);
+    }
 
-        if (message != null) {
-            ctx.json(message);
+    // Returns the account_id of the request's session, or null when it carries no token and none is required
+    // The token is checked against the in-memory session store only; an unknown or expired one is answered with 401
+    private Integer authenticatedAccount(Context ctx) {
+        String token = sessionToken(ctx);
+        if (token == null) {
+            if (SESSION_REQUIRED) {
+                throw new UnauthorizedResponse("session token required");
+            }
+            return null;
         }
-        else {
-            ctx.result("");
+        Integer account_id = accountService.authenticate(token);
+        if (account_id == null) {
+            throw new UnauthorizedResponse("unknown or expired session token");
+        }
+        return account_id;
+    }
+
+    // Checks a message to be created against the request's session: a message without posted_by is posted by the
+    // session's account, and one posted by any other account is answered with 403
+    private static void checkAuthor(Message message, Integer account_id) {
+        if (account_id == null || message == null) {
+            return;
+        }
+        if (message.getPosted_by() == 0) {
+            message.setPosted_by(account_id);
         }
+        else if (message.getPosted_by() != account_id) {
+            throw new ForbiddenResponse("posted_by is not the session's account");
+        }
+    }
+
+    // Completes a write to an existing message that, when the request has a session, was limited to the session's
+    // account's messages in its own statement. Only a write that changed nothing looks the message up, so that
+    // another account's message is answered with 403 rather than as a missing one
+    private CompletableFuture<Message> ownedBy(Integer account_id, int message_id, CompletableFuture<Message> write) {
+        if (account_id == null) {
+            return write;
+        }
+        return write.thenCompose(written -> written != null ? CompletableFuture.completedFuture(written)
+                : messageService.getMessageAsync(message_id).thenApply(message -> {
+                    if (message != null && message.getPosted_by() != account_id) {
+                        throw new ForbiddenResponse("message belongs to another account");
+                    }
+                    return null;
+                }));
+    }
+
+    // Handle user registration
+    private void registerAccountHandler(Context ctx) throws IOException {
+        Account account = JsonCodec.readAccount(ctx.bodyInputStream());
+        reply(ctx, accountService.addAccountAsync(account), addedAccount -> {
+            if (addedAccount != null) {
+                ctx.json(addedAccount).status(200);
+            }
+            else {
+                ctx.status(400);
+            }
+        });
+    }
+
+    // Handle user login
+    private void loginAccountHandler(Context ctx) throws IOException {
+        Account account = JsonCodec.readAccount(ctx.bodyInputStream());
+        reply(ctx, accountService.loginAccountAsync(account), addedAccount -> {
+            if (addedAccount != null) {
+                // the body stays the account; the token of the new session goes in a header
+                String token = accountService.startSession(addedAccount);
+                if (token != null) {
+                    ctx.header(SESSION_HEADER, token);
+                }
+                ctx.json(addedAccount).status(200);
+            }
+            else {
+                ctx.status(401);
+            }
+        });
+    }
+
+    // Handle user logout: ends the session of the request's token, if it has one
+    private void logoutHandler(Context ctx) {
+        String token = sessionToken(ctx);
+        if (token != null) {
+            accountService.endSession(token);
+        }
+        ctx.status(204);
+    }
+
+    // Handle creating a new message
+    private void createMessageHandler(Context ctx) throws IOException {
+        Integer account_id = authenticatedAccount(ctx);
+        Message message = JsonCodec.readMessage(ctx.bodyInputStream());
+        checkAuthor(message, account_id);
+        reply(ctx, messageService.addMessageAsync(message), addedMessage -> {
+            if (addedMessage != null) {
+                ctx.json(addedMessage).status(200);
+            }
+            else {
+                ctx.status(400);
+            }
+        });
+    }
+
+    // Handle creating many messages in one request
+    // The body is a JSON array of messages; the response has one {index, status, message_id} entry per message
+    private void createMessagesHandler(Context ctx) throws IOException {
+        Integer account_id = authenticatedAccount(ctx);
+        List<Message> messages;
+        try {
+            messages = JsonCodec.readMessages(ctx.bodyInputStream());
+        }
+        catch (JsonProcessingException e) {
+            throw new BadRequestResponse("body must be a JSON array of messages");
+        }
+        if (messages == null || messages.isEmpty() || messages.size() > MAX_BATCH_SIZE) {
+            throw new BadRequestResponse("batch must hold between 1 and " + MAX_BATCH_SIZE + " messages");
+        }
+        for (Message message : messages) {
+            checkAuthor(message, account_id);
+        }
+        reply(ctx, messageService.addMessagesAsync(messages, account_id), results -> ctx.json(results).status(200));
+    }
+
+    // Handle fetching all messages, optionally one page at a time
+    // Streamed listings write to the response while the rows are read, so they stay on the request thread
+    private void getAllMessagesHandler(Context ctx) throws IOException {
+        PageRequest page = PageRequest.from(ctx, defaultPageLimit);
+        if (notModified(ctx, null)) {
+            return;
+        }
+        if (page == null && streamListings) {
+            streamMessages(ctx, sink -> messageService.streamAllMessages(sink));
+            return;
+        }
+        if (page == null) {
+            reply(ctx, messageService.getAllMessagesAsync(), messages -> ctx.json(messages));
+            return;
+        }
+        reply(ctx, messageService.getAllMessagesAsync(page.after, page.before, page.limit), messages -> {
+            page.writeCursors(ctx, messages);
+            ctx.json(messages);
+        });
+    }
+
+    // Handle fetching a specific message by ID
+    private void getMessageHandler(Context ctx) throws IOException {
+        int message_id = Integer.parseInt(ctx.pathParam("message_id"));
+        reply(ctx, messageService.getMessageAsync(message_id), message -> {
+            if (message != null) {
+                ctx.json(message);
+            }
+            else {
+                ctx.result("");
+            }
+        });
+    }
+
+    // Handle deleting a message by ID
+    private void deleteMessageHandler(Context ctx) throws IOException {
+        int message_id = Integer.parseInt(ctx.pathParam("message_id"));
+        Integer account_id = authenticatedAccount(ctx);
+        reply(ctx, ownedBy(account_id, message_id, messageService.deleteMessageAsync(message_id, account_id)), message -> {
+            if (message != null) {
+                ctx.json(message);
+            }
+            else {
+                ctx.result("");
+            }
+        });
     }
 
     // Handle updating a message by ID
-    private void updateMessageHandler(Context ctx) throws JsonProcessingException {
+    private void updateMessageHandler(Context ctx) throws IOException {
         int message_id = Integer.parseInt(ctx.pathParam("message_id"));
-        ObjectMapper mapper = new ObjectMapper();
-        Message message = mapper.readValue(ctx.body(), Message.class);
-        Message updatedMessage = messageService.modifyMessage(message.getMessage_text(), message_id);
+        Integer account_id = authenticatedAccount(ctx);
+        Message message = JsonCodec.readMessage(ctx.bodyInputStream());
+        reply(ctx, ownedBy(account_id, message_id,
+                messageService.modifyMessageAsync(message.getMessage_text(), message_id, account_id)), updatedMessage -> {
+            if (updatedMessage != null) {
+                ctx.json(updatedMessage).status(200);
+            }
+            else {
+                ctx.status(400);
+            }
+        });
+    }
 
-        if (updatedMessage != null) {
-            ctx.json(mapper.writeValueAsString(updatedMessage)).status(200);
+    // Handle fetching all messages for a specific user, optionally one page at a time
+    private void getMessageForUserHandler(Context ctx) throws IOException {
+        int account_id = Integer.parseInt(ctx.pathParam("account_id"));
+        PageRequest page = PageRequest.from(ctx, defaultPageLimit);
+        if (notModified(ctx, account_id)) {
+            return;
         }
-        else {
-            ctx.status(400);
+        if (page == null && streamListings) {
+            streamMessages(ctx, sink -> messageService.streamMessages(account_id, sink));
+            return;
+        }
+        if (page == null) {
+            reply(ctx, messageService.getMessagesAsync(account_id), messages -> ctx.json(messages).status(200));
+            return;
         }
+        reply(ctx, messageService.getMessagesAsync(account_id, page.after, page.before, page.limit), messages -> {
+            page.writeCursors(ctx, messages);
+            ctx.json(messages).status(200);
+        });
     }
 
-    // Handle fetching all messages for a specific user
-    private void getMessageForUserHandler(Context ctx) throws JsonProcessingException {
-        int account_id = Integer.parseInt(ctx.pathParam("account_id"));
-        List<Message> messages = messageService.getMessages(account_id);
-        ctx.json(messages).status(200);
+    // Writes a JSON array of messages straight to the response as the query produces them
+    // The output is identical to ctx.json(List<Message>), but neither the list nor the full JSON text is ever held
+    // The array is only closed once the query has finished. If it fails, the generator is left open, since closing
+    // it would end the array: before anything was sent the exception becomes a 500, and once part of the body is out
+    // the connection is aborted, so the client sees a cut-off response, never a shorter listing that looks complete
+    private void streamMessages(Context ctx, MessageQuery query) throws IOException {
+        ctx.contentType(ContentType.APPLICATION_JSON).status(200);
+        JsonGenerator generator = JsonCodec.factory().createGenerator(ctx.outputStream());
+        try {
+            generator.writeStartArray();
+            query.run(message -> JsonCodec.writeMessage(generator, message));
+            generator.writeEndArray();
+        }
+        catch (IOException | RuntimeException e) {
+            if (ctx.res().isCommitted()) {
+                Request.getBaseRequest(ctx.req()).getHttpChannel().abort(e);
+            }
+            throw e;
+        }
+        generator.close();
+    }
+
+    // A service call that streams its messages into a sink
+    private interface MessageQuery {
+        void run(MessageSink sink) throws IOException;
+    }
+
+    // Keyset paging parameters of a listing request: ?limit=N&after=ID or ?limit=N&before=ID
+    // The cursors are message_ids. The response body stays a plain JSON array; the cursors for the neighbouring pages
+    // are returned in the X-Next-Cursor / X-Prev-Cursor headers and as an RFC 8288 Link header
+    private static class PageRequest {
+        final int after;
+        final int before;
+        final int limit;
+
+        PageRequest(int after, int before, int limit) {
+            this.after = after;
+            this.before = before;
+            this.limit = limit;
+        }
+
+        // Returns null when the request asks for the whole, unpaged listing, which needs defaultLimit 0
+        static PageRequest from(Context ctx, int defaultLimit) {
+            String limitParam = ctx.queryParam("limit");
+            String afterParam = ctx.queryParam("after");
+            String beforeParam = ctx.queryParam("before");
+            if (limitParam == null && afterParam == null && beforeParam == null && defaultLimit <= 0) {
+                return null;
+            }
+
+            int limit = limitParam != null ? parse("limit", limitParam) : defaultLimit > 0 ? defaultLimit : MAX_PAGE_LIMIT;
+            if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+                throw new BadRequestResponse("limit must be between 1 and " + MAX_PAGE_LIMIT);
+            }
+            int after = afterParam != null ? parse("after", afterParam) : 0;
+            int before = beforeParam != null ? parse("before", beforeParam) : Integer.MAX_VALUE;
+            return new PageRequest(after, before, limit);
+        }
+
+        private static int parse(String name, String value) {
+            try {
+                return Integer.parseInt(value);
+            }
+            catch (NumberFormatException e) {
+                throw new BadRequestResponse(name + " must be an integer");
+            }
+        }
+
+        // Adds the cursors for the next (newer) and previous (older) pages when such pages may exist
+        void writeCursors(Context ctx, List<Message> messages) {
+            boolean backwards = before < Integer.MAX_VALUE && after <= 0;
+            boolean full = messages.size() == limit;
+            StringBuilder links = new StringBuilder();
+
+            Integer next = null;
+            if (!messages.isEmpty() && (backwards || full)) {
+                next = messages.get(messages.size() - 1).getMessage_id();
+            }
+            if (next != null) {
+                ctx.header("X-Next-Cursor", String.valueOf(next));
+                links.append('<').append(ctx.path()).append("?limit=").append(limit).append("&after=").append(next).append(">; rel=\"next\"");
+            }
+
+            Integer prev = null;
+            if (!messages.isEmpty() && (backwards ? full : after > 0)) {
+                prev = messages.get(0).getMessage_id();
+            }
+            if (prev != null) {
+                ctx.header("X-Prev-Cursor", String.valueOf(prev));
+                if (links.length() > 0) {
+                    links.append(", ");
+                }
+                links.append('<').append(ctx.path()).append("?limit=").append(limit).append("&before=").append(prev).append(">; rel=\"prev\"");
+            }
+
+            if (links.length() > 0) {
+                ctx.header("Link", links.toString());
+            }
+        }
     }
 }
\ No newline at end of file
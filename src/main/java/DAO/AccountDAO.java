@@ -1,75 +1,21 @@
 package DAO;
 
 import Model.Account;
-import Util.ConnectionUtil;
 
-import java.sql.*;
+// Storage of accounts, implemented by JdbcAccountDAO on the relational database and by InMemoryAccountDAO on the
+// in-memory engine; Storage picks one at startup
+public interface AccountDAO {
 
-public class AccountDAO {
+    // Returns whether an account with this username exists
+    Boolean searchUsername(String username);
 
-    // Check if a username exists in the database
-    public Boolean searchUsername(String username) {
-        try (Connection connection = ConnectionUtil.getConnection()) {
-            String sql = "SELECT * FROM account WHERE username = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+    // Creates an account and returns it with its new account_id, or null if the username is blank or taken or the
+    // password is shorter than 4 characters
+    Account insertAccount(String username, String password);
 
-            preparedStatement.setString(1, username);
+    // Returns the account with this username, with its stored password, or null if there is none
+    Account getAccountByUsername(String username);
 
-            ResultSet rs = preparedStatement.executeQuery();
-            if (rs.next()) {
-                return true;
-            }
-        }
-        catch (SQLException e) {
-            System.out.println(e.getMessage());
-        }
-        return false;
-    }
-
-    // Insert a new account with username and password into the database
-    public Account insertAccount(String username, String password) {
-        if (!this.searchUsername(username) && !username.isBlank() && password.length() >= 4) {
-            try (Connection connection = ConnectionUtil.getConnection()) {
-                String sql = "INSERT INTO account(username, password) VALUES(?, ?)";
-                PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-
-                preparedStatement.setString(1, username);
-                preparedStatement.setString(2, password);
-
-                preparedStatement.executeUpdate();
-                ResultSet rs = preparedStatement.getGeneratedKeys();
-                if(rs.next()){
-                    int generated_account_id = (int) rs.getLong(1);
-                    return new Account(generated_account_id, username, password);
-                }
-            }
-            catch (SQLException e) {
-                System.out.println(e.getMessage());
-            }
-        }
-        return null;
-    }
-
-    // Authenticate a user with the given username and password
-    public Account loginAccount(String username, String password) {
-        try (Connection connection = ConnectionUtil.getConnection()) {
-            String sql = "SELECT * FROM account WHERE username = ? AND password = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-
-            preparedStatement.setString(1, username);
-            preparedStatement.setString(2, password);
-
-            ResultSet rs = preparedStatement.executeQuery();
-            while (rs.next()) {
-                Account account = new Account(rs.getInt("account_id"), 
-                                        rs.getString("username"), 
-                                        rs.getString("password"));
-                return account;
-            }
-        }
-        catch (SQLException e) {
-            System.out.println(e.getMessage());
-        }
-        return null;
-    }
-}
\ No newline at end of file
+    // Replaces the stored password of the account, returning false if there is no such account
+    boolean updatePassword(int account_id, String password);
+}
@@ -0,0 +1,270 @@
+package DAO;
+
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Group commit in front of MessageDAO.createMessage, meant for the JDBC engine
+// Concurrent inserts are queued and written by a single writer thread, which collects whatever arrives within a short
+// window after the first insert (or until the batch is full) and writes the lot with one JDBC batch in one transaction.
+// Each caller blocks until its batch has committed and gets back its own message with the generated message_id, so the
+// result is the same as calling createMessage directly, only with one commit per batch instead of one per message
+// The queue is bounded: once it is full, further inserts are written directly, each in its own transaction, so a
+// stalled writer turns into slower inserts rather than an ever growing backlog of waiting callers
+public class GroupCommitWriter implements AutoCloseable {
+
+    // One queued insert and the caller waiting on it
+    private static class PendingInsert {
+        final Message message;
+        final long enqueuedNanos = System.nanoTime();
+        final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        PendingInsert(Message message) {
+            this.message = message;
+        }
+    }
+
+    // Queued by close() to wake the writer and tell it to stop
+    private static final PendingInsert CLOSE = new PendingInsert(null);
+
+    private final MessageDAO messageDAO;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingInsert> queue;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // Metrics for tuning the window and batch size
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    private final LongAccumulator maxBatch = new LongAccumulator(Math::max, 0);
+    private final LongAdder queueDelayNanos = new LongAdder();
+    private final LongAccumulator maxQueueDelayNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+
+    // windowMillis is how long the writer waits for more inserts after the first one of a batch arrives, 0 to write
+    // only what is already queued; maxBatchSize caps the number of messages in one transaction; queueCapacity caps
+    // the number of inserts waiting for the writer
+    public GroupCommitWriter(MessageDAO messageDAO, long windowMillis, int maxBatchSize, int queueCapacity) {
+        if (windowMillis < 0 || maxBatchSize < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Invalid group commit settings: " + windowMillis + "ms, " + maxBatchSize
+                    + ", " + queueCapacity);
+        }
+        this.messageDAO = messageDAO;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.writer = new Thread(this::run, "message-group-commit");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // Queues the message for the next batch and waits for it to commit
+    // Returns the created message, or null if it was rejected or could not be written, as createMessage does
+    public Message createMessage(Message message) {
+        String message_text = message.getMessage_text();
+        if (message_text == null || message_text.isBlank() || message_text.length() >= 256) {
+            return null;
+        }
+        if (closed) {
+            return messageDAO.createMessage(message.getPosted_by(), message_text, message.getTime_posted_epoch());
+        }
+        PendingInsert pending = new PendingInsert(message);
+        if (!queue.offer(pending)) {
+            overflows.increment();
+            return messageDAO.createMessage(message.getPosted_by(), message_text, message.getTime_posted_epoch());
+        }
+        if (closed && queue.remove(pending)) {
+            // the writer may already have stopped; write it directly instead of waiting forever
+            return messageDAO.createMessage(message.getPosted_by(), message_text, message.getTime_posted_epoch());
+        }
+        try {
+            return pending.result.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            System.out.println(e.getCause().getMessage());
+        }
+        return null;
+    }
+
+    // Writer loop: block for the first insert, gather more until the window closes or the batch is full, write
+    private void run() {
+        List<PendingInsert> batch = new ArrayList<>(maxBatchSize);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                PendingInsert first = queue.take();
+                stopping = first == CLOSE;
+                if (!stopping) {
+                    batch.add(first);
+                }
+                long deadline = System.nanoTime() + windowNanos;
+                while (!stopping && batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingInsert next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    stopping = next == CLOSE;
+                    if (!stopping) {
+                        batch.add(next);
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                stopping = true;
+            }
+            write(batch);
+            batch.clear();
+        }
+        // anything queued behind the close marker is still written
+        queue.drainTo(batch);
+        batch.remove(CLOSE);
+        write(batch);
+    }
+
+    // Writes one batch and completes every caller in it
+    private void write(List<PendingInsert> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (PendingInsert pending : batch) {
+            long delay = now - pending.enqueuedNanos;
+            queueDelayNanos.add(delay);
+            maxQueueDelayNanos.accumulate(delay);
+        }
+        batches.increment();
+        messages.add(batch.size());
+        maxBatch.accumulate(batch.size());
+
+        try {
+            // a posted_by with no account would fail the whole batch on the foreign key, so such inserts are
+            // rejected up front, as createMessage would have rejected them one by one
+            Set<Integer> authors = new HashSet<>();
+            for (PendingInsert pending : batch) {
+                authors.add(pending.message.getPosted_by());
+            }
+            Set<Integer> existingAuthors = messageDAO.getExistingAccountIds(authors);
+            List<PendingInsert> valid = new ArrayList<>(batch.size());
+            List<Message> toInsert = new ArrayList<>(batch.size());
+            for (PendingInsert pending : batch) {
+                if (existingAuthors.contains(pending.message.getPosted_by())) {
+                    valid.add(pending);
+                    toInsert.add(pending.message);
+                }
+                else {
+                    pending.result.complete(null);
+                }
+            }
+
+            List<Message> created = messageDAO.createMessages(toInsert);
+            if (created != null) {
+                for (int i = 0; i < valid.size(); i++) {
+                    valid.get(i).result.complete(created.get(i));
+                }
+                return;
+            }
+            // the batch was rolled back; insert one at a time so one bad row cannot fail the others
+            fallbacks.increment();
+            for (PendingInsert pending : valid) {
+                Message message = pending.message;
+                pending.result.complete(messageDAO.createMessage(message.getPosted_by(), message.getMessage_text(),
+                        message.getTime_posted_epoch()));
+            }
+        }
+        catch (RuntimeException e) {
+            for (PendingInsert pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    // Stops the writer after it has written everything already queued
+    // The writer is woken with a marker rather than interrupted, since an interrupt during a write could close the
+    // database's file channel. On a full queue the marker waits for the writer to make room
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(CLOSE);
+            writer.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Number of transactions written
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    // Number of messages written through the group commit
+    public long getMessageCount() {
+        return messages.sum();
+    }
+
+    // Mean number of messages per transaction
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) messages.sum() / count;
+    }
+
+    // Largest number of messages written in one transaction
+    public long getMaxBatchSize() {
+        return maxBatch.get();
+    }
+
+    // Mean time a message waited in the queue before its batch was written, in microseconds
+    public double getAverageQueueDelayMicros() {
+        long count = messages.sum();
+        return count == 0 ? 0 : queueDelayNanos.sum() / 1000.0 / count;
+    }
+
+    // Longest time a message waited in the queue before its batch was written, in microseconds
+    public long getMaxQueueDelayMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxQueueDelayNanos.get());
+    }
+
+    // Number of inserts waiting for the writer
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    // Number of inserts written directly because the queue was full
+    public long getOverflowCount() {
+        return overflows.sum();
+    }
+
+    // Number of batches that failed as a whole and were retried one message at a time
+    public long getFallbackCount() {
+        return fallbacks.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "GroupCommitWriter{batches=" + getBatchCount() + ", messages=" + getMessageCount()
+                + ", avgBatch=" + getAverageBatchSize() + ", maxBatch=" + getMaxBatchSize()
+                + ", avgQueueDelayMicros=" + getAverageQueueDelayMicros()
+                + ", maxQueueDelayMicros=" + getMaxQueueDelayMicros() + ", queueDepth=" + getQueueDepth()
+                + ", overflows=" + getOverflowCount() + '}';
+    }
+}
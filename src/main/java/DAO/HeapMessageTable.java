@@ -0,0 +1,49 @@
+package DAO;
+
+import Model.Message;
+import Util.DenseIntMap;
+
+import java.util.function.Consumer;
+
+// MessageTable holding the Message objects on the heap, in a DenseIntMap
+public class HeapMessageTable implements MessageTable {
+
+    private final DenseIntMap<Message> messages = new DenseIntMap<>();
+
+    @Override
+    public Message get(int message_id) {
+        return messages.get(message_id);
+    }
+
+    @Override
+    public void put(Message message) {
+        messages.put(message.getMessage_id(), message);
+    }
+
+    // Swaps in a copy with the new text, retrying if another update or a delete got in first
+    @Override
+    public Message updateText(int message_id, String message_text, Consumer<Message> beforeApply) {
+        while (true) {
+            Message current = messages.get(message_id);
+            if (current == null) {
+                return null;
+            }
+            Message updated = new Message(message_id, current.getPosted_by(), message_text,
+                    current.getTime_posted_epoch());
+            beforeApply.accept(updated);
+            if (messages.replace(message_id, current, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    @Override
+    public Message remove(int message_id) {
+        return messages.remove(message_id);
+    }
+
+    @Override
+    public int maxKey() {
+        return messages.maxKey();
+    }
+}
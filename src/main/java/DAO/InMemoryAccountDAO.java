@@ -0,0 +1,108 @@
+package DAO;
+
+import Model.Account;
+import Util.LatencyHistogram;
+import Util.Metrics;
+
+// AccountDAO on the in-memory storage engine
+// Usernames are looked up in the store's username index; the index is also what keeps usernames unique, since an
+// account is only created after its username has been claimed in it. Callers get copies of the stored accounts
+public class InMemoryAccountDAO implements AccountDAO {
+
+    // Call count and duration of each DAO method, exported by /metrics under the same names as the JDBC engine's
+    private static final LatencyHistogram SEARCH_USERNAME_TIMER = Metrics.dbTimer("AccountDAO", "searchUsername");
+    private static final LatencyHistogram INSERT_ACCOUNT_TIMER = Metrics.dbTimer("AccountDAO", "insertAccount");
+    private static final LatencyHistogram GET_BY_USERNAME_TIMER = Metrics.dbTimer("AccountDAO", "getAccountByUsername");
+    private static final LatencyHistogram UPDATE_PASSWORD_TIMER = Metrics.dbTimer("AccountDAO", "updatePassword");
+
+    private final InMemoryStore store;
+
+    public InMemoryAccountDAO(InMemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public Boolean searchUsername(String username) {
+        long started = System.nanoTime();
+        try {
+            return username != null && store.usernames.containsKey(username);
+        }
+        finally {
+            SEARCH_USERNAME_TIMER.recordSince(started);
+        }
+    }
+
+    // Claims the username first and only then publishes the account under its new id. On a persistent store the
+    // account is logged before the claim, and the log's lock keeps a second registration of the name from starting
+    // before the first is claimed
+    @Override
+    public Account insertAccount(String username, String password) {
+        if (!username.isBlank() && password.length() >= 4 && !store.usernames.containsKey(username)) {
+            long started = System.nanoTime();
+            try {
+                return InMemoryMessageDAO.write(store, () -> {
+                    if (store.log != null && store.usernames.containsKey(username)) {
+                        return null;
+                    }
+                    Account account = new Account(store.lastAccountId.incrementAndGet(), username, password);
+                    if (store.log != null) {
+                        store.log.appendAccount(account);
+                    }
+                    if (store.usernames.putIfAbsent(username, account) != null) {
+                        // another registration of the same username won the race
+                        return null;
+                    }
+                    store.accounts.put(account.getAccount_id(), new InMemoryStore.AccountEntry(account));
+                    return copy(account);
+                });
+            }
+            finally {
+                INSERT_ACCOUNT_TIMER.recordSince(started);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Account getAccountByUsername(String username) {
+        long started = System.nanoTime();
+        try {
+            Account account = username != null ? store.usernames.get(username) : null;
+            return account != null ? copy(account) : null;
+        }
+        finally {
+            GET_BY_USERNAME_TIMER.recordSince(started);
+        }
+    }
+
+    // Publishes a new Account with the password in both the account's entry and the username index; the stored
+    // Account objects themselves are never changed, since readers copy them without locking
+    @Override
+    public boolean updatePassword(int account_id, String password) {
+        long started = System.nanoTime();
+        try {
+            return InMemoryMessageDAO.write(store, () -> {
+                InMemoryStore.AccountEntry entry = store.accounts.get(account_id);
+                if (entry == null) {
+                    return false;
+                }
+                Account updated = new Account(account_id, entry.account.getUsername(), password);
+                if (store.log != null) {
+                    store.log.appendAccount(updated);
+                }
+                entry.account = updated;
+                if (updated.getUsername() != null) {
+                    store.usernames.put(updated.getUsername(), updated);
+                }
+                return true;
+            });
+        }
+        finally {
+            UPDATE_PASSWORD_TIMER.recordSince(started);
+        }
+    }
+
+    private static Account copy(Account account) {
+        return new Account(account.getAccount_id(), account.getUsername(), account.getPassword());
+    }
+}
@@ -0,0 +1,331 @@
+package DAO;
+
+import Model.Message;
+import Util.LatencyHistogram;
+import Util.Metrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+// MessageDAO on the in-memory storage engine
+// Follows the same rules as JdbcMessageDAO: message_ids are assigned in ascending order, a message needs an existing
+// author, and listings come back in message_id order. The messages handed out may be the stored instances and must
+// not be modified; an update stores a new instance instead
+public class InMemoryMessageDAO implements MessageDAO {
+
+    // Call count and duration of each DAO method, exported by /metrics under the same names as the JDBC engine's
+    private static final LatencyHistogram CREATE_MESSAGE_TIMER = Metrics.dbTimer("MessageDAO", "createMessage");
+    private static final LatencyHistogram CREATE_MESSAGES_TIMER = Metrics.dbTimer("MessageDAO", "createMessages");
+    private static final LatencyHistogram GET_ALL_MESSAGES_TIMER = Metrics.dbTimer("MessageDAO", "getAllMessages");
+    private static final LatencyHistogram GET_MESSAGE_BY_MESSAGE_ID_TIMER = Metrics.dbTimer("MessageDAO", "getMessageByMessageID");
+    private static final LatencyHistogram DELETE_MESSAGE_BY_MESSAGE_ID_TIMER = Metrics.dbTimer("MessageDAO", "deleteMessageByMessageID");
+    private static final LatencyHistogram UPDATE_MESSAGE_BY_MESSAGE_ID_TIMER = Metrics.dbTimer("MessageDAO", "updateMessageByMessageID");
+    private static final LatencyHistogram GET_ALL_MESSAGE_BY_USER_ID_TIMER = Metrics.dbTimer("MessageDAO", "getAllMessageByUserID");
+    private static final LatencyHistogram GET_MESSAGES_PAGE_TIMER = Metrics.dbTimer("MessageDAO", "getMessagesPage");
+
+    private final InMemoryStore store;
+
+    public InMemoryMessageDAO(InMemoryStore store) {
+        this.store = store;
+    }
+
+    // Whether messages are kept encoded outside the heap, so that every read builds a new Message
+    public boolean isOffHeap() {
+        return store.messages instanceof MappedMessageTable;
+    }
+
+    // Creates a message with the next message_id
+    @Override
+    public Message createMessage(int posted_by, String message_text, long time_posted_epoch) {
+        if (!message_text.isBlank() && message_text.length() < 256) {
+            long started = System.nanoTime();
+            try {
+                InMemoryStore.AccountEntry author = store.accounts.get(posted_by);
+                return author != null ? write(() -> insert(author, posted_by, message_text, time_posted_epoch)) : null;
+            }
+            finally {
+                CREATE_MESSAGE_TIMER.recordSince(started);
+            }
+        }
+        return null;
+    }
+
+    // Runs a change. On a persistent store the change runs under the log's lock and logs itself before it is applied,
+    // so the log holds the changes in the order they were applied, and the call returns once the log is durable
+    static <T> T write(InMemoryStore store, Supplier<T> change) {
+        WriteAheadLog log = store.log;
+        if (log == null) {
+            return change.get();
+        }
+        T result;
+        long position;
+        synchronized (log) {
+            result = change.get();
+            position = log.position();
+        }
+        log.sync(position);
+        return result;
+    }
+
+    private <T> T write(Supplier<T> change) {
+        return write(store, change);
+    }
+
+    // Allocates the id and appends it to the author's list under the list's lock, so each list stays in order
+    private Message insert(InMemoryStore.AccountEntry author, int posted_by, String message_text, long time_posted_epoch) {
+        synchronized (author.messageIds) {
+            Message message = new Message(store.lastMessageId.incrementAndGet(), posted_by, message_text, time_posted_epoch);
+            if (store.log != null) {
+                store.log.appendMessage(message);
+            }
+            store.messages.put(message);
+            author.messageIds.append(message.getMessage_id());
+            return message;
+        }
+    }
+
+    // Inserts the batch after checking every author exists and every text fits, so either all messages are created
+    // or none are, as with the JDBC engine's transaction
+    @Override
+    public List<Message> createMessages(List<Message> messages) {
+        List<Message> created = new ArrayList<>(messages.size());
+        if (messages.isEmpty()) {
+            return created;
+        }
+        long started = System.nanoTime();
+        try {
+            List<InMemoryStore.AccountEntry> authors = new ArrayList<>(messages.size());
+            for (Message message : messages) {
+                InMemoryStore.AccountEntry author = store.accounts.get(message.getPosted_by());
+                String message_text = message.getMessage_text();
+                if (author == null || message_text == null || message_text.length() > 255) {
+                    return null;
+                }
+                authors.add(author);
+            }
+            // one sync for the whole batch on a persistent store
+            return write(() -> {
+                for (int i = 0; i < messages.size(); i++) {
+                    Message message = messages.get(i);
+                    created.add(insert(authors.get(i), message.getPosted_by(), message.getMessage_text(),
+                            message.getTime_posted_epoch()));
+                }
+                return created;
+            });
+        }
+        finally {
+            CREATE_MESSAGES_TIMER.recordSince(started);
+        }
+    }
+
+    @Override
+    public Set<Integer> getExistingAccountIds(Set<Integer> account_ids) {
+        Set<Integer> existing = new HashSet<>();
+        for (Integer account_id : account_ids) {
+            if (account_id != null && store.accounts.get(account_id) != null) {
+                existing.add(account_id);
+            }
+        }
+        return existing;
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        long started = System.nanoTime();
+        try {
+            List<Message> messages = new ArrayList<>();
+            int last = store.messages.maxKey();
+            for (int message_id = 1; message_id <= last; message_id++) {
+                Message message = store.messages.get(message_id);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+            return messages;
+        }
+        finally {
+            GET_ALL_MESSAGES_TIMER.recordSince(started);
+        }
+    }
+
+    @Override
+    public Message getMessageByMessageID(int message_id) {
+        long started = System.nanoTime();
+        try {
+            return store.messages.get(message_id);
+        }
+        finally {
+            GET_MESSAGE_BY_MESSAGE_ID_TIMER.recordSince(started);
+        }
+    }
+
+    // The id stays in the author's list; readers skip it from now on
+    @Override
+    public Message deleteMessageByMessageID(int message_id) {
+        long started = System.nanoTime();
+        try {
+            return write(() -> {
+                if (store.log != null && store.messages.get(message_id) != null) {
+                    store.log.appendDelete(message_id);
+                }
+                return store.messages.remove(message_id);
+            });
+        }
+        finally {
+            DELETE_MESSAGE_BY_MESSAGE_ID_TIMER.recordSince(started);
+        }
+    }
+
+    // A message's author never changes and its id is never reused, so checking the author first is enough
+    @Override
+    public Message deleteMessageByMessageID(int message_id, int posted_by) {
+        return postedBy(message_id, posted_by) ? deleteMessageByMessageID(message_id) : null;
+    }
+
+    // The message table swaps in the new text, retrying if another update or a delete got in first. On a persistent
+    // store every change holds the log's lock, so nothing can get in first and the logged message is the one stored
+    @Override
+    public Message updateMessageByMessageID(String message_text, int message_id) {
+        if (!message_text.isBlank() && message_text.length() < 256) {
+            long started = System.nanoTime();
+            try {
+                return write(() -> store.messages.updateText(message_id, message_text, updated -> {
+                    if (store.log != null) {
+                        store.log.appendMessage(updated);
+                    }
+                }));
+            }
+            finally {
+                UPDATE_MESSAGE_BY_MESSAGE_ID_TIMER.recordSince(started);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Message updateMessageByMessageID(String message_text, int message_id, int posted_by) {
+        return postedBy(message_id, posted_by) ? updateMessageByMessageID(message_text, message_id) : null;
+    }
+
+    private boolean postedBy(int message_id, int posted_by) {
+        Message message = store.messages.get(message_id);
+        return message != null && message.getPosted_by() == posted_by;
+    }
+
+    @Override
+    public List<Message> getAllMessageByUserID(int user_id) {
+        long started = System.nanoTime();
+        try {
+            List<Message> messages = new ArrayList<>();
+            InMemoryStore.AccountEntry author = store.accounts.get(user_id);
+            if (author == null) {
+                return messages;
+            }
+            int size = author.messageIds.size();
+            int[] ids = author.messageIds.array();
+            for (int i = 0; i < size; i++) {
+                Message message = store.messages.get(ids[i]);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+            return messages;
+        }
+        finally {
+            GET_ALL_MESSAGE_BY_USER_ID_TIMER.recordSince(started);
+        }
+    }
+
+    // Walks the id range of the message table, or binary searches the author's id list, from the cursor
+    @Override
+    public List<Message> getMessagesPage(Integer posted_by, int after, int before, int limit) {
+        boolean backwards = before < Integer.MAX_VALUE && after <= 0;
+        List<Message> messages = new ArrayList<>(Math.min(limit, 1024));
+        long started = System.nanoTime();
+        try {
+            if (posted_by == null) {
+                // in long, so that cursors at the ends of the int range cannot overflow
+                long first = Math.max(after, 0) + 1L;
+                long last = Math.min(before - 1L, store.messages.maxKey());
+                for (long message_id = backwards ? last : first;
+                     message_id >= first && message_id <= last && messages.size() < limit;
+                     message_id += backwards ? -1 : 1) {
+                    Message message = store.messages.get((int) message_id);
+                    if (message != null) {
+                        messages.add(message);
+                    }
+                }
+            }
+            else {
+                InMemoryStore.AccountEntry author = store.accounts.get(posted_by);
+                if (author != null) {
+                    int size = author.messageIds.size();
+                    int[] ids = author.messageIds.array();
+                    // the first position holding an id above after, and the first holding an id at or above before
+                    int from = upperBound(ids, size, after);
+                    int to = upperBound(ids, size, before - 1L);
+                    for (int i = backwards ? to - 1 : from; i >= from && i < to && messages.size() < limit; i += backwards ? -1 : 1) {
+                        Message message = store.messages.get(ids[i]);
+                        if (message != null) {
+                            messages.add(message);
+                        }
+                    }
+                }
+            }
+        }
+        finally {
+            GET_MESSAGES_PAGE_TIMER.recordSince(started);
+        }
+        if (backwards) {
+            Collections.reverse(messages);
+        }
+        return messages;
+    }
+
+    // Returns the first position among ids[0..size) whose id is above key, or size if there is none
+    private static int upperBound(int[] ids, int size, long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ids[middle] <= key) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public void forEachMessage(Integer posted_by, MessageSink sink) throws IOException {
+        if (posted_by == null) {
+            int last = store.messages.maxKey();
+            for (int message_id = 1; message_id <= last; message_id++) {
+                Message message = store.messages.get(message_id);
+                if (message != null) {
+                    sink.accept(message);
+                }
+            }
+            return;
+        }
+        InMemoryStore.AccountEntry author = store.accounts.get(posted_by);
+        if (author == null) {
+            return;
+        }
+        int size = author.messageIds.size();
+        int[] ids = author.messageIds.array();
+        for (int i = 0; i < size; i++) {
+            Message message = store.messages.get(ids[i]);
+            if (message != null) {
+                sink.accept(message);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package DAO;
+
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.DenseIntMap;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The tables of the in-memory storage engine, shared by one InMemoryMessageDAO and one InMemoryAccountDAO
+// Messages are kept in a MessageTable and accounts in a DenseIntMap, both indexed by their ids, each account keeps the
+// ids of its messages in an append-only list, and usernames are indexed in a concurrent hash map. Reads take no locks
+// and never touch JDBC
+// The store is filled once from the database when it is created; after that it is the only copy of the data that
+// changes, and writes are not written back to the database. A PersistentStore makes it durable by attaching a log
+public class InMemoryStore {
+
+    // Read once at startup to fill the store
+    static final String SQL_LOAD_ACCOUNTS = "SELECT * FROM account ORDER BY account_id";
+    static final String SQL_LOAD_MESSAGES = "SELECT * FROM message ORDER BY message_id";
+
+    // An account and the ids of the messages it has posted
+    static final class AccountEntry {
+        // replaced, never changed, when the account's password is
+        volatile Account account;
+        final MessageIds messageIds = new MessageIds();
+
+        AccountEntry(Account account) {
+            this.account = account;
+        }
+    }
+
+    // Ids of one account's messages in ascending order. Appends are serialized by the caller holding the lock of
+    // this object, which also allocates the id, so ids are appended in order; readers take a snapshot without locking
+    // Deleted ids stay in the list and are skipped by readers, since the message table no longer has them
+    static final class MessageIds {
+        private volatile int[] ids = new int[4];
+        private volatile int size;
+
+        // Only called with this object's lock held
+        void append(int message_id) {
+            int[] current = ids;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+                ids = current;
+            }
+            current[size] = message_id;
+            // the volatile write publishes the element to readers that read size first
+            size = size + 1;
+        }
+
+        // Returns the ids; only the first size() of them are valid. Read size() first
+        int size() {
+            return size;
+        }
+
+        int[] array() {
+            return ids;
+        }
+    }
+
+    final MessageTable messages;
+    final DenseIntMap<AccountEntry> accounts = new DenseIntMap<>();
+    final ConcurrentHashMap<String, Account> usernames = new ConcurrentHashMap<>();
+    final AtomicInteger lastMessageId = new AtomicInteger();
+    final AtomicInteger lastAccountId = new AtomicInteger();
+    // Set by PersistentStore before the store is handed to any DAO. When set, every change is appended to it under
+    // its lock before being applied, see InMemoryMessageDAO.write
+    WriteAheadLog log;
+
+    // Creates an empty store keeping its messages on the heap
+    public InMemoryStore() {
+        this(new HeapMessageTable());
+    }
+
+    // Creates an empty store keeping its messages in the given, empty, table
+    public InMemoryStore(MessageTable messages) {
+        this.messages = messages;
+    }
+
+    // Creates a store filled with the accounts and messages currently in the database
+    public static InMemoryStore loadFromDatabase() {
+        return loadFromDatabase(new HeapMessageTable());
+    }
+
+    // Creates a store filled with the accounts and messages currently in the database, keeping its messages in the
+    // given, empty, table
+    public static InMemoryStore loadFromDatabase(MessageTable messageTable) {
+        InMemoryStore store = new InMemoryStore(messageTable);
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            try (PreparedStatement preparedStatement = connection.prepareStatement(SQL_LOAD_ACCOUNTS);
+                 ResultSet rs = preparedStatement.executeQuery()) {
+                while (rs.next()) {
+                    store.addAccount(new Account(rs.getInt("account_id"), rs.getString("username"), rs.getString("password")));
+                }
+            }
+            try (PreparedStatement preparedStatement = connection.prepareStatement(SQL_LOAD_MESSAGES);
+                 ResultSet rs = preparedStatement.executeQuery()) {
+                while (rs.next()) {
+                    store.addMessage(new Message(rs.getInt("message_id"), rs.getInt("posted_by"),
+                            rs.getString("message_text"), rs.getLong("time_posted_epoch")));
+                }
+            }
+        }
+        catch (SQLException e) {
+            throw new IllegalStateException("Could not load the in-memory store from the database", e);
+        }
+        return store;
+    }
+
+    // Adds an account with its id already assigned, as when loading
+    void addAccount(Account account) {
+        accounts.put(account.getAccount_id(), new AccountEntry(account));
+        if (account.getUsername() != null) {
+            usernames.put(account.getUsername(), account);
+        }
+        lastAccountId.accumulateAndGet(account.getAccount_id(), Math::max);
+    }
+
+    // Adds a message with its id already assigned, as when loading; its author must already be in the store
+    void addMessage(Message message) {
+        messages.put(message);
+        AccountEntry author = accounts.get(message.getPosted_by());
+        if (author != null) {
+            synchronized (author.messageIds) {
+                author.messageIds.append(message.getMessage_id());
+            }
+        }
+        lastMessageId.accumulateAndGet(message.getMessage_id(), Math::max);
+    }
+}
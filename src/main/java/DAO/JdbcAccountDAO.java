@@ -0,0 +1,220 @@
+package DAO;
+
+import Model.Account;
+import Util.AppConfig;
+import Util.BloomFilter;
+import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import Util.Metrics;
+
+import java.sql.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// AccountDAO backed by the relational database through JDBC
+public class JdbcAccountDAO implements AccountDAO {
+
+    // SQL run by this DAO. Every SQL_ constant is checked against the query planner by DAO.QueryPlanTest
+    static final String SQL_SELECT_BY_USERNAME = "SELECT * FROM account WHERE username = ?";
+    static final String SQL_INSERT = "INSERT INTO account(username, password) VALUES(?, ?)";
+    static final String SQL_SELECT_ALL_USERNAMES = "SELECT username FROM account";
+    static final String SQL_UPDATE_PASSWORD = "UPDATE account SET password = ? WHERE account_id = ?";
+
+    // Call count and duration of each DAO method, exported by /metrics
+    private static final LatencyHistogram SEARCH_USERNAME_TIMER = Metrics.dbTimer("AccountDAO", "searchUsername");
+    private static final LatencyHistogram INSERT_ACCOUNT_TIMER = Metrics.dbTimer("AccountDAO", "insertAccount");
+    private static final LatencyHistogram GET_BY_USERNAME_TIMER = Metrics.dbTimer("AccountDAO", "getAccountByUsername");
+    private static final LatencyHistogram UPDATE_PASSWORD_TIMER = Metrics.dbTimer("AccountDAO", "updatePassword");
+
+    // Bloom filter of every username in the account table, or null when the filter is disabled or failed to load
+    // A "definitely not present" answer lets registration skip the username lookup; the unique constraint on
+    // account.username still rejects any duplicate the filter lets through
+    private final BloomFilter usernameFilter;
+
+    // Registrations that skipped the username lookup because the filter ruled the name out
+    private final LongAdder usernameLookupsSkipped = new LongAdder();
+    // Registrations where the filter said "maybe" but the lookup found no such username
+    private final LongAdder usernameFalsePositives = new LongAdder();
+
+    // Default constructor, loads the username filter from the account table
+    public JdbcAccountDAO() {
+        this(AppConfig.getBoolean("bloom.username.enabled", true));
+    }
+
+    // Constructor that allows the username filter to be turned off
+    public JdbcAccountDAO(boolean useUsernameFilter) {
+        this.usernameFilter = useUsernameFilter ? loadUsernameFilter() : null;
+        if (usernameFilter != null) {
+            Metrics.counter("username_filter_lookups_skipped_total",
+                    "Registrations that skipped the username lookup thanks to the Bloom filter.", "",
+                    this::getUsernameLookupsSkipped);
+            Metrics.counter("username_filter_false_positives_total",
+                    "Username lookups the Bloom filter could not avoid although the name was free.", "",
+                    this::getUsernameFalsePositives);
+            Metrics.gauge("username_filter_false_positive_rate",
+                    "Share of free usernames the Bloom filter could not rule out.", "",
+                    this::getUsernameFalsePositiveRate);
+            Metrics.gauge("username_filter_memory_bytes", "Memory taken by the username Bloom filter's bits.", "",
+                    usernameFilter::getMemoryBytes);
+        }
+    }
+
+    // Builds the username filter from every username currently in the database
+    private BloomFilter loadUsernameFilter() {
+        BloomFilter filter = new BloomFilter(AppConfig.getLong("bloom.username.expectedInsertions", 1_000_000),
+                Double.parseDouble(AppConfig.getString("bloom.username.fpp", "0.01")));
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SQL_SELECT_ALL_USERNAMES);
+             ResultSet rs = preparedStatement.executeQuery()) {
+
+            while (rs.next()) {
+                String username = rs.getString(1);
+                if (username != null) {
+                    filter.put(username);
+                }
+            }
+            return filter;
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    // Returns false only if the username is definitely not in the database, otherwise asks the database
+    private boolean usernameTaken(String username) {
+        if (usernameFilter != null && !usernameFilter.mightContain(username)) {
+            usernameLookupsSkipped.increment();
+            return false;
+        }
+        boolean taken = this.searchUsername(username);
+        if (usernameFilter != null && !taken) {
+            usernameFalsePositives.increment();
+        }
+        return taken;
+    }
+
+    // Check if a username exists in the database
+    @Override
+    public Boolean searchUsername(String username) {
+        long started = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SQL_SELECT_BY_USERNAME)) {
+
+            preparedStatement.setString(1, username);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        finally {
+            SEARCH_USERNAME_TIMER.recordSince(started);
+        }
+        return false;
+    }
+
+    // Insert a new account with username and password into the database
+    @Override
+    public Account insertAccount(String username, String password) {
+        if (!username.isBlank() && password.length() >= 4 && !this.usernameTaken(username)) {
+            long started = System.nanoTime();
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement preparedStatement = connection.prepareStatement(SQL_INSERT, Statement.RETURN_GENERATED_KEYS)) {
+
+                preparedStatement.setString(1, username);
+                preparedStatement.setString(2, password);
+
+                preparedStatement.executeUpdate();
+                try (ResultSet rs = preparedStatement.getGeneratedKeys()) {
+                    if(rs.next()){
+                        int generated_account_id = (int) rs.getLong(1);
+                        if (usernameFilter != null) {
+                            usernameFilter.put(username);
+                        }
+                        return new Account(generated_account_id, username, password);
+                    }
+                }
+            }
+            catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
+            finally {
+                INSERT_ACCOUNT_TIMER.recordSince(started);
+            }
+        }
+        return null;
+    }
+
+    // Retrieve the account with the given username, password included
+    @Override
+    public Account getAccountByUsername(String username) {
+        long started = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SQL_SELECT_BY_USERNAME)) {
+
+            preparedStatement.setString(1, username);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if (rs.next()) {
+                    return new Account(rs.getInt("account_id"),
+                                    rs.getString("username"),
+                                    rs.getString("password"));
+                }
+            }
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        finally {
+            GET_BY_USERNAME_TIMER.recordSince(started);
+        }
+        return null;
+    }
+
+    // Replace the stored password of an account
+    @Override
+    public boolean updatePassword(int account_id, String password) {
+        long started = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SQL_UPDATE_PASSWORD)) {
+
+            preparedStatement.setString(1, password);
+            preparedStatement.setInt(2, account_id);
+
+            return preparedStatement.executeUpdate() > 0;
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        finally {
+            UPDATE_PASSWORD_TIMER.recordSince(started);
+        }
+        return false;
+    }
+
+    // Returns the username filter so its size and expected false positive rate can be read, or null if disabled
+    public BloomFilter getUsernameFilter() {
+        return usernameFilter;
+    }
+
+    // Number of registrations that skipped the username lookup thanks to the filter
+    public long getUsernameLookupsSkipped() {
+        return usernameLookupsSkipped.sum();
+    }
+
+    // Number of username lookups the filter could not avoid although the name was free
+    public long getUsernameFalsePositives() {
+        return usernameFalsePositives.sum();
+    }
+
+    // Observed false positive rate: lookups of free usernames the filter did not rule out, over all free usernames
+    public double getUsernameFalsePositiveRate() {
+        long falsePositives = usernameFalsePositives.sum();
+        long negatives = falsePositives + usernameLookupsSkipped.sum();
+        return negatives == 0 ? 0 : (double) falsePositives / negatives;
+    }
+}
@@ -0,0 +1,410 @@
+package DAO;
+
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import Util.Metrics;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// MessageDAO backed by the relational database through JDBC; every call is one round trip to the database
+public class JdbcMessageDAO implements MessageDAO {
+
+    // Rows fetched per round trip when streaming a result set from an H2 server; an embedded database ignores it
+    private static final int STREAM_FETCH_SIZE = 256;
+
+    // Turn H2's lazy query execution on and off for one session. Without it an embedded H2 builds the whole result
+    // before returning the first row. Not SQL_ constants, since there is no query plan to check
+    private static final String LAZY_ON = "SET LAZY_QUERY_EXECUTION TRUE";
+    private static final String LAZY_OFF = "SET LAZY_QUERY_EXECUTION FALSE";
+
+    // SQL run by this DAO. Every SQL_ constant is checked against the query planner by DAO.QueryPlanTest
+    static final String SQL_INSERT = "INSERT INTO message(posted_by, message_text, time_posted_epoch) VALUES(?, ?, ?)";
+    static final String SQL_SELECT_ALL_ORDERED = "SELECT * FROM message ORDER BY message_id";
+    static final String SQL_SELECT_BY_ID = "SELECT * FROM message WHERE message_id = ?";
+    // H2 data change delta tables: the DELETE / UPDATE and the read of the affected row are one statement
+    static final String SQL_DELETE_RETURNING = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ?)";
+    static final String SQL_UPDATE_RETURNING = "SELECT * FROM FINAL TABLE (UPDATE message SET message_text = ? WHERE message_id = ?)";
+    // The same, limited to one account's messages, so that checking the owner costs no extra round trip
+    static final String SQL_DELETE_OWNED_RETURNING = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ? AND posted_by = ?)";
+    static final String SQL_UPDATE_OWNED_RETURNING = "SELECT * FROM FINAL TABLE (UPDATE message SET message_text = ? WHERE message_id = ? AND posted_by = ?)";
+    static final String SQL_SELECT_BY_USER = "SELECT * FROM message WHERE posted_by = ? ORDER BY message_id";
+    static final String SQL_PAGE_FORWARD = "SELECT * FROM message WHERE message_id > ? AND message_id < ? ORDER BY message_id LIMIT ?";
+    static final String SQL_PAGE_BACKWARD = "SELECT * FROM message WHERE message_id > ? AND message_id < ? ORDER BY message_id DESC LIMIT ?";
+    static final String SQL_USER_PAGE_FORWARD = "SELECT * FROM message WHERE posted_by = ? AND message_id > ? AND message_id < ? ORDER BY message_id LIMIT ?";
+    static final String SQL_USER_PAGE_BACKWARD = "SELECT * FROM message WHERE posted_by = ? AND message_id > ? AND message_id < ? ORDER BY message_id DESC LIMIT ?";
+    // Bound to an Integer[]; answers the existence check for a whole batch of authors in one round trip
+    static final String SQL_SELECT_EXISTING_ACCOUNTS = "SELECT account_id FROM account WHERE account_id = ANY(?)";
+
+    // Call count and duration of each DAO method, exported by /metrics
+    private static final LatencyHistogram CREATE_MESSAGE_TIMER = Metrics.dbTimer("MessageDAO", "createMessage");
+    private static final LatencyHistogram CREATE_MESSAGES_TIMER = Metrics.dbTimer("MessageDAO", "createMessages");
+    private static final LatencyHistogram GET_EXISTING_ACCOUNT_IDS_TIMER = Metrics.dbTimer("MessageDAO", "getExistingAccountIds");
+    private static final LatencyHistogram GET_ALL_MESSAGES_TIMER = Metrics.dbTimer("MessageDAO", "getAllMessages");
+    private static final LatencyHistogram GET_MESSAGE_BY_MESSAGE_ID_TIMER = Metrics.dbTimer("MessageDAO", "getMessageByMessageID");
+    private static final LatencyHistogram DELETE_MESSAGE_BY_MESSAGE_ID_TIMER = Metrics.dbTimer("MessageDAO", "deleteMessageByMessageID");
+    private static final LatencyHistogram UPDATE_MESSAGE_BY_MESSAGE_ID_TIMER = Metrics.dbTimer("MessageDAO", "updateMessageByMessageID");
+    private static final LatencyHistogram GET_ALL_MESSAGE_BY_USER_ID_TIMER = Metrics.dbTimer("MessageDAO", "getAllMessageByUserID");
+    private static final LatencyHistogram GET_MESSAGES_PAGE_TIMER = Metrics.dbTimer("MessageDAO", "getMessagesPage");
+    private static final LatencyHistogram FOR_EACH_MESSAGE_TIMER = Metrics.dbTimer("MessageDAO", "forEachMessage");
+
+    // Creates and inserts a new message record into the database
+    // Returns the created message object if successful
+    @Override
+    public Message createMessage(int posted_by, String message_text, long time_posted_epoch) {
+        if (!message_text.isBlank() && message_text.length() < 256) {
+            long started = System.nanoTime();
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement preparedStatement = connection.prepareStatement(SQL_INSERT, Statement.RETURN_GENERATED_KEYS)) {
+
+                preparedStatement.setInt(1, posted_by);
+                preparedStatement.setString(2, message_text);
+                preparedStatement.setLong(3, time_posted_epoch);
+
+                preparedStatement.executeUpdate();
+                try (ResultSet rs = preparedStatement.getGeneratedKeys()) {
+                    if(rs.next()){
+                        int generated_message_id = (int) rs.getLong(1);
+                        return new Message(generated_message_id, posted_by, message_text, time_posted_epoch);
+                    }
+                }
+            }
+            catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
+            finally {
+                CREATE_MESSAGE_TIMER.recordSince(started);
+            }
+        }
+        return null;
+    }
+
+    // Inserts a batch of already validated messages with a single JDBC batch in one transaction
+    // Returns the created messages, with their generated ids, in the order given, or null if the batch was rolled back
+    @Override
+    public List<Message> createMessages(List<Message> messages) {
+        List<Message> created = new ArrayList<>(messages.size());
+        if (messages.isEmpty()) {
+            return created;
+        }
+        long started = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(SQL_INSERT, Statement.RETURN_GENERATED_KEYS)) {
+
+                for (Message message : messages) {
+                    preparedStatement.setInt(1, message.getPosted_by());
+                    preparedStatement.setString(2, message.getMessage_text());
+                    preparedStatement.setLong(3, message.getTime_posted_epoch());
+                    preparedStatement.addBatch();
+                }
+
+                preparedStatement.executeBatch();
+                try (ResultSet rs = preparedStatement.getGeneratedKeys()) {
+                    for (Message message : messages) {
+                        if (!rs.next()) {
+                            throw new SQLException("Missing generated key for batch item " + created.size());
+                        }
+                        created.add(new Message((int) rs.getLong(1), message.getPosted_by(),
+                                message.getMessage_text(), message.getTime_posted_epoch()));
+                    }
+                }
+                connection.commit();
+                return created;
+            }
+            catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+            finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        finally {
+            CREATE_MESSAGES_TIMER.recordSince(started);
+        }
+        return null;
+    }
+
+    // Returns which of the given account_ids exist, with one query for the whole set
+    @Override
+    public Set<Integer> getExistingAccountIds(Set<Integer> account_ids) {
+        Set<Integer> existing = new HashSet<>();
+        if (account_ids.isEmpty()) {
+            return existing;
+        }
+        long started = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SQL_SELECT_EXISTING_ACCOUNTS)) {
+
+            preparedStatement.setObject(1, account_ids.toArray(new Integer[0]));
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while (rs.next()) {
+                    existing.add(rs.getInt(1));
+                }
+            }
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        finally {
+            GET_EXISTING_ACCOUNT_IDS_TIMER.recordSince(started);
+        }
+        return existing;
+    }
+
+    // Retrieves and returns all messages stored in the database, in message_id order
+    @Override
+    public List<Message> getAllMessages() {
+        List<Message> messages = new ArrayList<>();
+        long started = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SQL_SELECT_ALL_ORDERED);
+             ResultSet rs = preparedStatement.executeQuery()) {
+
+            while (rs.next()) {
+                messages.add(mapMessage(rs));
+            }
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        finally {
+            GET_ALL_MESSAGES_TIMER.recordSince(started);
+        }
+        return messages;
+    }
+
+    // Fetches a single message record by its unique message_id
+    @Override
+    public Message getMessageByMessageID(int message_id) {
+        long started = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SQL_SELECT_BY_ID)) {
+
+            preparedStatement.setInt(1, message_id);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if (rs.next()) {
+                    return mapMessage(rs);
+                }
+            }
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        finally {
+            GET_MESSAGE_BY_MESSAGE_ID_TIMER.recordSince(started);
+        }
+        return null;
+    }
+
+    // Deletes a message record by its unique message_id
+    // Returns the message as it was when deleted, or null if there was no such message, in a single round trip
+    @Override
+    public Message deleteMessageByMessageID(int message_id) {
+        return deleteReturning(SQL_DELETE_RETURNING, message_id, null);
+    }
+
+    // Deletes a message record only if it was posted by posted_by, in the same single round trip
+    @Override
+    public Message deleteMessageByMessageID(int message_id, int posted_by) {
+        return deleteReturning(SQL_DELETE_OWNED_RETURNING, message_id, posted_by);
+    }
+
+    private Message deleteReturning(String sql, int message_id, Integer posted_by) {
+        long started = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            preparedStatement.setInt(1, message_id);
+            if (posted_by != null) {
+                preparedStatement.setInt(2, posted_by);
+            }
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if (rs.next()) {
+                    return mapMessage(rs);
+                }
+            }
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        finally {
+            DELETE_MESSAGE_BY_MESSAGE_ID_TIMER.recordSince(started);
+        }
+        return null;
+    }
+
+    // Updates the text of a message record for the given message_id
+    // Returns the message as it is after the update, or null if the update failed, in a single round trip
+    @Override
+    public Message updateMessageByMessageID(String message_text, int message_id) {
+        return updateReturning(SQL_UPDATE_RETURNING, message_text, message_id, null);
+    }
+
+    // Updates the text of a message record only if it was posted by posted_by, in the same single round trip
+    @Override
+    public Message updateMessageByMessageID(String message_text, int message_id, int posted_by) {
+        return updateReturning(SQL_UPDATE_OWNED_RETURNING, message_text, message_id, posted_by);
+    }
+
+    private Message updateReturning(String sql, String message_text, int message_id, Integer posted_by) {
+        if (!message_text.isBlank() && message_text.length() < 256) {
+            long started = System.nanoTime();
+            try (Connection connection = ConnectionUtil.getConnection();
+                 PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+                preparedStatement.setString(1, message_text);
+                preparedStatement.setInt(2, message_id);
+                if (posted_by != null) {
+                    preparedStatement.setInt(3, posted_by);
+                }
+
+                try (ResultSet rs = preparedStatement.executeQuery()) {
+                    if (rs.next()) {
+                        return mapMessage(rs);
+                    }
+                }
+            }
+            catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
+            finally {
+                UPDATE_MESSAGE_BY_MESSAGE_ID_TIMER.recordSince(started);
+            }
+        }
+        return null;
+    }
+
+    // Retrieves all messages posted by a specific user based on their user_id
+    @Override
+    public List<Message> getAllMessageByUserID(int user_id) {
+        List<Message> messages = new ArrayList<>();
+        long started = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SQL_SELECT_BY_USER)) {
+
+            preparedStatement.setInt(1, user_id);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(mapMessage(rs));
+                }
+            }
+        }
+        catch (SQLException e) {
+            // null rather than a partial or empty list, so that a failed read is never cached as the timeline
+            System.out.println(e.getMessage());
+            return null;
+        }
+        finally {
+            GET_ALL_MESSAGE_BY_USER_ID_TIMER.recordSince(started);
+        }
+        return messages;
+    }
+
+    // Retrieves one page of messages ordered by message_id, using message_id as a keyset cursor
+    // Only messages with after < message_id < before are considered; when before is set but after is not, the page is
+    // the newest messages just below before, otherwise it is the oldest messages just above after
+    // posted_by may be null to page over all messages
+    @Override
+    public List<Message> getMessagesPage(Integer posted_by, int after, int before, int limit) {
+        boolean backwards = before < Integer.MAX_VALUE && after <= 0;
+        String sql = posted_by != null
+                ? (backwards ? SQL_USER_PAGE_BACKWARD : SQL_USER_PAGE_FORWARD)
+                : (backwards ? SQL_PAGE_BACKWARD : SQL_PAGE_FORWARD);
+        List<Message> messages = new ArrayList<>(Math.min(limit, 1024));
+        long started = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            int index = 1;
+            if (posted_by != null) {
+                preparedStatement.setInt(index++, posted_by);
+            }
+            preparedStatement.setInt(index++, after);
+            preparedStatement.setInt(index++, before);
+            preparedStatement.setInt(index, limit);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(mapMessage(rs));
+                }
+            }
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        finally {
+            GET_MESSAGES_PAGE_TIMER.recordSince(started);
+        }
+        if (backwards) {
+            Collections.reverse(messages);
+        }
+        return messages;
+    }
+
+    // Streams every message, or every message of one user when posted_by is not null, to the sink in message_id order
+    // The query runs lazily, so rows are read from the index as the sink takes them: memory use does not grow with
+    // the size of the result and the first row arrives without waiting for the last. Lazy execution is switched off
+    // again before the connection goes back to the pool
+    // A query that fails partway through throws an IOException, so a caller writing a response can abort it rather
+    // than end a listing that is missing rows
+    @Override
+    public void forEachMessage(Integer posted_by, MessageSink sink) throws IOException {
+        String sql = posted_by != null ? SQL_SELECT_BY_USER : SQL_SELECT_ALL_ORDERED;
+        long started = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            setLazy(connection, true);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+                if (posted_by != null) {
+                    preparedStatement.setInt(1, posted_by);
+                }
+                preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+
+                try (ResultSet rs = preparedStatement.executeQuery()) {
+                    while (rs.next()) {
+                        sink.accept(mapMessage(rs));
+                    }
+                }
+            }
+            finally {
+                setLazy(connection, false);
+            }
+        }
+        catch (SQLException e) {
+            throw new IOException("Could not stream messages: " + e.getMessage(), e);
+        }
+        finally {
+            FOR_EACH_MESSAGE_TIMER.recordSince(started);
+        }
+    }
+
+    private static void setLazy(Connection connection, boolean lazy) throws SQLException {
+        try (PreparedStatement preparedStatement = connection.prepareStatement(lazy ? LAZY_ON : LAZY_OFF)) {
+            preparedStatement.executeUpdate();
+        }
+    }
+
+    // Builds a message object from the current row of a result set
+    private Message mapMessage(ResultSet rs) throws SQLException {
+        return new Message(rs.getInt("message_id"),
+                    rs.getInt("posted_by"),
+                    rs.getString("message_text"),
+                    rs.getLong("time_posted_epoch"));
+    }
+}
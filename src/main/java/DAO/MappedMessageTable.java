@@ -0,0 +1,207 @@
+package DAO;
+
+import Model.Message;
+import Util.DenseIntArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// MessageTable keeping messages outside the heap, in memory-mapped segment files
+// Each message is one record, appended to the segments: posted_by, time_posted_epoch, the length of the text and the
+// text as UTF-8. The only thing on the heap per message is its record's address in a DenseIntArray indexed by
+// message_id, 4 bytes, so the collector never has to trace or copy the messages. A Message is built from the record
+// on every read, for the caller to serialize and drop
+// Records are never overwritten: an update appends a new record and swaps the address, a delete clears it, and the
+// space of the old record is not reused. The segment files are deleted as soon as they are mapped, so they take no
+// space once the table is gone; the operating system can still page them out under memory pressure
+public class MappedMessageTable implements MessageTable {
+
+    // Records start on 4 byte boundaries, so an int address, the position divided by 4, reaches 8 GB of records
+    private static final int ALIGNMENT = 4;
+    private static final long MAX_POSITION = (long) Integer.MAX_VALUE * ALIGNMENT;
+    // posted_by, time_posted_epoch and the length of the text
+    private static final int RECORD_HEADER = 14;
+    // Length stored for a null text
+    private static final int NULL_TEXT = 0xFFFF;
+
+    private final File directory;
+    private final int segmentShift;
+    private final long segmentMask;
+    private final DenseIntArray addresses = new DenseIntArray();
+    // Next free position; 0 is never handed out, so address 0 can mean no message
+    private final AtomicLong next = new AtomicLong(ALIGNMENT);
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    // Maps segments of segmentBytes, rounded up to a power of two, in directory
+    public MappedMessageTable(File directory, int segmentBytes) throws IOException {
+        if (segmentBytes < 4096) {
+            throw new IllegalArgumentException("Segments of " + segmentBytes + " bytes are too small");
+        }
+        Files.createDirectories(directory.toPath());
+        this.directory = directory;
+        this.segmentShift = 32 - Integer.numberOfLeadingZeros(segmentBytes - 1);
+        this.segmentMask = (1L << segmentShift) - 1;
+    }
+
+    @Override
+    public Message get(int message_id) {
+        return decode(message_id, addresses.get(message_id));
+    }
+
+    @Override
+    public void put(Message message) {
+        addresses.set(message.getMessage_id(), append(message));
+    }
+
+    // Appends a record with the new text and swaps its address in, retrying if another update or a delete got in
+    // first; the record of a lost race is left unused
+    @Override
+    public Message updateText(int message_id, String message_text, Consumer<Message> beforeApply) {
+        while (true) {
+            int address = addresses.get(message_id);
+            if (address == 0) {
+                return null;
+            }
+            long position = (long) address * ALIGNMENT;
+            MappedByteBuffer segment = segments[(int) (position >>> segmentShift)];
+            int offset = (int) (position & segmentMask);
+            Message updated = new Message(message_id, segment.getInt(offset), message_text, segment.getLong(offset + 4));
+            beforeApply.accept(updated);
+            if (addresses.compareAndSet(message_id, address, append(updated))) {
+                return updated;
+            }
+        }
+    }
+
+    @Override
+    public Message remove(int message_id) {
+        if (message_id < 0 || message_id > addresses.maxKey()) {
+            return null;
+        }
+        return decode(message_id, addresses.set(message_id, 0));
+    }
+
+    @Override
+    public int maxKey() {
+        return addresses.maxKey();
+    }
+
+    // Bytes of the segments taken by records, including those of updated and deleted messages
+    public long getRecordBytes() {
+        return next.get() - ALIGNMENT;
+    }
+
+    // Bytes of the segments mapped so far
+    public long getMappedBytes() {
+        return (long) segments.length << segmentShift;
+    }
+
+    // Bytes on the heap for the address index
+    public long getIndexBytes() {
+        return addresses.allocatedBytes();
+    }
+
+    private Message decode(int message_id, int address) {
+        if (address == 0) {
+            return null;
+        }
+        long position = (long) address * ALIGNMENT;
+        MappedByteBuffer segment = segments[(int) (position >>> segmentShift)];
+        int offset = (int) (position & segmentMask);
+        int length = segment.getShort(offset + 12) & 0xFFFF;
+        String message_text = null;
+        if (length != NULL_TEXT) {
+            byte[] bytes = new byte[length];
+            segment.get(offset + RECORD_HEADER, bytes);
+            message_text = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new Message(message_id, segment.getInt(offset), message_text, segment.getLong(offset + 4));
+    }
+
+    // Writes the record and returns its address. The record is complete before the caller publishes the address
+    // with a volatile write, which is what makes it visible to readers
+    private int append(Message message) {
+        byte[] text = message.getMessage_text() != null
+                ? message.getMessage_text().getBytes(StandardCharsets.UTF_8)
+                : null;
+        if (text != null && text.length >= NULL_TEXT) {
+            throw new IllegalArgumentException("Message text of " + text.length + " bytes is too long to store");
+        }
+        long position = allocate(RECORD_HEADER + (text != null ? text.length : 0));
+        MappedByteBuffer segment = segment((int) (position >>> segmentShift));
+        int offset = (int) (position & segmentMask);
+        segment.putInt(offset, message.getPosted_by());
+        segment.putLong(offset + 4, message.getTime_posted_epoch());
+        segment.putShort(offset + 12, (short) (text != null ? text.length : NULL_TEXT));
+        if (text != null) {
+            segment.put(offset + RECORD_HEADER, text);
+        }
+        return (int) (position / ALIGNMENT);
+    }
+
+    // Reserves room for a record, moving to the next segment if it would not fit in the rest of the current one
+    private long allocate(int size) {
+        long aligned = (size + ALIGNMENT - 1) & -ALIGNMENT;
+        while (true) {
+            long current = next.get();
+            long start = current;
+            if ((start & segmentMask) + aligned > segmentMask + 1) {
+                start = (start | segmentMask) + 1;
+            }
+            if (start + aligned > MAX_POSITION) {
+                throw new IllegalStateException("The mapped message table is full");
+            }
+            if (next.compareAndSet(current, start + aligned)) {
+                return start;
+            }
+        }
+    }
+
+    private MappedByteBuffer segment(int index) {
+        MappedByteBuffer[] current = segments;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        synchronized (this) {
+            current = segments;
+            if (index >= current.length) {
+                current = Arrays.copyOf(current, index + 1);
+            }
+            for (int i = 0; i <= index; i++) {
+                if (current[i] == null) {
+                    current[i] = map(i);
+                }
+            }
+            segments = current;
+            return current[index];
+        }
+    }
+
+    private MappedByteBuffer map(int index) {
+        try {
+            File file = File.createTempFile("messages-" + index + "-", ".bin", directory);
+            MappedByteBuffer segment;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentMask + 1);
+            }
+            // the mapping outlives the file's name; where a mapped file cannot be deleted, it goes when the JVM exits
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+            return segment;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not map a message segment in " + directory, e);
+        }
+    }
+}
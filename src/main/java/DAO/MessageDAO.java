@@ -1,142 +1,55 @@
 package DAO;
 
 import Model.Message;
-import Util.ConnectionUtil;
 
-import java.sql.*;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 
-public class MessageDAO {
+// Storage of messages, implemented by JdbcMessageDAO on the relational database and by InMemoryMessageDAO on the
+// in-memory engine; Storage picks one at startup
+// Listings are always in message_id order. Methods that create or change a message return null when they did not
+public interface MessageDAO {
 
-    // Creates and inserts a new message record into the database
-    // Returns the created message object if successful
-    public Message createMessage(int posted_by, String message_text, long time_posted_epoch) {
-        if (!message_text.isBlank() && message_text.length() < 256) {
-            try (Connection connection = ConnectionUtil.getConnection()) {
-                String sql = "INSERT INTO message(posted_by, message_text, time_posted_epoch) VALUES(?, ?, ?)";
-                PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-                
-                preparedStatement.setInt(1, posted_by); 
-                preparedStatement.setString(2, message_text);
-                preparedStatement.setLong(3, time_posted_epoch);
+    // Creates a message and returns it with its new message_id, or null if the text is blank or too long or the
+    // author does not exist
+    Message createMessage(int posted_by, String message_text, long time_posted_epoch);
 
-                preparedStatement.executeUpdate();
-                ResultSet rs = preparedStatement.getGeneratedKeys();
-                if(rs.next()){
-                    int generated_message_id = (int) rs.getLong(1);
-                    return new Message(generated_message_id, posted_by, message_text, time_posted_epoch);
-                }
-            }
-            catch (SQLException e) {
-                System.out.println(e.getMessage());
-            }
-        }
-        return null;
-    }
+    // Inserts a batch of already validated messages all together or not at all
+    // Returns the created messages, with their new ids, in the order given, or null if none were created
+    List<Message> createMessages(List<Message> messages);
 
-    // Retrieves and returns all messages stored in the database
-    public List<Message> getAllMessages() {
-        List<Message> messages = new ArrayList<>();
-        try (Connection connection = ConnectionUtil.getConnection()) {
-            String sql = "SELECT * FROM message";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            
-            ResultSet rs = preparedStatement.executeQuery();
-            while (rs.next()) {
-                Message message = new Message(rs.getInt("message_id"), 
-                                    rs.getInt("posted_by"), 
-                                    rs.getString("message_text"), 
-                                    rs.getLong("time_posted_epoch"));
-                messages.add(message);
-            }
-        }
-        catch (SQLException e) {
-            System.out.println(e.getMessage());
-        }
-        return messages;
-    }
+    // Returns which of the given account_ids exist
+    Set<Integer> getExistingAccountIds(Set<Integer> account_ids);
 
-    // Fetches a single message record by its unique message_id
-    public Message getMessageByMessageID(int message_id) {
-        try (Connection connection = ConnectionUtil.getConnection()) {
-            String sql = "SELECT * FROM message WHERE message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+    // Returns every message
+    List<Message> getAllMessages();
 
-            preparedStatement.setInt(1, message_id);
+    // Returns the message with this message_id, or null if there is none
+    Message getMessageByMessageID(int message_id);
 
-            ResultSet rs = preparedStatement.executeQuery();
-            while (rs.next()) {
-                Message message = new Message(rs.getInt("message_id"), 
-                                    rs.getInt("posted_by"), 
-                                    rs.getString("message_text"), 
-                                    rs.getLong("time_posted_epoch"));
-                return message;
-            }
-        }
-        catch (SQLException e) {
-            System.out.println(e.getMessage());
-        }
-        return null;
-    }
+    // Deletes a message and returns it as it was when deleted, or null if there was no such message
+    Message deleteMessageByMessageID(int message_id);
 
-    // Deletes a message record by its unique message_id and returns the deletion status
-    public Boolean deleteMessageByMessageID(int message_id) {
-        try (Connection connection = ConnectionUtil.getConnection()) {
-            String sql = "DELETE FROM message WHERE message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+    // Replaces the text of a message and returns the message as it is after the update, or null if the text is
+    // blank or too long or there is no such message
+    Message updateMessageByMessageID(String message_text, int message_id);
 
-            preparedStatement.setInt(1, message_id);
+    // The same two writes limited to the messages of one account: a message posted by another account is left as it
+    // is and null returned, as if there were no such message
+    Message deleteMessageByMessageID(int message_id, int posted_by);
 
-            return preparedStatement.executeUpdate() > 0;
-        }
-        catch (SQLException e) {
-            System.out.println(e.getMessage());
-        }
-        return false;
-    }
+    Message updateMessageByMessageID(String message_text, int message_id, int posted_by);
 
-    // Updates the text of a message record for the given message_id
-    // Returns true if the update was successful, false otherwise
-    public Boolean updateMessageByMessageID(String message_text, int message_id) {
-        if (!message_text.isBlank() && message_text.length() < 256) {
-            try (Connection connection = ConnectionUtil.getConnection()) {
-                String sql = "UPDATE message SET message_text = ? WHERE message_id = ?";
-                PreparedStatement preparedStatement = connection.prepareStatement(sql);
+    // Returns every message posted by the account, or null if they could not be read
+    List<Message> getAllMessageByUserID(int user_id);
 
-                preparedStatement.setString(1, message_text);
-                preparedStatement.setInt(2, message_id);
+    // Returns one page of messages using message_id as a keyset cursor
+    // Only messages with after < message_id < before are considered; when before is set but after is not, the page is
+    // the newest messages just below before, otherwise it is the oldest messages just above after
+    // posted_by may be null to page over all messages
+    List<Message> getMessagesPage(Integer posted_by, int after, int before, int limit);
 
-                return preparedStatement.executeUpdate() > 0;
-            }
-            catch (SQLException e) {
-                System.out.println(e.getMessage());
-            }
-        }
-        return false;
-    }
-
-    // Retrieves all messages posted by a specific user based on their user_id
-    public List<Message> getAllMessageByUserID(int user_id) {
-        List<Message> messages = new ArrayList<>();
-        try (Connection connection = ConnectionUtil.getConnection()) {
-            String sql = "SELECT * FROM message WHERE posted_by = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-
-            preparedStatement.setInt(1, user_id);
-
-            ResultSet rs = preparedStatement.executeQuery();
-            while (rs.next()) {
-                Message message = new Message(rs.getInt("message_id"), 
-                                    rs.getInt("posted_by"), 
-                                    rs.getString("message_text"), 
-                                    rs.getLong("time_posted_epoch"));
-                messages.add(message);
-            }
-        }
-        catch (SQLException e) {
-            System.out.println(e.getMessage());
-        }
-        return messages;
-    }
+    // Hands every message, or every message of one account when posted_by is not null, to the sink one at a time
+    void forEachMessage(Integer posted_by, MessageSink sink) throws IOException;
 }
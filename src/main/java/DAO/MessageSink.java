@@ -0,0 +1,14 @@
+package DAO;
+
+import Model.Message;
+
+import java.io.IOException;
+
+// Receives messages one at a time while a query's result set is being read, so that callers can process rows without
+// the DAO building a list of the whole result first
+@FunctionalInterface
+public interface MessageSink {
+
+    // Called once per row, in result set order
+    void accept(Message message) throws IOException;
+}
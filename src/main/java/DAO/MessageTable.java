@@ -0,0 +1,28 @@
+package DAO;
+
+import Model.Message;
+
+import java.util.function.Consumer;
+
+// The message table of an InMemoryStore: messages indexed by message_id
+// HeapMessageTable keeps the Message objects themselves; MappedMessageTable keeps them encoded outside the heap and
+// builds a new Message on every read. Either way, a message handed out must not be modified
+public interface MessageTable {
+
+    // Returns the message, or null if there is none
+    Message get(int message_id);
+
+    // Stores the message under its message_id, replacing any message already there
+    void put(Message message);
+
+    // Replaces the text of the message, if it exists, and returns the updated message. beforeApply is called with
+    // the updated message just before other threads can see it; if a concurrent change gets in first, the update is
+    // retried and beforeApply called again
+    Message updateText(int message_id, String message_text, Consumer<Message> beforeApply);
+
+    // Removes the message and returns it, or returns null if there was none
+    Message remove(int message_id);
+
+    // Returns the highest message_id ever stored, or -1 if none was; ids above it have no message
+    int maxKey();
+}
@@ -0,0 +1,488 @@
+package DAO;
+
+import Model.Account;
+import Model.Message;
+import Util.Metrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// Keeps an InMemoryStore durable in a directory, with a WriteAheadLog of every change and periodic snapshots
+// A snapshot, snapshot-<segment>.bin, holds every account and message as of the start of that log segment, so startup
+// loads the newest snapshot and replays the segments from its number on. Snapshots are written while writes go on:
+// the log is rotated first, then the store is walked without stopping writers, so the snapshot may already hold some
+// changes of the new segment. Replaying those again is harmless, since every record carries the whole new state
+// Once a snapshot is on disk the segments and snapshots before it are deleted
+// When the directory holds neither, the store is filled from the database and a first snapshot is written, so an
+// existing database carries over to the persistent engine
+public class PersistentStore implements AutoCloseable {
+
+    private static final long SNAPSHOT_MAGIC = 0x534d534e41505631L; // "SMSNAPV1"
+    private static final byte SNAPSHOT_ACCOUNT = 1;
+    private static final byte SNAPSHOT_MESSAGE = 2;
+    private static final byte SNAPSHOT_END = 0;
+
+    private final File directory;
+    private final InMemoryStore store;
+    private final WriteAheadLog log;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final long snapshotIntervalMillis;
+    private final long snapshotLogBytes;
+    private final Thread snapshotter;
+    private final Object snapshotLock = new Object();
+    private final Object stopSignal = new Object();
+    private volatile long lastSnapshotMillis;
+    private long snapshots;
+    private volatile boolean closed;
+
+    private PersistentStore(File directory, InMemoryStore store, WriteAheadLog log, FileChannel lockChannel,
+                            FileLock lock, long snapshotIntervalMillis, long snapshotLogBytes) {
+        this.directory = directory;
+        this.store = store;
+        this.log = log;
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+        this.snapshotIntervalMillis = snapshotIntervalMillis;
+        this.snapshotLogBytes = snapshotLogBytes;
+        this.lastSnapshotMillis = System.currentTimeMillis();
+        store.log = log;
+        if (snapshotIntervalMillis > 0 || snapshotLogBytes > 0) {
+            snapshotter = new Thread(this::snapshotWhenDue, "store-snapshot");
+            snapshotter.setDaemon(true);
+            snapshotter.start();
+        }
+        else {
+            snapshotter = null;
+        }
+    }
+
+    // Recovers the store kept in directory, or creates it there from the database, and starts logging its changes
+    // A snapshot is taken every snapshotIntervalMillis, or once the current log segment exceeds snapshotLogBytes;
+    // 0 turns either trigger off
+    public static PersistentStore open(File directory, WriteAheadLog.SyncMode syncMode, long syncIntervalMillis,
+                                       long snapshotIntervalMillis, long snapshotLogBytes) throws IOException {
+        return open(directory, syncMode, syncIntervalMillis, snapshotIntervalMillis, snapshotLogBytes,
+                new HeapMessageTable());
+    }
+
+    // As above, keeping the recovered messages in the given, empty, table
+    public static PersistentStore open(File directory, WriteAheadLog.SyncMode syncMode, long syncIntervalMillis,
+                                       long snapshotIntervalMillis, long snapshotLogBytes, MessageTable messageTable)
+            throws IOException {
+        Files.createDirectories(directory.toPath());
+        FileChannel lockChannel = FileChannel.open(new File(directory, "lock").toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        }
+        catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IllegalStateException(directory + " is already in use by another persistent store");
+        }
+        try {
+            long started = System.nanoTime();
+            Recovery recovery = recover(directory, messageTable);
+            InMemoryStore store = recovery.store;
+            long segment = recovery.nextSegment;
+            if (recovery.fresh) {
+                store = InMemoryStore.loadFromDatabase(messageTable);
+                writeSnapshot(directory, store, segment);
+            }
+            System.out.println("Opened the persistent store in " + directory + " in "
+                    + (System.nanoTime() - started) / 1_000_000 + " ms: " + recovery.describe());
+            WriteAheadLog log = new WriteAheadLog(directory, segment, syncMode, syncIntervalMillis);
+            PersistentStore persistent = new PersistentStore(directory, store, log, lockChannel, lock,
+                    snapshotIntervalMillis, snapshotLogBytes);
+            Metrics.counter("storage_wal_records_total", "Records appended to the write-ahead log.", "",
+                    log::getRecords);
+            Metrics.counter("storage_wal_syncs_total", "Times the write-ahead log was forced to disk.", "",
+                    log::getSyncs);
+            Metrics.counter("storage_snapshots_total", "Snapshots written by the persistent store.", "",
+                    persistent::getSnapshots);
+            return persistent;
+        }
+        catch (IOException | RuntimeException e) {
+            lock.release();
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    public InMemoryStore getStore() {
+        return store;
+    }
+
+    public synchronized long getSnapshots() {
+        return snapshots;
+    }
+
+    // Runs on the snapshotter thread until close(), which wakes it with notify: an interrupt during a FileChannel call
+    // would close the channel
+    private void snapshotWhenDue() {
+        while (true) {
+            synchronized (stopSignal) {
+                try {
+                    if (!closed) {
+                        stopSignal.wait(1000);
+                    }
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            try {
+                boolean due = snapshotIntervalMillis > 0
+                        && System.currentTimeMillis() - lastSnapshotMillis >= snapshotIntervalMillis
+                        || snapshotLogBytes > 0 && log.segmentBytes() >= snapshotLogBytes;
+                if (due && log.segmentBytes() > 0) {
+                    snapshot();
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                System.out.println("Could not write a snapshot of the persistent store: " + e);
+            }
+        }
+    }
+
+    // Writes a snapshot of the store and deletes the log segments and snapshots it replaces
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            long segment = log.rotate();
+            writeSnapshot(directory, store, segment);
+            lastSnapshotMillis = System.currentTimeMillis();
+            synchronized (this) {
+                snapshots++;
+            }
+            for (File file : list(directory)) {
+                long number = WriteAheadLog.segmentOf(file.getName());
+                if (number < 0) {
+                    number = snapshotOf(file.getName());
+                }
+                if (number >= 0 && number < segment) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            }
+        }
+    }
+
+    static File snapshotFile(File directory, long segment) {
+        return new File(directory, String.format("snapshot-%020d.bin", segment));
+    }
+
+    private static long snapshotOf(String name) {
+        if (!name.startsWith("snapshot-") || !name.endsWith(".bin")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(9, name.length() - 4));
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Writes every account, then every message, to a temporary file with a CRC32C at the end, forces it and renames
+    // it into place, so a snapshot file either is complete or does not exist
+    private static void writeSnapshot(File directory, InMemoryStore store, long segment) throws IOException {
+        File temporary = new File(directory, "snapshot.tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32C());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeLong(SNAPSHOT_MAGIC);
+            int lastAccountId = store.accounts.maxKey();
+            for (int account_id = 0; account_id <= lastAccountId; account_id++) {
+                InMemoryStore.AccountEntry entry = store.accounts.get(account_id);
+                if (entry != null) {
+                    out.writeByte(SNAPSHOT_ACCOUNT);
+                    out.writeInt(account_id);
+                    writeString(out, entry.account.getUsername());
+                    writeString(out, entry.account.getPassword());
+                }
+            }
+            int lastMessageId = store.messages.maxKey();
+            for (int message_id = 0; message_id <= lastMessageId; message_id++) {
+                Message message = store.messages.get(message_id);
+                if (message != null) {
+                    out.writeByte(SNAPSHOT_MESSAGE);
+                    out.writeInt(message_id);
+                    out.writeInt(message.getPosted_by());
+                    out.writeLong(message.getTime_posted_epoch());
+                    writeString(out, message.getMessage_text());
+                }
+            }
+            // read last, so they cover every id walked above, including those of deleted messages
+            out.writeByte(SNAPSHOT_END);
+            out.writeInt(store.lastAccountId.get());
+            out.writeInt(store.lastMessageId.get());
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            file.getChannel().force(true);
+        }
+        File target = snapshotFile(directory, segment);
+        try {
+            Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        forceDirectory(directory);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Makes the rename of a snapshot durable; not every platform can open a directory, and those that cannot
+    // persist renames on their own
+    private static void forceDirectory(File directory) {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        catch (IOException e) {
+            // best effort
+        }
+    }
+
+    // The state being rebuilt: accounts and messages by id, replayed in log order, loaded into a store at the end
+    private static final class Recovery implements WriteAheadLog.Replay {
+        final TreeMap<Integer, Account> accounts = new TreeMap<>();
+        final TreeMap<Integer, Message> messages = new TreeMap<>();
+        int lastAccountId;
+        int lastMessageId;
+        long snapshot = -1;
+        long records;
+        int segments;
+        long truncatedBytes;
+        boolean fresh;
+        long nextSegment = 1;
+        InMemoryStore store;
+
+        @Override
+        public void accountPut(Account account) {
+            accounts.put(account.getAccount_id(), account);
+            lastAccountId = Math.max(lastAccountId, account.getAccount_id());
+            records++;
+        }
+
+        @Override
+        public void messagePut(Message message) {
+            messages.put(message.getMessage_id(), message);
+            lastMessageId = Math.max(lastMessageId, message.getMessage_id());
+            records++;
+        }
+
+        @Override
+        public void messageDeleted(int message_id) {
+            messages.remove(message_id);
+            records++;
+        }
+
+        String describe() {
+            if (fresh) {
+                return "filled from the database";
+            }
+            return accounts.size() + " accounts and " + messages.size() + " messages from "
+                    + (snapshot >= 0 ? "snapshot " + snapshot : "no snapshot") + " and " + records
+                    + " log records in " + segments + " segments"
+                    + (truncatedBytes > 0 ? ", truncated " + truncatedBytes + " bytes of a torn write" : "");
+        }
+    }
+
+    // Loads the newest readable snapshot and replays the log segments from its number on. A torn record can only be
+    // at the end of the last segment, where it is cut off; anywhere else the directory is corrupt and startup fails
+    private static Recovery recover(File directory, MessageTable messageTable) throws IOException {
+        Recovery recovery = new Recovery();
+        List<Long> snapshotNumbers = new ArrayList<>();
+        List<Long> segmentNumbers = new ArrayList<>();
+        for (File file : list(directory)) {
+            long number = snapshotOf(file.getName());
+            if (number >= 0) {
+                snapshotNumbers.add(number);
+            }
+            number = WriteAheadLog.segmentOf(file.getName());
+            if (number >= 0) {
+                segmentNumbers.add(number);
+            }
+        }
+        Collections.sort(snapshotNumbers, Collections.reverseOrder());
+        Collections.sort(segmentNumbers);
+        if (snapshotNumbers.isEmpty() && segmentNumbers.isEmpty()) {
+            recovery.fresh = true;
+            return recovery;
+        }
+
+        for (long number : snapshotNumbers) {
+            try {
+                readSnapshot(snapshotFile(directory, number), recovery);
+                recovery.snapshot = number;
+                break;
+            }
+            catch (IOException e) {
+                System.out.println("Skipping unreadable snapshot " + number + ": " + e);
+                recovery.accounts.clear();
+                recovery.messages.clear();
+                recovery.lastAccountId = 0;
+                recovery.lastMessageId = 0;
+            }
+        }
+        long expected = recovery.snapshot >= 0 ? recovery.snapshot : 1;
+        if (!segmentNumbers.isEmpty() && recovery.snapshot < 0 && segmentNumbers.get(0) != 1) {
+            throw new IllegalStateException("No readable snapshot in " + directory + " and the log starts at segment "
+                    + segmentNumbers.get(0));
+        }
+        long last = segmentNumbers.isEmpty() ? -1 : segmentNumbers.get(segmentNumbers.size() - 1);
+        for (long number : segmentNumbers) {
+            if (number < expected) {
+                continue;
+            }
+            if (number != expected) {
+                throw new IllegalStateException("Log segment " + expected + " is missing from " + directory);
+            }
+            File segment = WriteAheadLog.segmentFile(directory, number);
+            long length = segment.length();
+            long valid = WriteAheadLog.replay(segment, recovery);
+            recovery.segments++;
+            if (valid < length) {
+                if (number != last) {
+                    throw new IllegalStateException("Log segment " + number + " in " + directory
+                            + " is corrupt at byte " + valid);
+                }
+                try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(valid);
+                    channel.force(true);
+                }
+                recovery.truncatedBytes = length - valid;
+            }
+            expected++;
+        }
+        recovery.nextSegment = Math.max(expected, last + 1);
+
+        InMemoryStore store = new InMemoryStore(messageTable);
+        for (Account account : recovery.accounts.values()) {
+            store.addAccount(account);
+        }
+        for (Message message : recovery.messages.values()) {
+            store.addMessage(message);
+        }
+        store.lastAccountId.accumulateAndGet(recovery.lastAccountId, Math::max);
+        store.lastMessageId.accumulateAndGet(recovery.lastMessageId, Math::max);
+        recovery.store = store;
+        return recovery;
+    }
+
+    private static void readSnapshot(File file, Recovery recovery) throws IOException {
+        try (FileInputStream input = new FileInputStream(file)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(input, 1 << 16), new CRC32C());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readLong() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a snapshot");
+            }
+            Map<Integer, Account> accounts = recovery.accounts;
+            Map<Integer, Message> messages = recovery.messages;
+            while (true) {
+                byte type = in.readByte();
+                if (type == SNAPSHOT_ACCOUNT) {
+                    int account_id = in.readInt();
+                    accounts.put(account_id, new Account(account_id, readString(in), readString(in)));
+                }
+                else if (type == SNAPSHOT_MESSAGE) {
+                    int message_id = in.readInt();
+                    int posted_by = in.readInt();
+                    long time_posted_epoch = in.readLong();
+                    messages.put(message_id, new Message(message_id, posted_by, readString(in), time_posted_epoch));
+                }
+                else if (type == SNAPSHOT_END) {
+                    break;
+                }
+                else {
+                    throw new IOException("Unknown snapshot entry type " + type);
+                }
+            }
+            recovery.lastAccountId = in.readInt();
+            recovery.lastMessageId = in.readInt();
+            long computed = checked.getChecksum().getValue();
+            if (in.readLong() != computed) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+        }
+        catch (EOFException e) {
+            throw new IOException("Snapshot is cut short", e);
+        }
+    }
+
+    private static File[] list(File directory) {
+        File[] files = directory.listFiles();
+        return files == null ? new File[0] : files;
+    }
+
+    // Stops the background threads, forces the log and releases the directory; the store must not be written after
+    @Override
+    public void close() throws IOException {
+        synchronized (stopSignal) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            stopSignal.notifyAll();
+        }
+        if (snapshotter != null) {
+            try {
+                snapshotter.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.close();
+        lock.release();
+        lockChannel.close();
+    }
+}
@@ -0,0 +1,114 @@
+package DAO;
+
+import Util.AppConfig;
+import Util.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+
+// Picks the storage engine at startup from the storage.engine setting and hands out its DAOs
+// jdbc (the default) runs every call against the relational database. memory serves every call from an
+// InMemoryStore filled from the database at startup, without JDBC; its writes are not written back to the database
+// persistent is the memory engine made durable by a PersistentStore in storage.dir: it recovers from its own snapshot
+// and write-ahead log at startup, and only reads the database the first time, when the directory is empty
+// Both keep their messages on the heap, or in memory-mapped files outside it when storage.offHeap.enabled is set
+// The message and account DAOs of one Storage share their data, so services that work together must be given the
+// DAOs of the same Storage
+public class Storage {
+
+    private final MessageDAO messageDAO;
+    private final AccountDAO accountDAO;
+
+    private Storage(MessageDAO messageDAO, AccountDAO accountDAO) {
+        this.messageDAO = messageDAO;
+        this.accountDAO = accountDAO;
+    }
+
+    // Opens the engine named by storage.engine
+    public static Storage open() {
+        String engine = AppConfig.getString("storage.engine", "jdbc");
+        if (engine.equals("memory")) {
+            return inMemory(InMemoryStore.loadFromDatabase(messageTable()));
+        }
+        if (engine.equals("persistent")) {
+            return persistent(openPersistentStore());
+        }
+        if (!engine.equals("jdbc")) {
+            System.out.println("Ignoring invalid value for storage.engine: " + engine);
+        }
+        return jdbc();
+    }
+
+    public static Storage jdbc() {
+        return new Storage(new JdbcMessageDAO(), new JdbcAccountDAO());
+    }
+
+    public static Storage inMemory(InMemoryStore store) {
+        return new Storage(new InMemoryMessageDAO(store), new InMemoryAccountDAO(store));
+    }
+
+    // Serves the DAOs from a persistent store, which is closed, forcing its log, when the JVM shuts down
+    public static Storage persistent(PersistentStore persistentStore) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                persistentStore.close();
+            }
+            catch (IOException | RuntimeException e) {
+                System.out.println("Could not close the persistent store: " + e);
+            }
+        }, "store-close"));
+        return inMemory(persistentStore.getStore());
+    }
+
+    private static PersistentStore openPersistentStore() {
+        String sync = AppConfig.getString("storage.wal.sync", "always");
+        WriteAheadLog.SyncMode syncMode;
+        try {
+            syncMode = WriteAheadLog.SyncMode.valueOf(sync.toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException e) {
+            System.out.println("Ignoring invalid value for storage.wal.sync: " + sync);
+            syncMode = WriteAheadLog.SyncMode.ALWAYS;
+        }
+        File directory = new File(AppConfig.getString("storage.dir", "./data"));
+        try {
+            return PersistentStore.open(directory, syncMode,
+                    Math.max(1, AppConfig.getLong("storage.wal.syncIntervalMillis", 10)),
+                    AppConfig.getLong("storage.snapshot.intervalMillis", 300_000),
+                    AppConfig.getLong("storage.snapshot.logBytes", 64L * 1024 * 1024), messageTable());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not open the persistent store in " + directory, e);
+        }
+    }
+
+    // The message table of the memory and persistent engines
+    private static MessageTable messageTable() {
+        if (!AppConfig.getBoolean("storage.offHeap.enabled", false)) {
+            return new HeapMessageTable();
+        }
+        File directory = new File(AppConfig.getString("storage.offHeap.dir", System.getProperty("java.io.tmpdir")));
+        try {
+            MappedMessageTable table = new MappedMessageTable(directory,
+                    AppConfig.getInt("storage.offHeap.segmentBytes", 64 * 1024 * 1024));
+            Metrics.gauge("storage_offheap_record_bytes", "Bytes of message records in the mapped message table.", "",
+                    table::getRecordBytes);
+            Metrics.gauge("storage_offheap_mapped_bytes", "Bytes of memory-mapped message segments.", "",
+                    table::getMappedBytes);
+            return table;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not create the mapped message table in " + directory, e);
+        }
+    }
+
+    public MessageDAO getMessageDAO() {
+        return messageDAO;
+    }
+
+    public AccountDAO getAccountDAO() {
+        return accountDAO;
+    }
+}
@@ -0,0 +1,412 @@
+package DAO;
+
+import Model.Account;
+import Model.Message;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+// Append-only log of the changes made to a persistent InMemoryStore, written with a FileChannel
+// The log is a sequence of numbered segment files, wal-<segment>.log. Each record is its length, a CRC32C of its
+// body, and the body: a type byte and the full new state of one account or message, or the id of a deleted message.
+// Records carry whole states rather than differences, so replaying a record twice, or over a snapshot that already
+// holds it, gives the same result as replaying it once
+// Appends go to a buffer under this object's lock, which the DAOs also hold while they apply the change, so records
+// are logged in the order the changes were applied. sync() then makes them durable according to the SyncMode, outside
+// that lock, so one fsync covers every change appended by the writers that were waiting for it
+public class WriteAheadLog implements AutoCloseable {
+
+    // When an acknowledged change is durable
+    public enum SyncMode {
+        // on disk before the write returns; concurrent writers share each fsync
+        ALWAYS,
+        // handed to the operating system before the write returns and fsynced every syncIntervalMillis, so a power
+        // failure can lose that much, but a crash of the process loses nothing
+        INTERVAL,
+        // handed to the operating system before the write returns, which decides when it reaches the disk
+        NONE
+    }
+
+    static final byte ACCOUNT_PUT = 1;
+    static final byte MESSAGE_PUT = 2;
+    static final byte MESSAGE_DELETE = 3;
+
+    // Length and CRC in front of every record body
+    private static final int RECORD_HEADER = 8;
+    // Larger bodies cannot be valid, so a length above this is read as a torn or corrupt record
+    private static final int MAX_RECORD = 1 << 20;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Receives the records of a segment as they are replayed
+    public interface Replay {
+        void accountPut(Account account);
+
+        void messagePut(Message message);
+
+        void messageDeleted(int message_id);
+    }
+
+    private final File directory;
+    private final SyncMode syncMode;
+    private final Thread syncer;
+    // Held while forcing, so concurrent sync() calls queue up behind one fsync instead of issuing their own; taken
+    // before this object's lock, never while holding it
+    private final Object syncLock = new Object();
+    private final Object stopSignal = new Object();
+    private final CRC32C crc = new CRC32C();
+    private final ByteBuffer body = ByteBuffer.allocate(MAX_RECORD);
+    // Records appended but not yet written to the channel; room for at least the largest record
+    private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER + MAX_RECORD);
+
+    private FileChannel channel;
+    private long segment;
+    private long segmentBytes;
+    // Bytes appended, and bytes written to a channel, since the log was opened, across segments
+    private long appended;
+    private long written;
+    // Bytes known to be on disk
+    private volatile long synced;
+    private volatile boolean closed;
+
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+
+    // Starts a new, empty segment numbered segment in directory; the existing segments must already be replayed
+    public WriteAheadLog(File directory, long segment, SyncMode syncMode, long syncIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.syncMode = syncMode;
+        this.segment = segment;
+        this.channel = create(segment);
+        if (syncMode == SyncMode.INTERVAL) {
+            syncer = new Thread(() -> syncEvery(syncIntervalMillis), "wal-sync");
+            syncer.setDaemon(true);
+            syncer.start();
+        }
+        else {
+            syncer = null;
+        }
+    }
+
+    // Runs on the syncer thread until close(). The thread is woken with notify rather than interrupted, since an
+    // interrupt during a FileChannel call closes the channel
+    private void syncEvery(long intervalMillis) {
+        while (true) {
+            synchronized (stopSignal) {
+                try {
+                    if (!closed) {
+                        stopSignal.wait(intervalMillis);
+                    }
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            try {
+                syncAll();
+            }
+            catch (IOException e) {
+                System.out.println("Could not sync the write-ahead log: " + e);
+            }
+        }
+    }
+
+    static File segmentFile(File directory, long segment) {
+        return new File(directory, String.format("wal-%020d.log", segment));
+    }
+
+    // Returns the segment number of a segment file name, or -1 if it is not one
+    static long segmentOf(String name) {
+        if (!name.startsWith("wal-") || !name.endsWith(".log")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(4, name.length() - 4));
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private FileChannel create(long segment) throws IOException {
+        return FileChannel.open(segmentFile(directory, segment).toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+    }
+
+    // The append methods are called with this object's lock held, before the change is applied, and return the
+    // position to pass to sync(). They throw UncheckedIOException if the log cannot be written, in which case the
+    // change must not be applied
+    long appendAccount(Account account) {
+        body.clear();
+        body.put(ACCOUNT_PUT);
+        body.putInt(account.getAccount_id());
+        putString(account.getUsername());
+        putString(account.getPassword());
+        return append();
+    }
+
+    long appendMessage(Message message) {
+        body.clear();
+        body.put(MESSAGE_PUT);
+        body.putInt(message.getMessage_id());
+        body.putInt(message.getPosted_by());
+        body.putLong(message.getTime_posted_epoch());
+        putString(message.getMessage_text());
+        return append();
+    }
+
+    long appendDelete(int message_id) {
+        body.clear();
+        body.put(MESSAGE_DELETE);
+        body.putInt(message_id);
+        return append();
+    }
+
+    // Position just after the last record appended; called with this object's lock held
+    long position() {
+        return appended;
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            body.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        body.putInt(bytes.length);
+        body.put(bytes);
+    }
+
+    private long append() {
+        if (closed) {
+            throw new IllegalStateException("The write-ahead log is closed");
+        }
+        body.flip();
+        crc.reset();
+        crc.update(body.array(), 0, body.limit());
+        int length = body.limit();
+        try {
+            if (buffer.remaining() < RECORD_HEADER + length) {
+                flush();
+            }
+            buffer.putInt(length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(body);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not write to the write-ahead log", e);
+        }
+        appended += RECORD_HEADER + length;
+        segmentBytes += RECORD_HEADER + length;
+        records.incrementAndGet();
+        return appended;
+    }
+
+    // Writes the buffered records to the channel; called with this object's lock held
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Returns once the records up to position are as durable as the SyncMode promises
+    void sync(long position) {
+        if (synced >= position) {
+            return;
+        }
+        try {
+            if (syncMode == SyncMode.ALWAYS) {
+                synchronized (syncLock) {
+                    // the writer that held the lock before may already have forced this position
+                    if (synced < position) {
+                        force();
+                    }
+                }
+            }
+            else {
+                synchronized (this) {
+                    if (written < position) {
+                        flush();
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not sync the write-ahead log", e);
+        }
+    }
+
+    // Forces everything appended so far to disk
+    public void syncAll() throws IOException {
+        synchronized (syncLock) {
+            force();
+        }
+    }
+
+    // Called with syncLock held. Writes the buffer under this object's lock, then forces without it, so writers can
+    // keep appending during the fsync
+    private void force() throws IOException {
+        FileChannel current;
+        long upTo;
+        synchronized (this) {
+            flush();
+            current = channel;
+            upTo = written;
+        }
+        current.force(false);
+        synced = upTo;
+        syncs.incrementAndGet();
+    }
+
+    // Finishes the current segment, forcing it to disk, and starts the next one. Returns the new segment's number:
+    // every change logged before the call is in a lower segment
+    long rotate() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                flush();
+                channel.force(false);
+                channel.close();
+                synced = written;
+                segment++;
+                segmentBytes = 0;
+                channel = create(segment);
+                return segment;
+            }
+        }
+    }
+
+    // Bytes appended to the current segment
+    synchronized long segmentBytes() {
+        return segmentBytes;
+    }
+
+    public long getRecords() {
+        return records.get();
+    }
+
+    public long getSyncs() {
+        return syncs.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (stopSignal) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            stopSignal.notifyAll();
+        }
+        if (syncer != null) {
+            try {
+                syncer.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (syncLock) {
+            synchronized (this) {
+                flush();
+                channel.force(false);
+                channel.close();
+            }
+        }
+    }
+
+    // Replays the records of a segment in order and returns the length of the valid records at its start. Reading
+    // stops at the first record that is cut short or fails its CRC, which is how a write torn by a crash looks
+    static long replay(File segment, Replay replay) throws IOException {
+        try (FileChannel in = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            CRC32C crc = new CRC32C();
+            long valid = 0;
+            buffer.limit(0);
+            while (true) {
+                if (!fill(in, buffer, RECORD_HEADER)) {
+                    return valid;
+                }
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > MAX_RECORD) {
+                    return valid;
+                }
+                if (buffer.capacity() < length) {
+                    ByteBuffer larger = ByteBuffer.allocate(length);
+                    larger.put(buffer);
+                    larger.flip();
+                    buffer = larger;
+                }
+                if (!fill(in, buffer, length)) {
+                    return valid;
+                }
+                crc.reset();
+                crc.update(buffer.array(), buffer.position(), length);
+                if ((int) crc.getValue() != checksum) {
+                    return valid;
+                }
+                int end = buffer.position() + length;
+                apply(buffer, replay);
+                buffer.position(end);
+                valid += RECORD_HEADER + length;
+            }
+        }
+    }
+
+    // Makes at least needed bytes available in the buffer, reading more from the channel; false at end of file
+    private static boolean fill(FileChannel in, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return true;
+        }
+        buffer.compact();
+        while (buffer.position() < needed) {
+            if (in.read(buffer) < 0) {
+                buffer.flip();
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    private static void apply(ByteBuffer record, Replay replay) {
+        byte type = record.get();
+        switch (type) {
+            case ACCOUNT_PUT:
+                replay.accountPut(new Account(record.getInt(), getString(record), getString(record)));
+                break;
+            case MESSAGE_PUT:
+                int message_id = record.getInt();
+                int posted_by = record.getInt();
+                long time_posted_epoch = record.getLong();
+                replay.messagePut(new Message(message_id, posted_by, getString(record), time_posted_epoch));
+                break;
+            case MESSAGE_DELETE:
+                replay.messageDeleted(record.getInt());
+                break;
+            default:
+                throw new IllegalStateException("Unknown write-ahead log record type " + type);
+        }
+    }
+
+    private static String getString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+}
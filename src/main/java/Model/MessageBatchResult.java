@@ -0,0 +1,90 @@
+package Model;
+
+/**
+ * This is a class that models the outcome of one message in a POST /messages/batch request.
+ */
+public class MessageBatchResult {
+    /**
+     * The position of the message in the request array, starting at 0.
+     */
+    public int index;
+    /**
+     * The HTTP status this message would have got from POST /messages: 200 if it was created, 400 if it failed
+     * validation, 500 if the batch could not be written.
+     */
+    public int status;
+    /**
+     * The id generated for the message, or null if it was not created.
+     */
+    public Integer message_id;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageBatchResult(){
+    }
+    /**
+     * @param index
+     * @param status
+     * @param message_id
+     */
+    public MessageBatchResult(int index, int status, Integer message_id) {
+        this.index = index;
+        this.status = status;
+        this.message_id = message_id;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @return index
+     */
+    public int getIndex() {
+        return index;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @param index
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @return status
+     */
+    public int getStatus() {
+        return status;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @param status
+     */
+    public void setStatus(int status) {
+        this.status = status;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @return message_id
+     */
+    public Integer getMessage_id() {
+        return message_id;
+    }
+    /**
+     * Properly named getters and setters are necessary for Jackson ObjectMapper to work. You may use them as well.
+     * @param message_id
+     */
+    public void setMessage_id(Integer message_id) {
+        this.message_id = message_id;
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "MessageBatchResult{" +
+                "index=" + index +
+                ", status=" + status +
+                ", message_id=" + message_id +
+                '}';
+    }
+}
@@ -2,6 +2,11 @@ package Service;
 
 import Model.Account;
 import DAO.AccountDAO;
+import DAO.Storage;
+import Util.AppConfig;
+import Util.Metrics;
+
+import java.util.concurrent.CompletableFuture;
 
 // Service class to handle account-related operations
 public class AccountService {
@@ -9,23 +14,148 @@ public class AccountService {
     // DAO instance for interacting with the account database
     private AccountDAO accountDAO;
 
-    // Default constructor initializing the AccountDAO
+    // Sessions started by logins, or null when session tokens are disabled
+    private SessionStore sessionStore;
+
+    // Hashes passwords for storage and checks logins against them, on its own bounded executor
+    private final PasswordHasher passwordHasher;
+
+    // Default constructor opening the configured storage engine
     public AccountService() {
-        accountDAO = new AccountDAO();
+        this(Storage.open().getAccountDAO());
     }
 
     // Constructor for dependency injection of AccountDAO
     public AccountService(AccountDAO accountDAO) {
+        this(accountDAO, PasswordHasher.shared());
+    }
+
+    // Constructor for dependency injection of AccountDAO and PasswordHasher
+    public AccountService(AccountDAO accountDAO, PasswordHasher passwordHasher) {
         this.accountDAO = accountDAO;
+        this.passwordHasher = passwordHasher;
+        if (AppConfig.getBoolean("auth.session.enabled", true)) {
+            this.sessionStore = new SessionStore(AppConfig.getInt("auth.session.maxSessions", 100000),
+                    AppConfig.getLong("auth.session.ttlMillis", 1800000));
+        }
+        registerMetrics();
     }
 
-    // Calls the DAO method to insert a new account, returning the account object without account_id
+    // Publishes the session and password hashing counters on /metrics; a newer service instance replaces an older one's
+    private void registerMetrics() {
+        passwordHasher.registerMetrics();
+        SessionStore sessions = sessionStore;
+        if (sessions == null) {
+            return;
+        }
+        Metrics.gauge("sessions_active", "Sessions held by the session store, including expired ones not yet removed.",
+                "", sessions::size);
+        Metrics.counter("sessions_created_total", "Sessions started by logins.", "", sessions::getCreated);
+        Metrics.counter("sessions_expired_total", "Tokens rejected because their session had expired.", "",
+                sessions::getExpired);
+        Metrics.counter("sessions_evicted_total", "Sessions dropped to keep the store within its size.", "",
+                sessions::getEvicted);
+    }
+
+    // Hashes the password and inserts the account with the hash, returning the account with its new account_id, or
+    // null if the username is blank or taken or the password is shorter than 4 characters
+    // The returned account carries the password as it was given, never the stored hash. A taken username is
+    // turned away by insertAccount, after the hash: checking before it would bring back the username lookup the
+    // JDBC engine's Bloom filter saves on every registration of a new name
     public Account addAccount(Account account) {
-        return accountDAO.insertAccount(account.getUsername(), account.getPassword());
+        String username = account.getUsername();
+        String password = account.getPassword();
+        if (!acceptable(username, password)) {
+            return null;
+        }
+        return withPassword(accountDAO.insertAccount(username, passwordHasher.hash(password)), password);
     }
 
-    // Calls the DAO method to log in an account with the provided username and password
+    // Looks the account up by username and checks the password against its stored hash, returning the account or
+    // null if the username is unknown or the password does not match
+    // A password still stored in plaintext, or hashed at another cost, is hashed again with the current settings
+    // once it has matched
     public Account loginAccount(Account account) {
-        return accountDAO.loginAccount(account.getUsername(), account.getPassword());
+        String username = account.getUsername();
+        String password = account.getPassword();
+        Account stored = username != null ? accountDAO.getAccountByUsername(username) : null;
+        if (stored == null) {
+            passwordHasher.verifyNothing(password);
+            return null;
+        }
+        if (!passwordHasher.verify(password, stored.getPassword())) {
+            return null;
+        }
+        if (passwordHasher.needsRehash(stored.getPassword())) {
+            accountDAO.updatePassword(stored.getAccount_id(), passwordHasher.hash(password));
+        }
+        return withPassword(stored, password);
+    }
+
+    // Starts a session for an account that has logged in and returns its token, or null when sessions are disabled
+    public String startSession(Account account) {
+        return sessionStore != null ? sessionStore.create(account.getAccount_id()) : null;
+    }
+
+    // Returns the account_id of the token's session, or null if the token is unknown or expired
+    // Runs in memory only, so an authenticated request never queries the account table
+    public Integer authenticate(String token) {
+        return sessionStore != null ? sessionStore.authenticate(token) : null;
+    }
+
+    // Ends the token's session
+    public void endSession(String token) {
+        if (sessionStore != null) {
+            sessionStore.remove(token);
+        }
+    }
+
+    // Asynchronous version of addAccount: the hash runs on the hashing executor and the insert on the database
+    // executor, so neither pool's threads wait on the other's work
+    public CompletableFuture<Account> addAccountAsync(Account account) {
+        String username = account.getUsername();
+        String password = account.getPassword();
+        if (!acceptable(username, password)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return passwordHasher.hashAsync(password)
+                .thenCompose(hash -> DbCall.async(() -> accountDAO.insertAccount(username, hash)))
+                .thenApply(inserted -> withPassword(inserted, password));
+    }
+
+    // Asynchronous version of loginAccount, split between the database and hashing executors like addAccountAsync
+    // A failed rehash does not fail the login; the password is hashed again at the next one
+    public CompletableFuture<Account> loginAccountAsync(Account account) {
+        String username = account.getUsername();
+        String password = account.getPassword();
+        return DbCall.async(() -> username != null ? accountDAO.getAccountByUsername(username) : null)
+                .thenCompose(stored -> {
+                    if (stored == null) {
+                        return passwordHasher.verifyNothingAsync(password).thenApply(ignored -> (Account) null);
+                    }
+                    return passwordHasher.verifyAsync(password, stored.getPassword()).thenCompose(matches -> {
+                        if (!matches) {
+                            return CompletableFuture.completedFuture((Account) null);
+                        }
+                        Account loggedIn = withPassword(stored, password);
+                        if (!passwordHasher.needsRehash(stored.getPassword())) {
+                            return CompletableFuture.completedFuture(loggedIn);
+                        }
+                        return passwordHasher.hashAsync(password)
+                                .thenCompose(hash -> DbCall.async(
+                                        () -> accountDAO.updatePassword(stored.getAccount_id(), hash)))
+                                .handle((updated, error) -> loggedIn);
+                    });
+                });
+    }
+
+    // The rules insertAccount applies, checked here on the password itself since the DAO only sees its hash
+    private static boolean acceptable(String username, String password) {
+        return username != null && !username.isBlank() && password != null && password.length() >= 4;
+    }
+
+    // The account as the client knows it, with the password it gave instead of the stored hash
+    private static Account withPassword(Account account, String password) {
+        return account != null ? new Account(account.getAccount_id(), account.getUsername(), password) : null;
     }
 }
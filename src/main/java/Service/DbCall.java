@@ -0,0 +1,24 @@
+package Service;
+
+import Util.BoundedExecutor;
+import Util.ConnectionUtil;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+// Runs a service call that does database work on the bounded database executor, when one is configured
+// Without one the call runs on the caller's thread and the future is already complete when it is returned, so callers
+// can use the same code path either way
+final class DbCall {
+
+    private DbCall() {
+    }
+
+    static <T> CompletableFuture<T> async(Supplier<T> call) {
+        BoundedExecutor executor = ConnectionUtil.getDbExecutor();
+        if (executor == null) {
+            return CompletableFuture.completedFuture(call.get());
+        }
+        return executor.submit(call);
+    }
+}
@@ -0,0 +1,62 @@
+package Service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Version counters of the message listings, used to answer conditional GETs without querying the database
+// There is one counter for the listing of all messages and one per account's listing. Every create, update and
+// delete bumps the global counter and its author's counter, after the write has completed, so a version read before
+// a query runs can only be older than the data the query returns, never newer
+// Account counters live in a fixed array of stripes indexed by account_id, so they take constant memory however many
+// accounts there are. Accounts that share a stripe also share a version: a write to one makes clients of the other
+// revalidate once, which costs a query but never serves a stale listing
+public class ListingVersions {
+
+    private static final int STRIPES = 4096;
+
+    // Random per instance and part of every ETag, so that tags handed out before a restart never match again
+    private final String nonce = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+    private final AtomicLong global = new AtomicLong();
+    private volatile long globalModifiedMillis = System.currentTimeMillis();
+
+    private final AtomicLongArray accounts = new AtomicLongArray(STRIPES);
+    private final AtomicLongArray accountsModifiedMillis = new AtomicLongArray(STRIPES);
+
+    public ListingVersions() {
+        long now = globalModifiedMillis;
+        for (int i = 0; i < STRIPES; i++) {
+            accountsModifiedMillis.set(i, now);
+        }
+    }
+
+    // Records a change to the listings that include the account's messages
+    public void bump(int account_id) {
+        long now = System.currentTimeMillis();
+        int stripe = stripe(account_id);
+        accountsModifiedMillis.set(stripe, now);
+        accounts.incrementAndGet(stripe);
+        globalModifiedMillis = now;
+        global.incrementAndGet();
+    }
+
+    // Returns the weak ETag of the listing of all messages when account_id is null, or of the account's listing
+    // Weak, since the same listing is served both compressed and uncompressed
+    public String etag(Integer account_id) {
+        if (account_id == null) {
+            return "W/\"" + nonce + "-" + global.get() + "\"";
+        }
+        int stripe = stripe(account_id);
+        return "W/\"" + nonce + "-" + stripe + "-" + accounts.get(stripe) + "\"";
+    }
+
+    // Returns when the listing last changed, or when this instance was created if it has not changed since
+    public long lastModifiedMillis(Integer account_id) {
+        return account_id == null ? globalModifiedMillis : accountsModifiedMillis.get(stripe(account_id));
+    }
+
+    private static int stripe(int account_id) {
+        return Math.floorMod(account_id, STRIPES);
+    }
+}
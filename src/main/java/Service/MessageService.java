@@ -1,9 +1,22 @@
 package Service;
 
 import Model.Message;
+import Model.MessageBatchResult;
+import DAO.GroupCommitWriter;
+import DAO.InMemoryMessageDAO;
 import DAO.MessageDAO;
+import DAO.MessageSink;
+import DAO.Storage;
+import Util.AppConfig;
+import Util.LruCache;
+import Util.Metrics;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 // Service class to handle message-related operations
 public class MessageService {
@@ -11,19 +24,180 @@ public class MessageService {
     // DAO instance for interacting with the message database
     private MessageDAO messageDAO;
 
-    // Default constructor initializing the MessageDAO
+    // Read-through cache of messages by message_id, or null when caching is disabled
+    private LruCache<Integer, Message> messageCache;
+
+    // Per-account timelines kept current by this service's writes, or null when disabled
+    private TimelineCache timelineCache;
+
+    // Group commit stage that coalesces concurrent creates into shared transactions, or null when disabled
+    private GroupCommitWriter groupCommitWriter;
+
+    // Versions of the message listings, bumped by every write, that let unchanged listings be answered with 304
+    private final ListingVersions listingVersions = new ListingVersions();
+
+    // Default constructor opening the configured storage engine
     public MessageService() {
-        messageDAO = new MessageDAO();
+        this(Storage.open().getMessageDAO());
     }
 
     // Constructor for dependency injection of MessageDAO
     public MessageService(MessageDAO messageDAO) {
         this.messageDAO = messageDAO;
+        // With the mapped message table every cached message is a heap copy of a record kept off the heap, and the
+        // caches at their usual sizes could hold five million of them, so both are off unless sized explicitly
+        boolean offHeap = messageDAO instanceof InMemoryMessageDAO && ((InMemoryMessageDAO) messageDAO).isOffHeap();
+        int cacheSize = AppConfig.getInt("cache.message.maxSize", offHeap ? 0 : 10000);
+        if (cacheSize > 0) {
+            this.messageCache = new LruCache<>(cacheSize, AppConfig.getLong("cache.message.ttlMillis", 60000));
+        }
+        int timelineAccounts = AppConfig.getInt("cache.timeline.maxAccounts", offHeap ? 0 : 1000);
+        if (timelineAccounts > 0) {
+            this.timelineCache = new TimelineCache(timelineAccounts, AppConfig.getInt("cache.timeline.maxMessages", 5000));
+        }
+        if (AppConfig.getBoolean("db.groupCommit.enabled", false)) {
+            this.groupCommitWriter = new GroupCommitWriter(messageDAO, AppConfig.getLong("db.groupCommit.windowMillis", 2),
+                    AppConfig.getInt("db.groupCommit.maxBatchSize", 256),
+                    AppConfig.getInt("db.groupCommit.queueCapacity", 4096));
+        }
+        registerMetrics();
+    }
+
+    // Publishes the cache and group commit counters on /metrics; a newer service instance replaces an older one's
+    private void registerMetrics() {
+        if (messageCache != null) {
+            registerCacheMetrics("message", messageCache);
+        }
+        if (timelineCache != null) {
+            registerCacheMetrics("timeline", timelineCache.getCache());
+        }
+        if (groupCommitWriter != null) {
+            GroupCommitWriter writer = groupCommitWriter;
+            Metrics.counter("group_commit_batches_total", "Transactions written by the group commit stage.", "",
+                    writer::getBatchCount);
+            Metrics.counter("group_commit_messages_total", "Messages written by the group commit stage.", "",
+                    writer::getMessageCount);
+            Metrics.gauge("group_commit_batch_size_max", "Largest group commit batch so far.", "",
+                    writer::getMaxBatchSize);
+            Metrics.gauge("group_commit_queue_delay_seconds_avg", "Mean time a message waited for its batch.", "",
+                    () -> writer.getAverageQueueDelayMicros() / 1e6);
+            Metrics.gauge("group_commit_queue_delay_seconds_max", "Longest time a message waited for its batch.", "",
+                    () -> writer.getMaxQueueDelayMicros() / 1e6);
+            Metrics.gauge("group_commit_queue_depth", "Inserts waiting for the group commit writer.", "",
+                    writer::getQueueDepth);
+            Metrics.counter("group_commit_overflows_total",
+                    "Inserts written directly because the group commit queue was full.", "", writer::getOverflowCount);
+        }
+    }
+
+    private static void registerCacheMetrics(String name, LruCache<?, ?> cache) {
+        String labels = "cache=\"" + name + "\"";
+        Metrics.counter("cache_hits_total", "Cache lookups answered from the cache.", labels, cache::getHits);
+        Metrics.counter("cache_misses_total", "Cache lookups that went to the database.", labels, cache::getMisses);
+        Metrics.counter("cache_evictions_total", "Entries evicted to make room.", labels, cache::getEvictions);
+    }
+
+    // Returns the group commit stage so its batch size and queueing delay can be read, or null when disabled
+    public GroupCommitWriter getGroupCommitWriter() {
+        return groupCommitWriter;
+    }
+
+    // Returns the timeline cache so its counters can be read, or null when timelines are not cached
+    public TimelineCache getTimelineCache() {
+        return timelineCache;
+    }
+
+    // Returns the message cache so its hit/miss/eviction counters can be read, or null when caching is disabled
+    public LruCache<Integer, Message> getMessageCache() {
+        return messageCache;
+    }
+
+    // Returns the ETag of the listing of all messages when account_id is null, or of the account's listing
+    public String getListingETag(Integer account_id) {
+        return listingVersions.etag(account_id);
+    }
+
+    // Returns when the listing of all messages, or the account's listing, last changed
+    public long getListingLastModified(Integer account_id) {
+        return listingVersions.lastModifiedMillis(account_id);
     }
 
     // Calls the DAO method to create a new message and returns the created message object
+    // With group commit enabled the insert shares a transaction with other creates arriving at the same time
     public Message addMessage(Message message) {
-        return messageDAO.createMessage(message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+        Message created = groupCommitWriter != null
+                ? groupCommitWriter.createMessage(message)
+                : messageDAO.createMessage(message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+        if (created != null && messageCache != null) {
+            messageCache.put(created.getMessage_id(), created);
+        }
+        if (created != null && timelineCache != null) {
+            timelineCache.append(created);
+        }
+        if (created != null) {
+            listingVersions.bump(created.getPosted_by());
+        }
+        return created;
+    }
+
+    // Validates a batch of messages with the same rules as addMessage and inserts the valid ones in one transaction
+    // Returns one result per message, in request order: 200 and the new message_id if it was created, 400 if it was
+    // rejected, 500 if it was valid but the batch insert failed
+    public List<MessageBatchResult> addMessages(List<Message> messages) {
+        return addMessages(messages, null);
+    }
+
+    // As above, for a batch whose messages were all checked to be posted by the request's authenticated account,
+    // given as authenticated_account_id; that account exists, so the authors are not looked up
+    public List<MessageBatchResult> addMessages(List<Message> messages, Integer authenticated_account_id) {
+        Set<Integer> existingAuthors;
+        if (authenticated_account_id != null) {
+            existingAuthors = Set.of(authenticated_account_id);
+        }
+        else {
+            Set<Integer> authors = new HashSet<>();
+            for (Message message : messages) {
+                if (message != null) {
+                    authors.add(message.getPosted_by());
+                }
+            }
+            existingAuthors = messageDAO.getExistingAccountIds(authors);
+        }
+
+        List<MessageBatchResult> results = new ArrayList<>(messages.size());
+        List<Message> valid = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            String message_text = message != null ? message.getMessage_text() : null;
+            boolean ok = message_text != null && !message_text.isBlank() && message_text.length() < 256
+                    && existingAuthors.contains(message.getPosted_by());
+            results.add(new MessageBatchResult(i, ok ? 200 : 400, null));
+            if (ok) {
+                valid.add(message);
+            }
+        }
+
+        List<Message> created = messageDAO.createMessages(valid);
+        int next = 0;
+        for (MessageBatchResult result : results) {
+            if (result.getStatus() != 200) {
+                continue;
+            }
+            if (created == null) {
+                result.setStatus(500);
+                continue;
+            }
+            Message message = created.get(next++);
+            result.setMessage_id(message.getMessage_id());
+            if (messageCache != null) {
+                messageCache.put(message.getMessage_id(), message);
+            }
+            if (timelineCache != null) {
+                timelineCache.append(message);
+            }
+            listingVersions.bump(message.getPosted_by());
+        }
+        return results;
     }
 
     // Calls the DAO method to retrieve all messages from the database
@@ -31,29 +205,169 @@ public class MessageService {
         return messageDAO.getAllMessages();
     }
 
+    // Calls the DAO method to retrieve one page of messages, ordered by message_id, between the after and before cursors
+    public List<Message> getAllMessages(int after, int before, int limit) {
+        return messageDAO.getMessagesPage(null, after, before, limit);
+    }
+
+    // Calls the DAO method to stream all messages to the sink without collecting them into a list
+    public void streamAllMessages(MessageSink sink) throws IOException {
+        messageDAO.forEachMessage(null, sink);
+    }
+
     // Calls the DAO method to retrieve a message by its message_id
     public Message getMessage(int message_id) {
-        return messageDAO.getMessageByMessageID(message_id);
+        if (messageCache == null) {
+            return messageDAO.getMessageByMessageID(message_id);
+        }
+        return messageCache.get(message_id, messageDAO::getMessageByMessageID);
     }
 
-    // Calls the DAO method to delete a message by its message_id if the message exists
+    // Calls the DAO method to delete a message by its message_id and returns the deleted message, if it existed
     public Message deleteMessage(int message_id) {
-        Message message = messageDAO.getMessageByMessageID(message_id);
-        
+        return deleteMessage(message_id, null);
+    }
+
+    // As above, but when posted_by is not null only a message posted by that account is deleted
+    public Message deleteMessage(int message_id, Integer posted_by) {
+        Message message = posted_by != null
+                ? messageDAO.deleteMessageByMessageID(message_id, posted_by)
+                : messageDAO.deleteMessageByMessageID(message_id);
+
         if (message != null) {
-            messageDAO.deleteMessageByMessageID(message_id);
+            if (messageCache != null) {
+                messageCache.invalidate(message_id);
+            }
+            if (timelineCache != null) {
+                timelineCache.remove(message);
+            }
+            listingVersions.bump(message.getPosted_by());
         }
 
         return message;
     }
 
     // Calls the DAO method to update a message by its message_id and returns the updated message
+    // Cached copies are dropped rather than replaced, so that two concurrent updates of the same message, whose
+    // results may come back in either order, cannot leave the older text cached
     public Message modifyMessage(String message_text, int message_id) {
-        return messageDAO.updateMessageByMessageID(message_text, message_id) ? messageDAO.getMessageByMessageID(message_id) : null;
+        return modifyMessage(message_text, message_id, null);
+    }
+
+    // As above, but when posted_by is not null only a message posted by that account is updated
+    public Message modifyMessage(String message_text, int message_id, Integer posted_by) {
+        Message updated = posted_by != null
+                ? messageDAO.updateMessageByMessageID(message_text, message_id, posted_by)
+                : messageDAO.updateMessageByMessageID(message_text, message_id);
+
+        if (updated != null) {
+            if (messageCache != null) {
+                messageCache.invalidate(message_id);
+            }
+            if (timelineCache != null) {
+                timelineCache.invalidate(updated.getPosted_by());
+            }
+            listingVersions.bump(updated.getPosted_by());
+        }
+
+        return updated;
     }
 
     // Calls the DAO method to retrieve all messages for a specific user by their user_id
+    // Repeat reads are served from the account's cached timeline. A read that failed is answered with an empty list,
+    // as before the cache, but is not cached
     public List<Message> getMessages(int user_id) {
-        return messageDAO.getAllMessageByUserID(user_id);
+        List<Message> messages = timelineCache != null
+                ? timelineCache.get(user_id, messageDAO::getAllMessageByUserID)
+                : messageDAO.getAllMessageByUserID(user_id);
+        return messages != null ? messages : new ArrayList<>();
+    }
+
+    // Calls the DAO method to stream all messages for a specific user to the sink without collecting them into a list
+    // A cached timeline is streamed from memory instead
+    public void streamMessages(int user_id, MessageSink sink) throws IOException {
+        List<Message> timeline = timelineCache != null ? timelineCache.getIfPresent(user_id) : null;
+        if (timeline == null) {
+            messageDAO.forEachMessage(user_id, sink);
+            return;
+        }
+        for (Message message : timeline) {
+            sink.accept(message);
+        }
+    }
+
+    // Calls the DAO method to retrieve one page of a specific user's messages between the after and before cursors
+    // A cached timeline is sliced in memory instead
+    public List<Message> getMessages(int user_id, int after, int before, int limit) {
+        List<Message> timeline = timelineCache != null ? timelineCache.getIfPresent(user_id) : null;
+        if (timeline == null) {
+            return messageDAO.getMessagesPage(user_id, after, before, limit);
+        }
+        if (after == Integer.MAX_VALUE) {
+            return new ArrayList<>();
+        }
+        int from = TimelineCache.indexOf(timeline, after + 1);
+        from = from < 0 ? -from - 1 : from;
+        int to = TimelineCache.indexOf(timeline, before);
+        to = to < 0 ? -to - 1 : to;
+        if (from >= to) {
+            return new ArrayList<>();
+        }
+        boolean backwards = before < Integer.MAX_VALUE && after <= 0;
+        return backwards
+                ? new ArrayList<>(timeline.subList(Math.max(from, to - limit), to))
+                : new ArrayList<>(timeline.subList(from, Math.min(to, from + limit)));
+    }
+
+    // Asynchronous versions of the calls above, run on the database executor so that the caller's thread is free
+    // while the query runs. Each returns a future of exactly what the synchronous call returns
+
+    public CompletableFuture<Message> addMessageAsync(Message message) {
+        return DbCall.async(() -> addMessage(message));
+    }
+
+    public CompletableFuture<List<MessageBatchResult>> addMessagesAsync(List<Message> messages) {
+        return DbCall.async(() -> addMessages(messages));
+    }
+
+    public CompletableFuture<List<MessageBatchResult>> addMessagesAsync(List<Message> messages,
+                                                                        Integer authenticated_account_id) {
+        return DbCall.async(() -> addMessages(messages, authenticated_account_id));
+    }
+
+    public CompletableFuture<List<Message>> getAllMessagesAsync() {
+        return DbCall.async(this::getAllMessages);
+    }
+
+    public CompletableFuture<List<Message>> getAllMessagesAsync(int after, int before, int limit) {
+        return DbCall.async(() -> getAllMessages(after, before, limit));
+    }
+
+    public CompletableFuture<Message> getMessageAsync(int message_id) {
+        return DbCall.async(() -> getMessage(message_id));
+    }
+
+    public CompletableFuture<Message> deleteMessageAsync(int message_id) {
+        return DbCall.async(() -> deleteMessage(message_id));
+    }
+
+    public CompletableFuture<Message> deleteMessageAsync(int message_id, Integer posted_by) {
+        return DbCall.async(() -> deleteMessage(message_id, posted_by));
+    }
+
+    public CompletableFuture<Message> modifyMessageAsync(String message_text, int message_id) {
+        return DbCall.async(() -> modifyMessage(message_text, message_id));
+    }
+
+    public CompletableFuture<Message> modifyMessageAsync(String message_text, int message_id, Integer posted_by) {
+        return DbCall.async(() -> modifyMessage(message_text, message_id, posted_by));
+    }
+
+    public CompletableFuture<List<Message>> getMessagesAsync(int user_id) {
+        return DbCall.async(() -> getMessages(user_id));
+    }
+
+    public CompletableFuture<List<Message>> getMessagesAsync(int user_id, int after, int before, int limit) {
+        return DbCall.async(() -> getMessages(user_id, after, before, limit));
     }
 }
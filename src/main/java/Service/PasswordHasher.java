@@ -0,0 +1,215 @@
+package Service;
+
+import Util.AppConfig;
+import Util.BoundedExecutor;
+import Util.LatencyHistogram;
+import Util.Metrics;
+import Util.Scrypt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+// Hashes passwords with scrypt for storage and checks passwords against stored hashes
+// A stored hash reads $scrypt$ln=<log2 N>,r=<r>,p=<p>$<salt>$<hash>, the salt and hash in unpadded base64, so it
+// carries its own cost parameters: raising the cost only affects new hashes, and older ones keep verifying until
+// needsRehash() has them replaced. A stored password without the $scrypt$ prefix is a plaintext one from before
+// hashing, which verify() still accepts
+// Each hash takes 128 * r * 2^ln bytes and tens of milliseconds at the defaults, so the async methods run it on a
+// bounded executor of its own: a burst of logins queues there, or is turned away with a RejectedExecutionException
+// once the queue is full, instead of taking the request or database threads and their memory with it
+public class PasswordHasher {
+
+    private static final String PREFIX = "$scrypt$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BYTES = 32;
+    // Most memory one hash may take, 128 * r * 2^ln bytes: 16 times the default cost. It applies to the configured
+    // cost and to the cost recorded in a stored hash alike, so a tampered or mistyped row cannot exhaust the heap
+    private static final long MAX_MEMORY_BYTES = 256L * 1024 * 1024;
+
+    private static final Base64.Encoder ENCODER = Base64.getEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getDecoder();
+
+    // Duration of every scrypt computation, for hashing and verifying alike, exported by /metrics
+    private static final LatencyHistogram HASH_TIMER = Metrics.histogram("password_hash_duration_seconds",
+            "Time of one scrypt computation, hashing or verifying a password.");
+
+    private final int log2N;
+    private final int r;
+    private final int p;
+    private final BoundedExecutor executor;
+    private final SecureRandom random = new SecureRandom();
+
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder verifications = new LongAdder();
+
+    // Hash checked when there is no account to check against, created on first use
+    private volatile String decoy;
+
+    // Hasher with the auth.password.* settings, shared by every AccountService, created on first use
+    private static PasswordHasher shared;
+
+    public PasswordHasher(int log2N, int r, int p, int threads, int queueSize) {
+        if (!inRange(log2N, r, p)) {
+            // the range verify() accepts in a stored hash
+            throw new IllegalArgumentException("scrypt parameters out of range: ln=" + log2N + ", r=" + r + ", p=" + p
+                    + ", at most " + MAX_MEMORY_BYTES + " bytes per hash");
+        }
+        this.log2N = log2N;
+        this.r = r;
+        this.p = p;
+        this.executor = new BoundedExecutor("password-hash", threads, queueSize);
+    }
+
+    // Hasher with the auth.password.* settings. There is one per process, as there is one database executor, so
+    // every AccountService shares its hashing executor instead of starting threads of its own that nothing stops
+    static synchronized PasswordHasher shared() {
+        if (shared == null) {
+            shared = new PasswordHasher(AppConfig.getInt("auth.password.scrypt.log2N", 14),
+                    AppConfig.getInt("auth.password.scrypt.r", 8),
+                    AppConfig.getInt("auth.password.scrypt.p", 1),
+                    AppConfig.getInt("auth.password.threads", Runtime.getRuntime().availableProcessors()),
+                    AppConfig.getInt("auth.password.queueSize", 256));
+        }
+        return shared;
+    }
+
+    // Publishes the hashing executor and its work on /metrics; a newer hasher replaces an older one's
+    void registerMetrics() {
+        Metrics.gauge("password_hash_queue_depth", "Password hashes waiting for a hashing thread.", "",
+                executor::getQueueDepth);
+        Metrics.gauge("password_hash_active_threads", "Hashing threads running a password hash.", "",
+                executor::getActiveCount);
+        Metrics.counter("password_hash_rejected_total", "Password hashes turned away by a saturated executor.", "",
+                executor::getRejectedCount);
+        Metrics.counter("password_hashes_total", "Passwords hashed for storage.", "", this::getHashes);
+        Metrics.counter("password_verifications_total", "Passwords checked against a stored hash.", "",
+                this::getVerifications);
+    }
+
+    // Hashes the password with a new random salt, on the caller's thread
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = scrypt(password, salt, log2N, r, p);
+        hashes.increment();
+        return PREFIX + "ln=" + log2N + ",r=" + r + ",p=" + p + "$" + ENCODER.encodeToString(salt) + "$"
+                + ENCODER.encodeToString(hash);
+    }
+
+    // Returns whether the password matches the stored hash, or the stored plaintext password, on the caller's thread
+    // The comparison takes the same time wherever the first difference is. A stored value that is neither a
+    // well-formed hash nor plaintext matches nothing, and neither does an empty password
+    public boolean verify(String password, String stored) {
+        if (password == null || password.isEmpty() || stored == null) {
+            return false;
+        }
+        verifications.increment();
+        if (!stored.startsWith(PREFIX)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            return false;
+        }
+        int[] parameters = parameters(parts[0]);
+        if (parameters == null) {
+            return false;
+        }
+        byte[] salt;
+        byte[] expected;
+        try {
+            salt = DECODER.decode(parts[1]);
+            expected = DECODER.decode(parts[2]);
+        }
+        catch (IllegalArgumentException e) {
+            return false;
+        }
+        return MessageDigest.isEqual(expected, scrypt(password, salt, parameters[0], parameters[1], parameters[2]));
+    }
+
+    // Burns the time of one verification without an account to verify against, so a login for an unknown username
+    // answers no sooner than one with a wrong password and does not reveal which usernames exist
+    public boolean verifyNothing(String password) {
+        String hash = decoy;
+        if (hash == null) {
+            hash = decoy = hash("decoy " + random.nextLong());
+        }
+        verify(password, hash);
+        return false;
+    }
+
+    // Returns whether the stored password should be hashed again: it is plaintext, or hashed with other parameters
+    public boolean needsRehash(String stored) {
+        return stored == null || !stored.startsWith(PREFIX + "ln=" + log2N + ",r=" + r + ",p=" + p + "$");
+    }
+
+    // Asynchronous version of hash, run on the hashing executor
+    public CompletableFuture<String> hashAsync(String password) {
+        return executor.submit(() -> hash(password));
+    }
+
+    // Asynchronous version of verify, run on the hashing executor
+    public CompletableFuture<Boolean> verifyAsync(String password, String stored) {
+        return executor.submit(() -> verify(password, stored));
+    }
+
+    // Asynchronous version of verifyNothing, run on the hashing executor
+    public CompletableFuture<Boolean> verifyNothingAsync(String password) {
+        return executor.submit(() -> verifyNothing(password));
+    }
+
+    public BoundedExecutor getExecutor() {
+        return executor;
+    }
+
+    public long getHashes() {
+        return hashes.sum();
+    }
+
+    public long getVerifications() {
+        return verifications.sum();
+    }
+
+    private byte[] scrypt(String password, byte[] salt, int log2N, int r, int p) {
+        long started = System.nanoTime();
+        try {
+            return Scrypt.scrypt(password.getBytes(StandardCharsets.UTF_8), salt, 1 << log2N, r, p, HASH_BYTES);
+        }
+        finally {
+            HASH_TIMER.recordSince(started);
+        }
+    }
+
+    // Parses ln=..,r=..,p=.. into { log2 N, r, p }, or returns null if it is malformed or out of the range this
+    // hasher accepts, so a corrupted row cannot ask for more than MAX_MEMORY_BYTES
+    private static int[] parameters(String encoded) {
+        String[] fields = encoded.split(",");
+        if (fields.length != 3 || !fields[0].startsWith("ln=") || !fields[1].startsWith("r=")
+                || !fields[2].startsWith("p=")) {
+            return null;
+        }
+        try {
+            int log2N = Integer.parseInt(fields[0].substring(3));
+            int r = Integer.parseInt(fields[1].substring(2));
+            int p = Integer.parseInt(fields[2].substring(2));
+            if (!inRange(log2N, r, p)) {
+                return null;
+            }
+            return new int[] { log2N, r, p };
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Whether the parameters are valid and one hash with them takes at most MAX_MEMORY_BYTES
+    private static boolean inRange(int log2N, int r, int p) {
+        return log2N >= 1 && log2N <= 24 && r >= 1 && r <= 32 && p >= 1 && p <= 16
+                && (128L * r << log2N) <= MAX_MEMORY_BYTES;
+    }
+}
@@ -0,0 +1,95 @@
+package Service;
+
+import Util.LruCache;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.atomic.LongAdder;
+
+// Login sessions held in memory, so a client can prove who it is with a token instead of its password
+// A token is 32 random bytes, base64url encoded, handed out by create() and mapped to the account_id that logged in.
+// Expiry slides: a session lasts ttlMillis from when it was last used, not from when it was created. The store is an
+// LruCache in access order, so when it is full the session used longest ago, which is also the next to expire, is
+// the one evicted
+// Sessions are not persisted; a restart logs every client out
+public class SessionStore {
+
+    private static final class Session {
+        final int account_id;
+        volatile long lastUsedNanos;
+
+        Session(int account_id, long now) {
+            this.account_id = account_id;
+            this.lastUsedNanos = now;
+        }
+    }
+
+    private final SecureRandom random = new SecureRandom();
+    private final LruCache<String, Session> sessions;
+    private final long ttlNanos;
+    // lastUsedNanos is only rewritten once this much of the session's life has passed, so a burst of requests with
+    // the same token does not write the same field on every request
+    private final long touchNanos;
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    public SessionStore(int maxSessions, long ttlMillis) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("ttlMillis must be positive: " + ttlMillis);
+        }
+        this.sessions = new LruCache<>(maxSessions, 0);
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.touchNanos = ttlNanos / 100;
+    }
+
+    // Starts a session for the account and returns its token
+    public String create(int account_id) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, new Session(account_id, System.nanoTime()));
+        created.increment();
+        return token;
+    }
+
+    // Returns the account_id of the token's session and extends it, or null if the token is unknown or has expired
+    public Integer authenticate(String token) {
+        Session session = sessions.getIfPresent(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        long idle = now - session.lastUsedNanos;
+        if (idle >= ttlNanos) {
+            sessions.invalidate(token);
+            expired.increment();
+            return null;
+        }
+        if (idle >= touchNanos) {
+            session.lastUsedNanos = now;
+        }
+        return session.account_id;
+    }
+
+    // Ends the token's session, if it has one
+    public void remove(String token) {
+        sessions.invalidate(token);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    public long getCreated() {
+        return created.sum();
+    }
+
+    public long getExpired() {
+        return expired.sum();
+    }
+
+    public long getEvicted() {
+        return sessions.getEvictions();
+    }
+}
@@ -0,0 +1,158 @@
+package Service;
+
+import Model.Message;
+import Util.LruCache;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+
+// In-memory per-account timelines: every message an account has posted, ordered by message_id
+// A timeline is loaded from the database the first time it is read and then kept current by patching it on every
+// create and delete, so repeat reads never go back to the database. An update drops the timeline instead: two
+// updates of one message may come back in either order, and patching them in could leave the older text cached
+// Timelines are held through soft references, so the garbage collector can drop them under memory pressure, and the
+// number of cached accounts is bounded with LRU eviction on top of that
+public class TimelineCache {
+
+    // Timelines by account_id. Each timeline is an immutable list that is replaced, never modified, on every patch
+    private final LruCache<Integer, SoftReference<List<Message>>> timelines;
+
+    // Timelines longer than this are not cached, so one very active account cannot take over the heap
+    private final int maxMessagesPerTimeline;
+
+    public TimelineCache(int maxAccounts, int maxMessagesPerTimeline) {
+        this.timelines = new LruCache<>(maxAccounts, 0);
+        this.maxMessagesPerTimeline = maxMessagesPerTimeline;
+    }
+
+    // Returns the account's timeline, loading it with the loader on a miss, or null if the loader returned null
+    // A load that overlaps a patch is returned to the caller but not cached, so it can never hide that patch. A loader
+    // reports a failed load with null, which is not cached either, so the next read loads the timeline again
+    public List<Message> get(int account_id, IntFunction<List<Message>> loader) {
+        List<List<Message>> loaded = new ArrayList<>(1);
+        List<Message> timeline = lookup(account_id, loader, loaded);
+        if (timeline != null || !loaded.isEmpty()) {
+            return timeline;
+        }
+        // the cached timeline was reclaimed by the garbage collector: drop its cleared reference and load it again
+        timelines.invalidate(account_id);
+        timeline = lookup(account_id, loader, loaded);
+        return timeline != null || !loaded.isEmpty() ? timeline : load(loader, account_id);
+    }
+
+    // Reads the timeline through a single cache lookup, loading it on a miss and adding the load to loaded
+    // Returns null when the load failed or the cached reference has been cleared
+    private List<Message> lookup(int account_id, IntFunction<List<Message>> loader, List<List<Message>> loaded) {
+        SoftReference<List<Message>> reference = timelines.get(account_id, key -> {
+            List<Message> frozen = load(loader, key);
+            loaded.add(frozen);
+            return frozen != null && frozen.size() <= maxMessagesPerTimeline ? new SoftReference<>(frozen) : null;
+        });
+        return loaded.isEmpty() ? reference.get() : loaded.get(0);
+    }
+
+    // Runs the loader and freezes its timeline, or returns null if the load failed
+    private static List<Message> load(IntFunction<List<Message>> loader, int account_id) {
+        List<Message> messages = loader.apply(account_id);
+        return messages != null ? freeze(messages) : null;
+    }
+
+    // Returns the account's timeline if it is cached and has not been reclaimed, or null
+    public List<Message> getIfPresent(int account_id) {
+        SoftReference<List<Message>> reference = timelines.getIfPresent(account_id);
+        if (reference == null) {
+            return null;
+        }
+        List<Message> timeline = reference.get();
+        if (timeline == null) {
+            timelines.invalidate(account_id);
+        }
+        return timeline;
+    }
+
+    // Adds a newly created message to its author's timeline, if that timeline is cached
+    public void append(Message message) {
+        patch(message.getPosted_by(), timeline -> {
+            int index = indexOf(timeline, message.getMessage_id());
+            if (index >= 0) {
+                return timeline;
+            }
+            if (timeline.size() >= maxMessagesPerTimeline) {
+                return null;
+            }
+            List<Message> next = new ArrayList<>(timeline.size() + 1);
+            next.addAll(timeline);
+            next.add(-index - 1, message);
+            return next;
+        });
+    }
+
+    // Removes a deleted message from its author's timeline, if that timeline is cached
+    public void remove(Message message) {
+        patch(message.getPosted_by(), timeline -> {
+            int index = indexOf(timeline, message.getMessage_id());
+            if (index < 0) {
+                return timeline;
+            }
+            List<Message> next = new ArrayList<>(timeline);
+            next.remove(index);
+            return next;
+        });
+    }
+
+    // Drops an account's timeline, so that the next read reloads it
+    public void invalidate(int account_id) {
+        timelines.invalidate(account_id);
+    }
+
+    // Returns the underlying cache so its hit/miss/eviction counters can be read
+    public LruCache<Integer, SoftReference<List<Message>>> getCache() {
+        return timelines;
+    }
+
+    // Applies a patch to a cached timeline atomically; a patch returning null drops the timeline
+    private void patch(int account_id, UnaryOperator<List<Message>> patch) {
+        timelines.computeIfPresent(account_id, (key, reference) -> {
+            List<Message> timeline = reference.get();
+            if (timeline == null) {
+                return null;
+            }
+            List<Message> next = patch.apply(timeline);
+            if (next == null) {
+                return null;
+            }
+            return next == timeline ? reference : new SoftReference<>(Collections.unmodifiableList(next));
+        });
+    }
+
+    // Sorts a loaded timeline by message_id and makes it read-only
+    private static List<Message> freeze(List<Message> messages) {
+        List<Message> sorted = new ArrayList<>(messages);
+        sorted.sort((a, b) -> Integer.compare(a.getMessage_id(), b.getMessage_id()));
+        return Collections.unmodifiableList(sorted);
+    }
+
+    // Binary search by message_id; returns the index, or (-(insertion point) - 1) if the id is not present
+    static int indexOf(List<Message> timeline, int message_id) {
+        int low = 0;
+        int high = timeline.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int id = timeline.get(mid).getMessage_id();
+            if (id < message_id) {
+                low = mid + 1;
+            }
+            else if (id > message_id) {
+                high = mid - 1;
+            }
+            else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+}
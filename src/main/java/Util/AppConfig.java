@@ -0,0 +1,60 @@
+package Util;
+
+/**
+ * The AppConfig class gives the rest of the application a single place to read runtime settings from. Settings are
+ * supplied as JVM system properties (eg -Ddb.pool.enabled=true) so they can be changed without touching any code,
+ * and every lookup falls back to the given default when the property is absent or malformed.
+ */
+public class AppConfig {
+
+	private AppConfig() {
+	}
+
+	/**
+	 * @return the raw value of the property, or the default if it is not set
+	 */
+	public static String getString(String key, String defaultValue) {
+		String value = System.getProperty(key);
+		return value == null || value.isBlank() ? defaultValue : value.trim();
+	}
+
+	/**
+	 * @return the property parsed as an int, or the default if it is not set or not a number
+	 */
+	public static int getInt(String key, int defaultValue) {
+		String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			System.out.println("Ignoring invalid value for " + key + ": " + value);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @return the property parsed as a long, or the default if it is not set or not a number
+	 */
+	public static long getLong(String key, long defaultValue) {
+		String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			System.out.println("Ignoring invalid value for " + key + ": " + value);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @return the property parsed as a boolean, or the default if it is not set
+	 */
+	public static boolean getBoolean(String key, boolean defaultValue) {
+		String value = getString(key, null);
+		return value == null ? defaultValue : Boolean.parseBoolean(value);
+	}
+}
@@ -0,0 +1,131 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The BloomFilter class answers "have I seen this string?" with either "definitely not" or "maybe", using a fixed
+ * amount of memory no matter how many strings are added.
+ *
+ * The filter is sized from the number of strings it is expected to hold and the false positive rate wanted at that
+ * size. It is thread-safe and lock-free: bits are set with compare-and-set on an AtomicLongArray, and a reader racing
+ * with a writer can at worst see "definitely not" for a string whose add has not finished yet.
+ */
+public class BloomFilter {
+
+	private final AtomicLongArray words;
+	private final long bitSize;
+	private final int hashCount;
+	private final LongAdder insertions = new LongAdder();
+
+	/**
+	 * @param expectedInsertions how many strings the filter is sized for
+	 * @param falsePositiveRate  the false positive rate wanted once that many strings have been added
+	 */
+	public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+		if (expectedInsertions < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("Invalid Bloom filter sizing: " + expectedInsertions + ", "
+					+ falsePositiveRate);
+		}
+		long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) / 64));
+		this.words = new AtomicLongArray(wordCount);
+		this.bitSize = wordCount * 64L;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+	}
+
+	/**
+	 * Adds the string to the filter.
+	 */
+	public void put(String value) {
+		long hash = hash(value);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= hashCount; i++) {
+			long bit = index(h1 + i * h2);
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			long current;
+			while (((current = words.get(word)) & mask) == 0) {
+				if (words.compareAndSet(word, current, current | mask)) {
+					break;
+				}
+			}
+		}
+		insertions.increment();
+	}
+
+	/**
+	 * @return false if the string was definitely never added, true if it may have been
+	 */
+	public boolean mightContain(String value) {
+		long hash = hash(value);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= hashCount; i++) {
+			long bit = index(h1 + i * h2);
+			if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long index(int combined) {
+		return (combined & 0x7fffffffL) % bitSize;
+	}
+
+	/**
+	 * 64-bit FNV-1a over the UTF-8 bytes, finished with the MurmurHash3 mixer so both halves are well distributed.
+	 */
+	private static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * @return the false positive rate expected for the number of strings added so far
+	 */
+	public double expectedFalsePositiveRate() {
+		double fill = 1 - Math.exp(-(double) hashCount * insertions.sum() / bitSize);
+		return Math.pow(fill, hashCount);
+	}
+
+	/**
+	 * @return the number of put calls so far (duplicates included)
+	 */
+	public long getInsertions() {
+		return insertions.sum();
+	}
+
+	public long getBitSize() {
+		return bitSize;
+	}
+
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	/**
+	 * @return the memory taken by the bit array, in bytes
+	 */
+	public long getMemoryBytes() {
+		return bitSize / 8;
+	}
+
+	@Override
+	public String toString() {
+		return "BloomFilter{bits=" + bitSize + ", hashes=" + hashCount + ", insertions=" + getInsertions()
+				+ ", expectedFpp=" + expectedFalsePositiveRate() + '}';
+	}
+}
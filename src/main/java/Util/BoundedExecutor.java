@@ -0,0 +1,125 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The BoundedExecutor class runs blocking work on a fixed number of daemon threads with a bounded queue in front of
+ * them, and hands the result back as a CompletableFuture.
+ *
+ * When every thread is busy and the queue is full, new work is not queued and not run on the caller's thread: the
+ * returned future fails straight away with a RejectedExecutionException, so an overloaded caller can shed load
+ * instead of piling up requests.
+ */
+public class BoundedExecutor {
+
+	private final String name;
+	private final int threads;
+	private final int queueCapacity;
+	private final ThreadPoolExecutor executor;
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * @param name          prefix of the worker thread names
+	 * @param threads       number of worker threads
+	 * @param queueCapacity how much work may wait for a free thread; 0 means work is only accepted when a thread is
+	 *                      idle
+	 */
+	public BoundedExecutor(String name, int threads, int queueCapacity) {
+		if (threads < 1 || queueCapacity < 0) {
+			throw new IllegalArgumentException("Invalid executor sizing: " + threads + " threads, queue "
+					+ queueCapacity);
+		}
+		this.name = name;
+		this.threads = threads;
+		this.queueCapacity = queueCapacity;
+		BlockingQueue<Runnable> queue = queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity)
+				: new SynchronousQueue<>();
+		AtomicInteger counter = new AtomicInteger();
+		ThreadFactory factory = runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue, factory,
+				new ThreadPoolExecutor.AbortPolicy());
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Runs the call on a worker thread.
+	 *
+	 * @return a future completed with the call's result, or failed with whatever it threw, or failed with a
+	 *         RejectedExecutionException if the executor was saturated or shut down
+	 */
+	public <T> CompletableFuture<T> submit(Supplier<T> call) {
+		try {
+			return CompletableFuture.supplyAsync(call, executor);
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Stops accepting work; work already queued still runs.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * @return the number of tasks waiting for a free thread
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return the number of threads running a task right now
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * @return the number of tasks turned away because the executor was saturated
+	 */
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	/**
+	 * @return the number of tasks that have finished running
+	 */
+	public long getCompletedCount() {
+		return executor.getCompletedTaskCount();
+	}
+
+	@Override
+	public String toString() {
+		return "BoundedExecutor{name=" + name + ", threads=" + threads + ", active=" + getActiveCount() + ", queued="
+				+ getQueueDepth() + "/" + queueCapacity + ", rejected=" + getRejectedCount() + '}';
+	}
+}
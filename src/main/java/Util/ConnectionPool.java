@@ -0,0 +1,515 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+/**
+ * The ConnectionPool class keeps a bounded set of physical connections open and hands them out to callers, so that
+ * the cost of opening a connection is paid once per physical connection instead of once per DAO call.
+ *
+ * Callers get a lightweight handle around a pooled connection. Closing the handle returns the physical connection to
+ * the pool instead of closing it, which means DAO code written as try (Connection c = ...) works unchanged.
+ *
+ * At most maxSize connections exist at any time. A caller that finds the pool exhausted waits up to the acquire
+ * timeout for a connection to be returned and then gets an SQLException. Idle connections that have not been used
+ * for longer than the validation interval are checked with Connection.isValid before being handed out again.
+ *
+ * Each physical connection also keeps an LRU cache of its prepared statements, keyed by SQL text. DAO methods prepare
+ * the same few constant SQL strings over and over; with the cache, closing a statement only clears its parameters and
+ * keeps it parsed and planned for the next caller that prepares the same SQL on that connection.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+	private final DataSource dataSource;
+	private final int minSize;
+	private final int maxSize;
+	private final long acquireTimeoutMillis;
+	private final int validationTimeoutSeconds;
+	private final long validationIntervalMillis;
+	private final int statementCacheSize;
+
+	/**
+	 * Idle connections, most recently returned first, so that hot connections are reused and cold ones age out.
+	 */
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+	/**
+	 * One permit per connection that may still be checked out. Fair, so that waiters are served in arrival order.
+	 */
+	private final Semaphore permits;
+
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger waiting = new AtomicInteger();
+	private final AtomicInteger total = new AtomicInteger();
+	private final LongAdder statementCacheHits = new LongAdder();
+	private final LongAdder statementCacheMisses = new LongAdder();
+	private volatile boolean closed;
+
+	public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long acquireTimeoutMillis,
+			int validationTimeoutSeconds, long validationIntervalMillis) {
+		this(dataSource, minSize, maxSize, acquireTimeoutMillis, validationTimeoutSeconds, validationIntervalMillis, 0);
+	}
+
+	/**
+	 * @param statementCacheSize how many prepared statements to keep open per connection, 0 to disable caching
+	 */
+	public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long acquireTimeoutMillis,
+			int validationTimeoutSeconds, long validationIntervalMillis, int statementCacheSize) {
+		if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+			throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+		}
+		this.dataSource = dataSource;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+		this.validationIntervalMillis = validationIntervalMillis;
+		this.statementCacheSize = Math.max(0, statementCacheSize);
+		this.permits = new Semaphore(maxSize, true);
+	}
+
+	/**
+	 * Opens minSize connections up front so the first requests do not pay the connect cost.
+	 */
+	public void prefill() throws SQLException {
+		while (total.get() < minSize) {
+			idle.offerLast(openPhysical());
+		}
+	}
+
+	/**
+	 * @return a pooled connection handle; closing it returns the connection to the pool
+	 * @throws SQLException if no connection became available within the acquire timeout
+	 */
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool is closed");
+		}
+		waiting.incrementAndGet();
+		try {
+			if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new SQLException("Timed out after " + acquireTimeoutMillis + "ms waiting for a connection ("
+						+ active.get() + " active, max " + maxSize + ")");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection", e);
+		} finally {
+			waiting.decrementAndGet();
+		}
+
+		try {
+			PooledConnection pooled = takeIdle();
+			if (pooled == null) {
+				pooled = openPhysical();
+			}
+			active.incrementAndGet();
+			return pooled.newHandle();
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return a validated idle connection, or null if none is left
+	 */
+	private PooledConnection takeIdle() {
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			if (isUsable(pooled)) {
+				return pooled;
+			}
+			discard(pooled);
+		}
+		return null;
+	}
+
+	private boolean isUsable(PooledConnection pooled) {
+		try {
+			if (pooled.physical.isClosed()) {
+				return false;
+			}
+			if (System.currentTimeMillis() - pooled.lastReturnedMillis < validationIntervalMillis) {
+				return true;
+			}
+			return pooled.physical.isValid(validationTimeoutSeconds);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private PooledConnection openPhysical() throws SQLException {
+		PooledConnection pooled = new PooledConnection(dataSource.getConnection());
+		total.incrementAndGet();
+		return pooled;
+	}
+
+	private void discard(PooledConnection pooled) {
+		total.decrementAndGet();
+		pooled.closeStatements();
+		try {
+			pooled.physical.close();
+		} catch (SQLException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Called when a handle is closed. Leaves the physical connection in a clean state before making it available.
+	 */
+	private void release(PooledConnection pooled) {
+		active.decrementAndGet();
+		try {
+			if (closed || !pooled.reset()) {
+				discard(pooled);
+			} else {
+				pooled.lastReturnedMillis = System.currentTimeMillis();
+				idle.offerFirst(pooled);
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Closes every idle connection. Connections that are still checked out are closed when they are returned.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			discard(pooled);
+		}
+	}
+
+	/**
+	 * @return the number of connections currently checked out
+	 */
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	/**
+	 * @return the number of open connections waiting in the pool
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * @return the number of callers currently blocked waiting for a connection
+	 */
+	public int getWaitingCount() {
+		return waiting.get();
+	}
+
+	/**
+	 * @return the number of physical connections currently open, checked out or idle
+	 */
+	public int getTotalCount() {
+		return total.get();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return how many times a prepareStatement call was served from a statement cache
+	 */
+	public long getStatementCacheHits() {
+		return statementCacheHits.sum();
+	}
+
+	/**
+	 * @return how many times a cacheable prepareStatement call had to prepare a new statement
+	 */
+	public long getStatementCacheMisses() {
+		return statementCacheMisses.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionPool{active=" + getActiveCount() + ", idle=" + getIdleCount() + ", waiting="
+				+ getWaitingCount() + ", total=" + getTotalCount() + ", max=" + maxSize + '}';
+	}
+
+	/**
+	 * A physical connection owned by the pool.
+	 */
+	private class PooledConnection {
+		final Connection physical;
+		volatile long lastReturnedMillis = System.currentTimeMillis();
+
+		/**
+		 * Prepared statements keyed by SQL text, least recently used first. Only touched by the thread that currently
+		 * has this connection checked out, so it needs no locking of its own.
+		 */
+		private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+				if (size() <= statementCacheSize) {
+					return false;
+				}
+				CachedStatement evicted = eldest.getValue();
+				if (evicted.inUse) {
+					orphans.add(evicted);
+				}
+				evicted.evict();
+				return true;
+			}
+		};
+		/**
+		 * Statements evicted while still checked out. They are closed once their borrower is done with them.
+		 */
+		private final List<CachedStatement> orphans = new ArrayList<>();
+
+		PooledConnection(Connection physical) {
+			this.physical = physical;
+		}
+
+		/**
+		 * Returns a cached statement for the SQL if one is free, or prepares and caches a new one.
+		 */
+		PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+			String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : sql;
+			CachedStatement cached = statements.get(key);
+			if (cached != null && !cached.inUse) {
+				statementCacheHits.increment();
+			} else if (cached != null) {
+				// the same SQL is already open on this connection (eg a nested query), so give out a plain statement
+				return physical.prepareStatement(sql, autoGeneratedKeys);
+			} else {
+				statementCacheMisses.increment();
+				cached = new CachedStatement(physical.prepareStatement(sql, autoGeneratedKeys));
+				statements.put(key, cached);
+			}
+			cached.inUse = true;
+			cached.checkouts++;
+			return cached.newHandle();
+		}
+
+		void closeStatements() {
+			Iterator<CachedStatement> iterator = statements.values().iterator();
+			while (iterator.hasNext()) {
+				iterator.next().evict();
+				iterator.remove();
+			}
+			releaseOrphans();
+		}
+
+		private void releaseOrphans() {
+			for (CachedStatement orphan : orphans) {
+				if (orphan.inUse) {
+					orphan.release();
+				}
+			}
+			orphans.clear();
+		}
+
+		Connection newHandle() {
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, new Handle(this));
+		}
+
+		/**
+		 * Rolls back any unfinished transaction and restores the defaults DAO code expects.
+		 *
+		 * @return false if the connection is broken and should be thrown away
+		 */
+		boolean reset() {
+			try {
+				if (physical.isClosed()) {
+					return false;
+				}
+				if (!physical.getAutoCommit()) {
+					physical.rollback();
+					physical.setAutoCommit(true);
+				}
+				if (physical.isReadOnly()) {
+					physical.setReadOnly(false);
+				}
+				physical.clearWarnings();
+				// statements the borrower forgot to close go back to the cache along with the connection
+				for (CachedStatement cached : statements.values()) {
+					if (cached.inUse) {
+						cached.release();
+					}
+				}
+				releaseOrphans();
+				return true;
+			} catch (SQLException e) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * The object a caller actually holds. Each checkout gets its own handle so that closing a handle twice, or using
+	 * it after close, can never affect the next borrower of the same physical connection.
+	 */
+	private class Handle implements InvocationHandler {
+		private PooledConnection pooled;
+
+		Handle(PooledConnection pooled) {
+			this.pooled = pooled;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (pooled != null) {
+					PooledConnection returned = pooled;
+					pooled = null;
+					release(returned);
+				}
+				return null;
+			case "isClosed":
+				return pooled == null || pooled.physical.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "PooledConnection[" + (pooled == null ? "closed" : pooled.physical) + "]";
+			default:
+				if (pooled == null) {
+					throw new SQLException("Connection has been returned to the pool");
+				}
+				if (statementCacheSize > 0 && method.getName().equals("prepareStatement")) {
+					if (args.length == 1) {
+						return pooled.prepare((String) args[0], Statement.NO_GENERATED_KEYS);
+					}
+					if (args.length == 2 && args[1] instanceof Integer) {
+						return pooled.prepare((String) args[0], (Integer) args[1]);
+					}
+				}
+				try {
+					return method.invoke(pooled.physical, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A physical prepared statement kept open in a connection's statement cache.
+	 */
+	private static class CachedStatement {
+		final PreparedStatement physical;
+		boolean inUse;
+		boolean evicted;
+		/**
+		 * Incremented on every checkout, so a stale handle from an earlier borrower can tell it no longer owns this.
+		 */
+		int checkouts;
+
+		CachedStatement(PreparedStatement physical) {
+			this.physical = physical;
+		}
+
+		PreparedStatement newHandle() {
+			return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, new StatementHandle(this, checkouts));
+		}
+
+		/**
+		 * Called when the caller closes its handle. The statement stays open unless it was evicted while in use.
+		 */
+		void release() {
+			inUse = false;
+			try {
+				if (evicted) {
+					physical.close();
+				} else {
+					physical.clearParameters();
+					physical.clearWarnings();
+				}
+			} catch (SQLException e) {
+				evicted = true;
+				System.out.println(e.getMessage());
+			}
+		}
+
+		/**
+		 * Called when the statement falls out of the cache. A statement that is still in use is closed on release.
+		 */
+		void evict() {
+			evicted = true;
+			if (!inUse) {
+				try {
+					physical.close();
+				} catch (SQLException e) {
+					System.out.println(e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * The statement object a caller actually holds. Closing it hands the statement back to the cache.
+	 */
+	private static class StatementHandle implements InvocationHandler {
+		private CachedStatement cached;
+		private final int checkout;
+
+		StatementHandle(CachedStatement cached, int checkout) {
+			this.cached = cached;
+			this.checkout = checkout;
+		}
+
+		private boolean isOwner() {
+			return cached != null && cached.inUse && cached.checkouts == checkout;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (isOwner()) {
+					cached.release();
+				}
+				cached = null;
+				return null;
+			case "isClosed":
+				return !isOwner() || cached.physical.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "CachedStatement[" + (cached == null ? "closed" : cached.physical) + "]";
+			default:
+				if (!isOwner()) {
+					throw new SQLException("Statement has been closed");
+				}
+				try {
+					return method.invoke(cached.physical, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+	}
+}
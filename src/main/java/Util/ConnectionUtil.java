@@ -1,7 +1,10 @@
 package Util;
 
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.sql.Connection;
 import java.sql.SQLException;
 
@@ -13,7 +16,12 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * By default every call to getConnection opens a new physical connection. Setting -Ddb.pool.enabled=true switches
+ * to a bounded ConnectionPool instead; DAO code does not change either way, since closing a pooled connection simply
+ * returns it to the pool.
+ *
+ * Setting -Ddb.profile.enabled=true additionally wraps every connection in a QueryProfiler, which times each
+ * statement and writes a slow query log.
  */
 public class ConnectionUtil {
 
@@ -21,7 +29,7 @@ public class ConnectionUtil {
 	 * url will represent our connection string. Since this is an in-memory db, we
 	 * will represent a file location to store the data
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static String url = AppConfig.getString("db.url", "jdbc:h2:./h2/db;");
 	/**
 	 * Default username for connecting to h2
 	 */
@@ -32,10 +40,26 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * DataSource that opens physical connections. Each call to getConnection on it opens a new connection.
 	 */
 	private static JdbcDataSource pool = new JdbcDataSource();
 
+	/**
+	 * Bounded connection pool in front of the DataSource, or null when pooling is disabled.
+	 */
+	private static ConnectionPool connectionPool;
+
+	/**
+	 * Bounded executor that runs the services' asynchronous database calls, or null when they run on the caller's
+	 * thread.
+	 */
+	private static BoundedExecutor dbExecutor;
+
+	/**
+	 * Profiler that times every statement run through getConnection, or null when profiling is disabled.
+	 */
+	private static QueryProfiler queryProfiler;
+
 	/**
 	 * static initialization block to establish credentials for DataSoure Pool
 	 */
@@ -43,19 +67,91 @@ public class ConnectionUtil {
 		pool.setURL(url);
 		pool.setUser(username);
 		pool.setPassword(password);
+
+		if (AppConfig.getBoolean("db.pool.enabled", false)) {
+			connectionPool = new ConnectionPool(pool,
+					AppConfig.getInt("db.pool.minSize", 2),
+					AppConfig.getInt("db.pool.maxSize", 10),
+					AppConfig.getLong("db.pool.acquireTimeoutMillis", 5000),
+					AppConfig.getInt("db.pool.validationTimeoutSeconds", 2),
+					AppConfig.getLong("db.pool.validationIntervalMillis", 5000),
+					AppConfig.getInt("db.pool.statementCacheSize", 32));
+			try {
+				connectionPool.prefill();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+			ConnectionPool pooled = connectionPool;
+			Metrics.gauge("db_pool_connections", "Pooled database connections, by state.", "state=\"active\"",
+					pooled::getActiveCount);
+			Metrics.gauge("db_pool_connections", "Pooled database connections, by state.", "state=\"idle\"",
+					pooled::getIdleCount);
+			Metrics.gauge("db_pool_connections_max", "Upper bound on pooled database connections.", "",
+					pooled::getMaxSize);
+			Metrics.gauge("db_pool_waiting_threads", "Threads waiting for a pooled connection.", "",
+					pooled::getWaitingCount);
+			Metrics.counter("db_pool_statement_cache_hits_total", "Prepared statements reused from the cache.", "",
+					pooled::getStatementCacheHits);
+			Metrics.counter("db_pool_statement_cache_misses_total", "Prepared statements that had to be prepared.", "",
+					pooled::getStatementCacheMisses);
+		}
+
+		if (AppConfig.getBoolean("db.executor.enabled", false)) {
+			dbExecutor = new BoundedExecutor("db",
+					AppConfig.getInt("db.executor.threads", AppConfig.getInt("db.pool.maxSize", 10)),
+					AppConfig.getInt("db.executor.queueSize", 100));
+			BoundedExecutor executor = dbExecutor;
+			Metrics.gauge("db_executor_queue_depth", "Database calls waiting for an executor thread.", "",
+					executor::getQueueDepth);
+			Metrics.gauge("db_executor_active_threads", "Executor threads running a database call.", "",
+					executor::getActiveCount);
+			Metrics.counter("db_executor_rejected_total", "Database calls turned away by a saturated executor.", "",
+					executor::getRejectedCount);
+		}
+
+		if (AppConfig.getBoolean("db.profile.enabled", false)) {
+			PrintStream slowLog = System.out;
+			String logFile = AppConfig.getString("db.profile.slowQueryLog", "");
+			if (!logFile.isEmpty()) {
+				try {
+					slowLog = new PrintStream(new FileOutputStream(logFile, true), true, "UTF-8");
+				} catch (IOException e) {
+					System.out.println("Cannot open " + logFile + ", writing slow queries to stdout: " + e.getMessage());
+				}
+			}
+			queryProfiler = new QueryProfiler(AppConfig.getLong("db.profile.slowQueryMillis", 100), slowLog);
+		}
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * @return an active connection to the database, never null
+	 * @throws SQLException if no connection could be opened, or the pool had none free within its acquire timeout;
+	 *                      DAOs handle it like any other failed statement
 	 */
-	public static Connection getConnection() {
-		try {
-			return pool.getConnection();
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+	public static Connection getConnection() throws SQLException {
+		Connection connection = connectionPool != null ? connectionPool.getConnection() : pool.getConnection();
+		return queryProfiler != null ? queryProfiler.wrap(connection) : connection;
+	}
 
-		return null;
+	/**
+	 * @return the connection pool, or null if connections are not pooled. Useful for reading live pool statistics.
+	 */
+	public static ConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+
+	/**
+	 * @return the executor for asynchronous database calls, or null if they run on the caller's thread
+	 */
+	public static BoundedExecutor getDbExecutor() {
+		return dbExecutor;
+	}
+
+	/**
+	 * @return the query profiler, or null if statements are not profiled. Useful for reading per-statement timings.
+	 */
+	public static QueryProfiler getQueryProfiler() {
+		return queryProfiler;
 	}
 
 	/**
@@ -66,7 +162,13 @@ public class ConnectionUtil {
 	public static void resetTestDatabase() {
 		try {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
+			Connection connection = getConnection();
+			RunScript.execute(connection, sqlReader);
+			// without a pool this connection is left open on purpose: it keeps the embedded database alive so later
+			// connections do not have to reopen the file. A pooled connection must go back or it leaks a slot.
+			if (connectionPool != null) {
+				connection.close();
+			}
 		} catch (SQLException | FileNotFoundException e) {
 			e.printStackTrace();
 		}
@@ -0,0 +1,109 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The DenseIntArray class is a concurrent array of ints indexed by non-negative int keys, for keys that are handed out
+ * in sequence, like auto-increment ids. It is the primitive counterpart of DenseIntMap: every key holds 4 bytes
+ * instead of a reference to a boxed value, and 0 stands for no value.
+ *
+ * Chunks are allocated as keys reach them, under a lock; gets and sets are lock-free volatile accesses, so a value
+ * set after other writes publishes those writes to the readers that see it.
+ */
+public class DenseIntArray {
+
+	private static final int CHUNK_BITS = 12;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private volatile AtomicIntegerArray[] chunks = new AtomicIntegerArray[16];
+	private final AtomicInteger maxKey = new AtomicInteger(-1);
+
+	/**
+	 * @return the value of the key, or 0 if there is none
+	 */
+	public int get(int key) {
+		AtomicIntegerArray chunk = chunkOf(key);
+		return chunk == null ? 0 : chunk.get(key & CHUNK_MASK);
+	}
+
+	/**
+	 * Sets the value of the key.
+	 *
+	 * @return the previous value, or 0 if there was none
+	 */
+	public int set(int key, int value) {
+		int previous = chunkFor(key).getAndSet(key & CHUNK_MASK, value);
+		maxKey.accumulateAndGet(key, Math::max);
+		return previous;
+	}
+
+	/**
+	 * Sets the value of the key only if it is currently expected.
+	 *
+	 * @return true if the value was set
+	 */
+	public boolean compareAndSet(int key, int expected, int value) {
+		AtomicIntegerArray chunk = expected == 0 ? chunkFor(key) : chunkOf(key);
+		if (chunk == null || !chunk.compareAndSet(key & CHUNK_MASK, expected, value)) {
+			return false;
+		}
+		maxKey.accumulateAndGet(key, Math::max);
+		return true;
+	}
+
+	/**
+	 * @return the highest key a value was ever set for, or -1 if none was
+	 */
+	public int maxKey() {
+		return maxKey.get();
+	}
+
+	/**
+	 * @return bytes held by the allocated chunks
+	 */
+	public long allocatedBytes() {
+		long bytes = 0;
+		for (AtomicIntegerArray chunk : chunks) {
+			if (chunk != null) {
+				bytes += 4L * CHUNK_SIZE;
+			}
+		}
+		return bytes;
+	}
+
+	private AtomicIntegerArray chunkOf(int key) {
+		if (key < 0) {
+			return null;
+		}
+		AtomicIntegerArray[] current = chunks;
+		int index = key >>> CHUNK_BITS;
+		return index < current.length ? current[index] : null;
+	}
+
+	private AtomicIntegerArray chunkFor(int key) {
+		AtomicIntegerArray chunk = chunkOf(key);
+		if (chunk != null) {
+			return chunk;
+		}
+		if (key < 0) {
+			throw new IllegalArgumentException("Negative key " + key);
+		}
+		synchronized (this) {
+			int index = key >>> CHUNK_BITS;
+			AtomicIntegerArray[] current = chunks;
+			if (index >= current.length) {
+				AtomicIntegerArray[] grown = new AtomicIntegerArray[Math.max(current.length * 2, index + 1)];
+				System.arraycopy(current, 0, grown, 0, current.length);
+				current = grown;
+			}
+			if (current[index] == null) {
+				current[index] = new AtomicIntegerArray(CHUNK_SIZE);
+			}
+			// publish the new chunk, and the new array if it grew, with one volatile write
+			chunks = current;
+			return current[index];
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The DenseIntMap class is a concurrent map from non-negative int keys to values, for keys that are handed out in
+ * sequence, like auto-increment ids.
+ *
+ * The key is the index into an array of fixed-size chunks, so a lookup is two array reads with no hashing, no boxing
+ * of the key and no lock, and the keys can be walked in order, which is what keyset paging over ids needs. Chunks are
+ * allocated as keys reach them, under a lock; everything else is lock-free. Memory use follows the highest key ever
+ * stored, not the number of entries, so it suits tables whose ids are rarely deleted.
+ */
+public class DenseIntMap<V> {
+
+	private static final int CHUNK_BITS = 12;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	/**
+	 * The chunks, replaced by a longer copy when the keys outgrow it. Entries are null until their chunk is needed.
+	 */
+	private volatile AtomicReferenceArray<V>[] chunks = newChunkArray(16);
+	private final AtomicInteger maxKey = new AtomicInteger(-1);
+
+	@SuppressWarnings("unchecked")
+	private static <V> AtomicReferenceArray<V>[] newChunkArray(int length) {
+		return (AtomicReferenceArray<V>[]) new AtomicReferenceArray<?>[length];
+	}
+
+	/**
+	 * @return the value of the key, or null if there is none
+	 */
+	public V get(int key) {
+		AtomicReferenceArray<V> chunk = chunkOf(key);
+		return chunk == null ? null : chunk.get(key & CHUNK_MASK);
+	}
+
+	/**
+	 * Stores the value under the key.
+	 *
+	 * @return the previous value, or null if there was none
+	 */
+	public V put(int key, V value) {
+		V previous = chunkFor(key).getAndSet(key & CHUNK_MASK, value);
+		maxKey.accumulateAndGet(key, Math::max);
+		return previous;
+	}
+
+	/**
+	 * Replaces the value of the key only if it is currently expected, compared by identity.
+	 *
+	 * @return true if the value was replaced
+	 */
+	public boolean replace(int key, V expected, V value) {
+		AtomicReferenceArray<V> chunk = chunkOf(key);
+		return chunk != null && chunk.compareAndSet(key & CHUNK_MASK, expected, value);
+	}
+
+	/**
+	 * Removes the key.
+	 *
+	 * @return the removed value, or null if there was none
+	 */
+	public V remove(int key) {
+		AtomicReferenceArray<V> chunk = chunkOf(key);
+		return chunk == null ? null : chunk.getAndSet(key & CHUNK_MASK, null);
+	}
+
+	/**
+	 * @return the highest key a value was ever stored under, or -1 if none was; keys above it have no value
+	 */
+	public int maxKey() {
+		return maxKey.get();
+	}
+
+	private AtomicReferenceArray<V> chunkOf(int key) {
+		if (key < 0) {
+			return null;
+		}
+		AtomicReferenceArray<V>[] current = chunks;
+		int index = key >>> CHUNK_BITS;
+		return index < current.length ? current[index] : null;
+	}
+
+	private AtomicReferenceArray<V> chunkFor(int key) {
+		AtomicReferenceArray<V> chunk = chunkOf(key);
+		if (chunk != null) {
+			return chunk;
+		}
+		if (key < 0) {
+			throw new IllegalArgumentException("Negative key " + key);
+		}
+		synchronized (this) {
+			int index = key >>> CHUNK_BITS;
+			AtomicReferenceArray<V>[] current = chunks;
+			if (index >= current.length) {
+				AtomicReferenceArray<V>[] grown = newChunkArray(Math.max(current.length * 2, index + 1));
+				System.arraycopy(current, 0, grown, 0, current.length);
+				current = grown;
+			}
+			if (current[index] == null) {
+				current[index] = new AtomicReferenceArray<>(CHUNK_SIZE);
+			}
+			// publish the new chunk, and the new array if it grew, with one volatile write
+			chunks = current;
+			return current[index];
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+import Model.Account;
+import Model.Message;
+import io.javalin.json.JavalinJackson;
+import io.javalin.json.JsonMapper;
+
+/**
+ * The JsonCodec class holds the one ObjectMapper the application uses, together with readers and writers for Account
+ * and Message that are bound to their types once. ObjectMapper, ObjectReader and ObjectWriter are thread-safe after
+ * configuration, so handlers share them instead of building a new mapper (and re-introspecting the model classes)
+ * on every request.
+ *
+ * Account and Message are written by hand-written serializers that emit the same JSON as Jackson's bean serializer,
+ * field for field and in the same order, without reflection.
+ */
+public class JsonCodec {
+
+	/**
+	 * The shared mapper, with the hand-written serializers registered.
+	 */
+	public static final ObjectMapper MAPPER = new ObjectMapper()
+			.registerModule(new SimpleModule("SocialMediaModels")
+					.addSerializer(Account.class, new AccountSerializer())
+					.addSerializer(Message.class, new MessageSerializer()));
+
+	private static final ObjectReader ACCOUNT_READER = MAPPER.readerFor(Account.class);
+	private static final ObjectReader MESSAGE_READER = MAPPER.readerFor(Message.class);
+	private static final ObjectReader MESSAGE_LIST_READER = MAPPER.readerFor(new TypeReference<List<Message>>() {
+	});
+	private static final ObjectWriter ACCOUNT_WRITER = MAPPER.writerFor(Account.class);
+	private static final ObjectWriter MESSAGE_WRITER = MAPPER.writerFor(Message.class);
+
+	private JsonCodec() {
+	}
+
+	/**
+	 * @return the factory behind the shared mapper, for code that writes JSON with a JsonGenerator directly
+	 */
+	public static JsonFactory factory() {
+		return MAPPER.getFactory();
+	}
+
+	/**
+	 * @return a Javalin JsonMapper backed by the shared mapper, so ctx.json uses the same serializers
+	 */
+	public static JsonMapper javalinMapper() {
+		return new JavalinJackson(MAPPER);
+	}
+
+	/**
+	 * Parses an Account straight from a byte stream, eg a request body, without first decoding it to a String.
+	 */
+	public static Account readAccount(InputStream in) throws IOException {
+		return ACCOUNT_READER.readValue(in);
+	}
+
+	/**
+	 * Parses a Message straight from a byte stream, eg a request body, without first decoding it to a String.
+	 */
+	public static Message readMessage(InputStream in) throws IOException {
+		return MESSAGE_READER.readValue(in);
+	}
+
+	/**
+	 * Parses a JSON array of messages straight from a byte stream.
+	 */
+	public static List<Message> readMessages(InputStream in) throws IOException {
+		return MESSAGE_LIST_READER.readValue(in);
+	}
+
+	public static Account readAccount(byte[] json) throws IOException {
+		return ACCOUNT_READER.readValue(json);
+	}
+
+	public static Message readMessage(byte[] json) throws IOException {
+		return MESSAGE_READER.readValue(json);
+	}
+
+	public static byte[] writeAccount(Account account) throws IOException {
+		return ACCOUNT_WRITER.writeValueAsBytes(account);
+	}
+
+	public static byte[] writeMessage(Message message) throws IOException {
+		return MESSAGE_WRITER.writeValueAsBytes(message);
+	}
+
+	/**
+	 * Writes one message as a JSON object. Used by the Message serializer and by code that streams listings.
+	 */
+	public static void writeMessage(JsonGenerator generator, Message message) throws IOException {
+		generator.writeStartObject();
+		generator.writeNumberField("message_id", message.getMessage_id());
+		generator.writeNumberField("posted_by", message.getPosted_by());
+		generator.writeStringField("message_text", message.getMessage_text());
+		generator.writeNumberField("time_posted_epoch", message.getTime_posted_epoch());
+		generator.writeEndObject();
+	}
+
+	/**
+	 * Writes one account as a JSON object.
+	 */
+	public static void writeAccount(JsonGenerator generator, Account account) throws IOException {
+		generator.writeStartObject();
+		generator.writeNumberField("account_id", account.getAccount_id());
+		generator.writeStringField("username", account.getUsername());
+		generator.writeStringField("password", account.getPassword());
+		generator.writeEndObject();
+	}
+
+	private static class AccountSerializer extends JsonSerializer<Account> {
+		@Override
+		public void serialize(Account account, JsonGenerator generator, SerializerProvider provider)
+				throws IOException {
+			writeAccount(generator, account);
+		}
+	}
+
+	private static class MessageSerializer extends JsonSerializer<Message> {
+		@Override
+		public void serialize(Message message, JsonGenerator generator, SerializerProvider provider)
+				throws IOException {
+			writeMessage(generator, message);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package Util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class counts durations into fixed buckets, the way a Prometheus histogram exposes them.
+ *
+ * Recording is lock-free and allocation-free: it finds the bucket with a short scan of a fixed array of bounds and
+ * increments a LongAdder, so it is cheap enough to call on every request or query. The buckets are kept
+ * non-cumulative and only summed up when written out.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Upper bounds of the buckets, in seconds, from half a millisecond to ten seconds; anything slower falls in +Inf.
+	 */
+	public static final double[] BUCKETS_SECONDS = { 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5,
+			1, 2.5, 5, 10 };
+
+	private static final long[] BOUNDS_NANOS = new long[BUCKETS_SECONDS.length];
+
+	static {
+		for (int i = 0; i < BUCKETS_SECONDS.length; i++) {
+			BOUNDS_NANOS[i] = Math.round(BUCKETS_SECONDS[i] * 1e9);
+		}
+	}
+
+	// one extra bucket for +Inf
+	private final LongAdder[] buckets = new LongAdder[BOUNDS_NANOS.length + 1];
+	private final LongAdder sumNanos = new LongAdder();
+
+	public LatencyHistogram() {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records one duration.
+	 */
+	public void record(long nanos) {
+		int bucket = 0;
+		while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket]) {
+			bucket++;
+		}
+		buckets[bucket].increment();
+		sumNanos.add(nanos);
+	}
+
+	/**
+	 * Records the time elapsed since startNanos, a System.nanoTime() reading.
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * @return the number of durations recorded
+	 */
+	public long getCount() {
+		long count = 0;
+		for (LongAdder bucket : buckets) {
+			count += bucket.sum();
+		}
+		return count;
+	}
+
+	/**
+	 * @return the total of the durations recorded, in nanoseconds
+	 */
+	public long getSumNanos() {
+		return sumNanos.sum();
+	}
+
+	/**
+	 * Appends the histogram in Prometheus text format: one cumulative _bucket sample per bound, then _sum and _count.
+	 *
+	 * @param name   the metric family name
+	 * @param labels the labels of this histogram, as they go between the braces, without le; may be empty
+	 */
+	public void writeTo(StringBuilder out, String name, String labels) {
+		String prefix = labels.isEmpty() ? "" : labels + ",";
+		long cumulative = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			cumulative += buckets[i].sum();
+			String le = i < BUCKETS_SECONDS.length ? Double.toString(BUCKETS_SECONDS[i]) : "+Inf";
+			out.append(name).append("_bucket{").append(prefix).append("le=\"").append(le).append("\"} ")
+					.append(cumulative).append('\n');
+		}
+		String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+		out.append(name).append("_sum").append(braces).append(' ').append(sumNanos.sum() / 1e9).append('\n');
+		out.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+	}
+}
@@ -0,0 +1,261 @@
+package Util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * The LruCache class is a bounded, thread-safe, read-through cache with least-recently-used eviction and an optional
+ * time-to-live.
+ *
+ * Keys are spread over independently locked segments, each an access-ordered LinkedHashMap, so threads working on
+ * different keys rarely contend. The loader runs outside any lock. A value loaded while the same segment was
+ * invalidated or written is handed back to the caller but not cached, so a slow load can never put a stale value back
+ * after an invalidation.
+ *
+ * Null values are never cached: a loader returning null is treated as "not found" and asked again next time.
+ */
+public class LruCache<K, V> {
+
+	private final Segment<K, V>[] segments;
+	private final long ttlNanos;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param maxSize    the most entries the cache holds, across all segments
+	 * @param ttlMillis  how long an entry stays valid after it was written, 0 for no expiry
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public LruCache(int maxSize, long ttlMillis) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+		}
+		int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(16, maxSize / 16)));
+		this.segments = new Segment[segmentCount];
+		int perSegment = (maxSize + segmentCount - 1) / segmentCount;
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment<>(perSegment, this);
+		}
+		this.ttlNanos = ttlMillis <= 0 ? 0 : ttlMillis * 1_000_000L;
+	}
+
+	private Segment<K, V> segmentFor(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & (segments.length - 1)];
+	}
+
+	/**
+	 * @return the cached value for the key, or null if it is absent or expired
+	 */
+	public V getIfPresent(K key) {
+		V value = segmentFor(key).get(key, System.nanoTime());
+		if (value != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+		return value;
+	}
+
+	/**
+	 * @return the cached value for the key, loading and caching it on a miss
+	 */
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		Segment<K, V> segment = segmentFor(key);
+		V value = segment.get(key, System.nanoTime());
+		if (value != null) {
+			hits.increment();
+			return value;
+		}
+		misses.increment();
+		long version = segment.version();
+		value = loader.apply(key);
+		if (value != null) {
+			segment.putIfVersion(key, value, version, System.nanoTime());
+		}
+		return value;
+	}
+
+	/**
+	 * Caches the value, replacing any existing entry.
+	 */
+	public void put(K key, V value) {
+		segmentFor(key).put(key, value, System.nanoTime());
+	}
+
+	/**
+	 * Atomically replaces the cached value for the key with the result of the function, if the key is cached. A null
+	 * result drops the entry. Either way, a load of the same segment that is in flight will not be cached.
+	 */
+	public void computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+		segmentFor(key).computeIfPresent(key, function, System.nanoTime());
+	}
+
+	/**
+	 * Drops the entry for the key, if any.
+	 */
+	public void invalidate(K key) {
+		segmentFor(key).remove(key);
+	}
+
+	/**
+	 * Drops every entry.
+	 */
+	public void invalidateAll() {
+		for (Segment<K, V> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	/**
+	 * @return the number of entries currently cached, including any that have expired but not yet been removed
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment<K, V> segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return entries removed because the cache was full or because they expired
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "LruCache{size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions="
+				+ getEvictions() + '}';
+	}
+
+	private static class Entry<V> {
+		final V value;
+		final long writtenNanos;
+
+		Entry(V value, long writtenNanos) {
+			this.value = value;
+			this.writtenNanos = writtenNanos;
+		}
+	}
+
+	private static class Segment<K, V> {
+		private final int capacity;
+		private final LruCache<K, V> owner;
+		private final LinkedHashMap<K, Entry<V>> map;
+		/**
+		 * Bumped on every write or removal, so a load that started before one can tell it raced with it.
+		 */
+		private long version;
+
+		Segment(int capacity, LruCache<K, V> owner) {
+			this.capacity = capacity;
+			this.owner = owner;
+			this.map = new LinkedHashMap<>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+					if (size() > Segment.this.capacity) {
+						Segment.this.owner.evictions.increment();
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+
+		synchronized V get(K key, long now) {
+			Entry<V> entry = map.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (isExpired(entry, now)) {
+				map.remove(key);
+				owner.evictions.increment();
+				return null;
+			}
+			return entry.value;
+		}
+
+		synchronized long version() {
+			return version;
+		}
+
+		synchronized void put(K key, V value, long now) {
+			version++;
+			map.put(key, new Entry<>(value, now));
+			if (owner.ttlNanos > 0) {
+				purgeExpired(now);
+			}
+		}
+
+		synchronized void putIfVersion(K key, V value, long expectedVersion, long now) {
+			if (version == expectedVersion) {
+				put(key, value, now);
+			}
+		}
+
+		synchronized void computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> function, long now) {
+			V current = get(key, now);
+			if (current == null) {
+				// still counts as a write: a load of this key that is in flight may already be stale
+				version++;
+				return;
+			}
+			V next = function.apply(key, current);
+			if (next == null) {
+				remove(key);
+			} else {
+				put(key, next, now);
+			}
+		}
+
+		synchronized void remove(K key) {
+			version++;
+			map.remove(key);
+		}
+
+		synchronized void clear() {
+			version++;
+			map.clear();
+		}
+
+		synchronized int size() {
+			return map.size();
+		}
+
+		private boolean isExpired(Entry<V> entry, long now) {
+			return owner.ttlNanos > 0 && now - entry.writtenNanos >= owner.ttlNanos;
+		}
+
+		/**
+		 * Drops expired entries from the least recently used end, stopping at the first live one.
+		 */
+		private void purgeExpired(long now) {
+			Iterator<Entry<V>> iterator = map.values().iterator();
+			while (iterator.hasNext()) {
+				if (!isExpired(iterator.next(), now)) {
+					return;
+				}
+				iterator.remove();
+				owner.evictions.increment();
+			}
+		}
+	}
+}
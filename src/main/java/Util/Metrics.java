@@ -0,0 +1,181 @@
+package Util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The Metrics class is the process-wide registry behind the /metrics endpoint, written out in the Prometheus text
+ * exposition format.
+ *
+ * It holds three kinds of metric. Per-route request counters and latency histograms, per-DAO-method query
+ * histograms and other named histograms are created once, when the route or class is set up, and then only recorded
+ * into: recording is
+ * lock-free and allocates nothing. Everything else (pool, executor and cache statistics) is sampled: the owner
+ * registers a function that reads its existing counters, and the function is only called when /metrics is scraped.
+ */
+public final class Metrics {
+
+	private static final int MAX_STATUS = 600;
+
+	private static final Map<String, Route> ROUTES = new ConcurrentSkipListMap<>();
+	private static final Map<String, LatencyHistogram> DB_TIMERS = new ConcurrentSkipListMap<>();
+	private static final Map<String, Sampled> SAMPLED = new ConcurrentSkipListMap<>();
+	private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+
+	private Metrics() {
+	}
+
+	/**
+	 * Request counters and latency histogram of one route.
+	 */
+	public static final class Route {
+		private final String labels;
+		private final AtomicReferenceArray<LongAdder> statuses = new AtomicReferenceArray<>(MAX_STATUS);
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		private Route(String method, String path) {
+			this.labels = "method=\"" + escape(method) + "\",route=\"" + escape(path) + "\"";
+		}
+
+		/**
+		 * Records one request. Only the first request with a given status code allocates, to create its counter.
+		 */
+		public void record(int status, long nanos) {
+			int index = status > 0 && status < MAX_STATUS ? status : 0;
+			LongAdder counter = statuses.get(index);
+			if (counter == null) {
+				statuses.compareAndSet(index, null, new LongAdder());
+				counter = statuses.get(index);
+			}
+			counter.increment();
+			latency.record(nanos);
+		}
+	}
+
+	private static final class Sampled {
+		final String family;
+		final String help;
+		final String type;
+		final String labels;
+		final DoubleSupplier value;
+
+		Sampled(String family, String help, String type, String labels, DoubleSupplier value) {
+			this.family = family;
+			this.help = help;
+			this.type = type;
+			this.labels = labels;
+			this.value = value;
+		}
+	}
+
+	private static final class Histogram {
+		final String help;
+		final LatencyHistogram latency = new LatencyHistogram();
+
+		Histogram(String help) {
+			this.help = help;
+		}
+	}
+
+	/**
+	 * @return the metrics of the route, created on first use; the same route always gets the same instance
+	 */
+	public static Route route(String method, String path) {
+		return ROUTES.computeIfAbsent(path + " " + method, key -> new Route(method, path));
+	}
+
+	/**
+	 * @return the query timer of a DAO method, created on first use; its count is the number of calls
+	 */
+	public static LatencyHistogram dbTimer(String dao, String method) {
+		return DB_TIMERS.computeIfAbsent("dao=\"" + escape(dao) + "\",method=\"" + escape(method) + "\"",
+				key -> new LatencyHistogram());
+	}
+
+	/**
+	 * @return the histogram of the family, created on first use; the family name should end in _seconds
+	 */
+	public static LatencyHistogram histogram(String family, String help) {
+		return HISTOGRAMS.computeIfAbsent(family, key -> new Histogram(help)).latency;
+	}
+
+	/**
+	 * Registers a value that can go up and down, read when /metrics is scraped. Registering the same family and
+	 * labels again replaces the earlier function.
+	 *
+	 * @param labels the labels as they go between the braces, eg cache="message"; may be empty
+	 */
+	public static void gauge(String family, String help, String labels, DoubleSupplier value) {
+		SAMPLED.put(family + "{" + labels + "}", new Sampled(family, help, "gauge", labels, value));
+	}
+
+	/**
+	 * Registers a value that only goes up, read when /metrics is scraped. The family name should end in _total.
+	 */
+	public static void counter(String family, String help, String labels, DoubleSupplier value) {
+		SAMPLED.put(family + "{" + labels + "}", new Sampled(family, help, "counter", labels, value));
+	}
+
+	/**
+	 * @return every metric in the Prometheus text exposition format, version 0.0.4
+	 */
+	public static String scrape() {
+		StringBuilder out = new StringBuilder(8192);
+
+		header(out, "http_requests_total", "Requests handled, by route and status code.", "counter");
+		for (Route route : ROUTES.values()) {
+			for (int status = 0; status < MAX_STATUS; status++) {
+				LongAdder counter = route.statuses.get(status);
+				if (counter != null) {
+					out.append("http_requests_total{").append(route.labels).append(",status=\"").append(status)
+							.append("\"} ").append(counter.sum()).append('\n');
+				}
+			}
+		}
+		header(out, "http_request_duration_seconds", "Time from a request reaching its handler to its response.",
+				"histogram");
+		for (Route route : ROUTES.values()) {
+			route.latency.writeTo(out, "http_request_duration_seconds", route.labels);
+		}
+
+		header(out, "db_query_duration_seconds", "Time spent in each DAO method; _count is the number of calls.",
+				"histogram");
+		for (Map.Entry<String, LatencyHistogram> timer : DB_TIMERS.entrySet()) {
+			timer.getValue().writeTo(out, "db_query_duration_seconds", timer.getKey());
+		}
+
+		for (Map.Entry<String, Histogram> histogram : HISTOGRAMS.entrySet()) {
+			header(out, histogram.getKey(), histogram.getValue().help, "histogram");
+			histogram.getValue().latency.writeTo(out, histogram.getKey(), "");
+		}
+
+		String family = null;
+		for (Sampled sampled : SAMPLED.values()) {
+			if (!sampled.family.equals(family)) {
+				family = sampled.family;
+				header(out, family, sampled.help, sampled.type);
+			}
+			out.append(family);
+			if (!sampled.labels.isEmpty()) {
+				out.append('{').append(sampled.labels).append('}');
+			}
+			out.append(' ').append(sampled.value.getAsDouble()).append('\n');
+		}
+		return out.toString();
+	}
+
+	private static void header(StringBuilder out, String family, String help, String type) {
+		out.append("# HELP ").append(family).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(family).append(' ').append(type).append('\n');
+	}
+
+	/**
+	 * Escapes a label value: backslash, double quote and newline.
+	 */
+	public static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
@@ -0,0 +1,515 @@
+package Util;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * The QueryProfiler class wraps JDBC connections so that every statement run through them is timed, and aggregates
+ * the timings by normalized SQL.
+ *
+ * A wrapped connection hands out wrapped statements, and a wrapped query hands out a wrapped result set. An
+ * execution is timed in two parts: the execute call itself, and the time spent inside ResultSet.next fetching rows.
+ * Time the caller spends between rows, eg serializing them, is not counted. A query's execution ends when its result
+ * set is exhausted or closed, or when its statement is closed or run again; an update ends when the execute returns.
+ *
+ * Executions are aggregated by SQL text with literals replaced by ? and whitespace collapsed, so prepared statements
+ * group by their constant SQL and ad hoc statements with inlined values still group together. Each aggregate is
+ * exported through Metrics. An execution that takes at least the slow query threshold is also written to the slow
+ * query log as one JSON object per line, with its row count and the shape of its bind parameters: their JDBC types
+ * and string lengths, never their values, since those include passwords.
+ *
+ * Profiling is opt-in. When it is disabled ConnectionUtil hands out connections without wrapping them at all, so the
+ * only cost is a null check per getConnection.
+ */
+public class QueryProfiler {
+
+	/**
+	 * Most distinct normalized statements tracked; anything beyond that is counted under OTHER_SQL.
+	 */
+	private static final int MAX_STATEMENTS = 1000;
+	private static final String OTHER_SQL = "other";
+
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private final long slowThresholdNanos;
+	private final PrintStream slowLog;
+
+	/**
+	 * Aggregates keyed by normalized SQL.
+	 */
+	private final Map<String, QueryStats> statistics = new ConcurrentHashMap<>();
+	/**
+	 * Aggregates keyed by the SQL text as the caller passed it, so the same prepared SQL is only normalized once.
+	 */
+	private final Map<String, QueryStats> bySqlText = new ConcurrentHashMap<>();
+
+	private final LongAdder slowQueries = new LongAdder();
+
+	/**
+	 * @param slowThresholdMillis executions taking at least this long are written to the slow query log; negative
+	 *                            disables the log
+	 * @param slowLog             where slow queries are written, one JSON object per line
+	 */
+	public QueryProfiler(long slowThresholdMillis, PrintStream slowLog) {
+		this.slowThresholdNanos = slowThresholdMillis < 0 ? Long.MAX_VALUE : slowThresholdMillis * 1_000_000;
+		this.slowLog = slowLog;
+	}
+
+	/**
+	 * Timings of every execution of one normalized statement.
+	 */
+	public static final class QueryStats {
+		private final String sql;
+		private final LongAdder executions = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder rows = new LongAdder();
+		private final LongAdder executeNanos = new LongAdder();
+		private final LongAdder fetchNanos = new LongAdder();
+		private final LongAdder slow = new LongAdder();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		private QueryStats(String sql) {
+			this.sql = sql;
+		}
+
+		public String getSql() {
+			return sql;
+		}
+
+		public long getExecutions() {
+			return executions.sum();
+		}
+
+		public long getErrors() {
+			return errors.sum();
+		}
+
+		/**
+		 * @return rows fetched by queries plus rows changed by updates
+		 */
+		public long getRows() {
+			return rows.sum();
+		}
+
+		public long getExecuteNanos() {
+			return executeNanos.sum();
+		}
+
+		public long getFetchNanos() {
+			return fetchNanos.sum();
+		}
+
+		public long getTotalNanos() {
+			return executeNanos.sum() + fetchNanos.sum();
+		}
+
+		public long getMaxNanos() {
+			return maxNanos.get();
+		}
+
+		public long getSlowCount() {
+			return slow.sum();
+		}
+	}
+
+	/**
+	 * @return a connection that profiles every statement created through it; closing it closes the given connection
+	 */
+	public Connection wrap(Connection connection) {
+		if (connection == null) {
+			return null;
+		}
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new ConnectionHandle(connection));
+	}
+
+	/**
+	 * @return the aggregates of every statement seen so far, most total time first
+	 */
+	public List<QueryStats> getStatistics() {
+		List<QueryStats> sorted = new ArrayList<>(statistics.values());
+		sorted.sort(Comparator.comparingLong(QueryStats::getTotalNanos).reversed());
+		return sorted;
+	}
+
+	/**
+	 * @return the aggregate of the statement with this SQL, normalized first, or null if it has not run
+	 */
+	public QueryStats getStatistics(String sql) {
+		return statistics.get(normalize(sql));
+	}
+
+	/**
+	 * @return the number of executions written to the slow query log
+	 */
+	public long getSlowQueryCount() {
+		return slowQueries.sum();
+	}
+
+	/**
+	 * Replaces string and number literals with ? and collapses whitespace.
+	 */
+	public static String normalize(String sql) {
+		String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+		normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+		return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+	}
+
+	private QueryStats statsFor(String sql) {
+		QueryStats stats = bySqlText.get(sql);
+		if (stats != null) {
+			return stats;
+		}
+		String normalized = normalize(sql);
+		stats = statistics.get(normalized);
+		if (stats == null) {
+			if (statistics.size() >= MAX_STATEMENTS) {
+				normalized = OTHER_SQL;
+			}
+			stats = statistics.computeIfAbsent(normalized, this::newStats);
+		}
+		if (bySqlText.size() < MAX_STATEMENTS) {
+			bySqlText.putIfAbsent(sql, stats);
+		}
+		return stats;
+	}
+
+	private QueryStats newStats(String sql) {
+		QueryStats stats = new QueryStats(sql);
+		String labels = "sql=\"" + Metrics.escape(sql) + "\"";
+		Metrics.counter("db_statement_executions_total", "Statement executions, by normalized SQL.", labels,
+				stats::getExecutions);
+		Metrics.counter("db_statement_errors_total", "Statement executions that threw, by normalized SQL.", labels,
+				stats::getErrors);
+		Metrics.counter("db_statement_rows_total", "Rows fetched or changed, by normalized SQL.", labels,
+				stats::getRows);
+		Metrics.counter("db_statement_seconds_total", "Time spent executing and fetching rows, by normalized SQL.",
+				labels, () -> stats.getTotalNanos() / 1e9);
+		Metrics.counter("db_statement_slow_total", "Executions over the slow query threshold, by normalized SQL.",
+				labels, stats::getSlowCount);
+		return stats;
+	}
+
+	/**
+	 * One execution of a statement, from the execute call until its rows have been fetched. Only touched by the thread
+	 * using the statement.
+	 */
+	private final class Execution {
+		final QueryStats stats;
+		final String[] parameters;
+		final int batchSize;
+		long executeNanos;
+		long fetchNanos;
+		long rows;
+		boolean failed;
+		boolean finished;
+
+		Execution(QueryStats stats, String[] parameters, int batchSize) {
+			this.stats = stats;
+			this.parameters = parameters;
+			this.batchSize = batchSize;
+		}
+
+		void finish() {
+			if (finished) {
+				return;
+			}
+			finished = true;
+			long total = executeNanos + fetchNanos;
+			stats.executions.increment();
+			stats.executeNanos.add(executeNanos);
+			stats.fetchNanos.add(fetchNanos);
+			stats.rows.add(rows);
+			stats.maxNanos.accumulateAndGet(total, Math::max);
+			if (failed) {
+				stats.errors.increment();
+			}
+			if (total >= slowThresholdNanos) {
+				stats.slow.increment();
+				slowQueries.increment();
+				logSlow(this, total);
+			}
+		}
+	}
+
+	private void logSlow(Execution execution, long totalNanos) {
+		StringWriter line = new StringWriter(256);
+		try (JsonGenerator generator = JsonCodec.factory().createGenerator(line)) {
+			generator.writeStartObject();
+			generator.writeStringField("event", "slow_query");
+			generator.writeNumberField("timestamp", System.currentTimeMillis());
+			generator.writeStringField("thread", Thread.currentThread().getName());
+			generator.writeStringField("sql", execution.stats.sql);
+			generator.writeNumberField("total_ms", totalNanos / 1e6);
+			generator.writeNumberField("execute_ms", execution.executeNanos / 1e6);
+			generator.writeNumberField("fetch_ms", execution.fetchNanos / 1e6);
+			generator.writeNumberField("rows", execution.rows);
+			if (execution.batchSize > 0) {
+				generator.writeNumberField("batch_size", execution.batchSize);
+			}
+			generator.writeArrayFieldStart("parameters");
+			for (String parameter : execution.parameters) {
+				generator.writeString(parameter);
+			}
+			generator.writeEndArray();
+			generator.writeBooleanField("error", execution.failed);
+			generator.writeEndObject();
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+			return;
+		}
+		slowLog.println(line);
+	}
+
+	/**
+	 * Describes a bind parameter without its value: setInt gives INT, setString gives STRING(length), setNull gives
+	 * NULL, setObject gives the class name, with the length of arrays.
+	 */
+	private static String shapeOf(String setter, Object value) {
+		if (setter.equals("setNull") || value == null) {
+			return "NULL";
+		}
+		if (setter.equals("setString") || setter.equals("setNString")) {
+			return "STRING(" + ((String) value).length() + ")";
+		}
+		if (setter.equals("setObject")) {
+			if (value.getClass().isArray()) {
+				return value.getClass().getComponentType().getSimpleName().toUpperCase() + "["
+						+ Array.getLength(value) + "]";
+			}
+			return value.getClass().getSimpleName().toUpperCase();
+		}
+		return setter.substring(3).toUpperCase();
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Wraps the statements a connection creates.
+	 */
+	private class ConnectionHandle implements InvocationHandler {
+		private final Connection connection;
+
+		ConnectionHandle(Connection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "prepareStatement":
+			case "prepareCall":
+			case "createStatement":
+				Statement statement = (Statement) QueryProfiler.invoke(connection, method, args);
+				QueryStats stats = method.getName().equals("createStatement") ? null : statsFor((String) args[0]);
+				return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+						new Class<?>[] { method.getReturnType() }, new StatementHandle(statement, stats));
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "ProfiledConnection[" + connection + "]";
+			default:
+				return QueryProfiler.invoke(connection, method, args);
+			}
+		}
+	}
+
+	/**
+	 * Times the executes of a statement and records the shape of its bind parameters.
+	 */
+	private class StatementHandle implements InvocationHandler {
+		private final Statement statement;
+		/**
+		 * Aggregate of the prepared SQL, or null for a plain Statement, whose SQL comes with each execute.
+		 */
+		private final QueryStats prepared;
+		private String[] parameters = new String[0];
+		private int batchSize;
+		private Execution current;
+
+		StatementHandle(Statement statement, QueryStats prepared) {
+			this.statement = statement;
+			this.prepared = prepared;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.startsWith("execute")) {
+				return execute(method, args);
+			}
+			if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer
+					&& (Integer) args[0] > 0) {
+				int index = (Integer) args[0];
+				if (index > parameters.length) {
+					parameters = Arrays.copyOf(parameters, index);
+				}
+				parameters[index - 1] = shapeOf(name, args[1]);
+			}
+			switch (name) {
+			case "clearParameters":
+				Arrays.fill(parameters, null);
+				break;
+			case "addBatch":
+				batchSize++;
+				break;
+			case "clearBatch":
+				batchSize = 0;
+				break;
+			case "close":
+				finishCurrent();
+				break;
+			case "getResultSet":
+				ResultSet resultSet = (ResultSet) QueryProfiler.invoke(statement, method, args);
+				return current != null && resultSet != null ? wrap(resultSet, current) : resultSet;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "ProfiledStatement[" + statement + "]";
+			default:
+				break;
+			}
+			return QueryProfiler.invoke(statement, method, args);
+		}
+
+		private Object execute(Method method, Object[] args) throws Throwable {
+			finishCurrent();
+			QueryStats stats = args != null && args.length > 0 && args[0] instanceof String
+					? statsFor((String) args[0])
+					: prepared;
+			boolean batch = method.getName().startsWith("executeBatch")
+					|| method.getName().startsWith("executeLargeBatch");
+			Execution execution = new Execution(stats, parameters.clone(), batch ? batchSize : 0);
+			if (batch) {
+				batchSize = 0;
+			}
+			Object result;
+			long started = System.nanoTime();
+			try {
+				result = QueryProfiler.invoke(statement, method, args);
+			} catch (Throwable e) {
+				execution.executeNanos = System.nanoTime() - started;
+				execution.failed = true;
+				execution.finish();
+				throw e;
+			}
+			execution.executeNanos = System.nanoTime() - started;
+
+			if (result instanceof ResultSet) {
+				current = execution;
+				return wrap((ResultSet) result, execution);
+			}
+			if (result instanceof Integer || result instanceof Long) {
+				execution.rows = Math.max(0, ((Number) result).longValue());
+			} else if (result instanceof int[]) {
+				for (int count : (int[]) result) {
+					execution.rows += Math.max(0, count);
+				}
+			} else if (result instanceof long[]) {
+				for (long count : (long[]) result) {
+					execution.rows += Math.max(0, count);
+				}
+			} else if (Boolean.TRUE.equals(result)) {
+				// execute() produced a result set, which the caller fetches with getResultSet
+				current = execution;
+				return result;
+			} else if (Boolean.FALSE.equals(result)) {
+				execution.rows = Math.max(0, statement.getUpdateCount());
+			}
+			execution.finish();
+			return result;
+		}
+
+		private void finishCurrent() {
+			if (current != null) {
+				current.finish();
+				current = null;
+			}
+		}
+	}
+
+	private static ResultSet wrap(ResultSet resultSet, Execution execution) {
+		return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+				new ResultSetHandle(resultSet, execution));
+	}
+
+	/**
+	 * Times the row fetches of a query.
+	 */
+	private static class ResultSetHandle implements InvocationHandler {
+		private final ResultSet resultSet;
+		private final Execution execution;
+
+		ResultSetHandle(ResultSet resultSet, Execution execution) {
+			this.resultSet = resultSet;
+			this.execution = execution;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "next":
+				long started = System.nanoTime();
+				boolean hasRow;
+				try {
+					hasRow = resultSet.next();
+				} catch (SQLException e) {
+					execution.fetchNanos += System.nanoTime() - started;
+					execution.failed = true;
+					execution.finish();
+					throw e;
+				}
+				execution.fetchNanos += System.nanoTime() - started;
+				if (hasRow) {
+					execution.rows++;
+				} else {
+					execution.finish();
+				}
+				return hasRow;
+			case "close":
+				execution.finish();
+				resultSet.close();
+				return null;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				return QueryProfiler.invoke(resultSet, method, args);
+			}
+		}
+	}
+}
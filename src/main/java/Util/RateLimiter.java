@@ -0,0 +1,155 @@
+package Util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The RateLimiter class is a token bucket per key, eg per account or per client address: each key may make burst
+ * requests at once and then rate requests per second, and a request beyond that is refused with the time until it
+ * would have been allowed.
+ *
+ * The buckets are kept in the form of the generic cell rate algorithm (GCRA): instead of a token count and a refill
+ * time, a bucket is the single time at which it will next be full again, so taking a token is one compare-and-set
+ * on one AtomicLong, and a request never waits on a lock once its key has a bucket. A bucket whose time has passed is
+ * full, which is exactly what a new bucket would be, so idle buckets can be dropped at any moment without changing
+ * any answer. They are dropped in sweeps, every ten seconds or once the burst period if that is longer, and when a
+ * new key finds the limiter at maxKeys, though then at most every 100 ms so that a stream of new keys cannot keep it
+ * sweeping. If it is still full of active keys, new keys share one overflow bucket until room is made, so memory
+ * stays bounded however many keys are seen.
+ */
+public class RateLimiter {
+
+	private static final long SWEEP_INTERVAL_NANOS = 10_000_000_000L;
+	private static final long MIN_SWEEP_GAP_NANOS = 100_000_000L;
+
+	private final long intervalNanos;
+	private final long burstNanos;
+	private final int maxKeys;
+	private final long origin = System.nanoTime();
+
+	private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+	private final AtomicLong overflow = new AtomicLong();
+	private final AtomicBoolean sweeping = new AtomicBoolean();
+	private final long sweepIntervalNanos;
+	private volatile long lastSweepNanos;
+
+	private final LongAdder allowed = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder overflowed = new LongAdder();
+	private final LongAdder evicted = new LongAdder();
+
+	/**
+	 * @param rate    requests per second each key is allowed on average
+	 * @param burst   requests a key that has been idle may make at once
+	 * @param maxKeys most keys held at a time
+	 */
+	public RateLimiter(double rate, int burst, int maxKeys) {
+		if (!(rate > 0) || burst < 1 || maxKeys < 1) {
+			throw new IllegalArgumentException("Invalid rate limit: rate=" + rate + ", burst=" + burst + ", maxKeys="
+					+ maxKeys);
+		}
+		this.intervalNanos = Math.max(1, (long) (1e9 / rate));
+		this.burstNanos = intervalNanos * burst;
+		this.maxKeys = maxKeys;
+		this.sweepIntervalNanos = Math.max(SWEEP_INTERVAL_NANOS, burstNanos);
+	}
+
+	/**
+	 * Takes a token from the key's bucket.
+	 *
+	 * @return 0 if the request is allowed, otherwise the nanoseconds until it would be
+	 */
+	public long acquire(String key) {
+		long now = System.nanoTime() - origin;
+		if (now - lastSweepNanos >= sweepIntervalNanos) {
+			sweep(now);
+		}
+		AtomicLong bucket = bucketOf(key, now);
+		while (true) {
+			long full = bucket.get();
+			long next = Math.max(full, now) + intervalNanos;
+			long wait = next - now - burstNanos;
+			if (wait > 0) {
+				rejected.increment();
+				return wait;
+			}
+			if (bucket.compareAndSet(full, next)) {
+				allowed.increment();
+				return 0;
+			}
+		}
+	}
+
+	private AtomicLong bucketOf(String key, long now) {
+		AtomicLong bucket = buckets.get(key);
+		if (bucket != null) {
+			return bucket;
+		}
+		if (buckets.size() >= maxKeys) {
+			if (now - lastSweepNanos >= MIN_SWEEP_GAP_NANOS) {
+				sweep(now);
+			}
+			if (buckets.size() >= maxKeys) {
+				overflowed.increment();
+				return overflow;
+			}
+		}
+		bucket = new AtomicLong();
+		AtomicLong existing = buckets.putIfAbsent(key, bucket);
+		return existing != null ? existing : bucket;
+	}
+
+	/**
+	 * Drops the buckets that are full again. One thread sweeps at a time; the others carry on without waiting.
+	 * A request racing with the removal of its bucket may be counted against the removed one and so go uncounted,
+	 * which lets a key that has just become idle through with at most one request more than its burst.
+	 */
+	private void sweep(long now) {
+		if (!sweeping.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			lastSweepNanos = now;
+			for (Map.Entry<String, AtomicLong> entry : buckets.entrySet()) {
+				if (entry.getValue().get() <= now && buckets.remove(entry.getKey(), entry.getValue())) {
+					evicted.increment();
+				}
+			}
+		}
+		finally {
+			sweeping.set(false);
+		}
+	}
+
+	/**
+	 * @return the number of keys with a bucket, including idle ones not swept yet
+	 */
+	public int size() {
+		return buckets.size();
+	}
+
+	public long getAllowed() {
+		return allowed.sum();
+	}
+
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	/**
+	 * @return the number of requests counted against the shared overflow bucket because the limiter was full
+	 */
+	public long getOverflowed() {
+		return overflowed.sum();
+	}
+
+	/**
+	 * @return the number of idle buckets dropped
+	 */
+	public long getEvicted() {
+		return evicted.sum();
+	}
+}
@@ -0,0 +1,182 @@
+package Util;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The Scrypt class derives keys with scrypt, the memory-hard key derivation function of RFC 7914, built on the JDK's
+ * HmacSHA256. It is meant for password hashing: every derivation fills and reads back 128 * r * N bytes in an order
+ * that depends on the password, so guessing passwords costs memory as well as time, which is what makes them
+ * expensive to guess on GPUs and custom hardware.
+ *
+ * N is the CPU/memory cost, a power of two; r is the block size and p the number of independent mixes. With N = 2^14
+ * and r = 8 a derivation takes 16 MB and tens of milliseconds, a common choice for interactive logins.
+ */
+public final class Scrypt {
+
+	private Scrypt() {
+	}
+
+	/**
+	 * Derives a key of dkLen bytes from the password and salt.
+	 *
+	 * @param password the password bytes, not empty
+	 * @param n the CPU/memory cost, a power of two greater than 1
+	 * @param r the block size
+	 * @param p the parallelization
+	 */
+	public static byte[] scrypt(byte[] password, byte[] salt, int n, int r, int p, int dkLen) {
+		if (n < 2 || (n & (n - 1)) != 0) {
+			throw new IllegalArgumentException("N must be a power of two greater than 1: " + n);
+		}
+		if (r < 1 || p < 1 || (long) r * p >= 1 << 30 || n > Integer.MAX_VALUE / 128 / r) {
+			throw new IllegalArgumentException("Parameters out of range: N=" + n + ", r=" + r + ", p=" + p);
+		}
+		if (password.length == 0) {
+			throw new IllegalArgumentException("The password is empty");
+		}
+		Mac mac = hmac(password);
+		int blockBytes = 128 * r;
+		byte[] b = pbkdf2(mac, salt, p * blockBytes);
+		int[] x = new int[32 * r];
+		int[] v = new int[32 * r * n];
+		int[] scratch = new int[32 * r];
+		for (int i = 0; i < p; i++) {
+			int offset = i * blockBytes;
+			for (int k = 0; k < x.length; k++) {
+				x[k] = readLittleEndian(b, offset + 4 * k);
+			}
+			roMix(x, v, scratch, n, r);
+			for (int k = 0; k < x.length; k++) {
+				writeLittleEndian(b, offset + 4 * k, x[k]);
+			}
+		}
+		return pbkdf2(mac, b, dkLen);
+	}
+
+	private static Mac hmac(byte[] password) {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(password, "HmacSHA256"));
+			return mac;
+		}
+		catch (NoSuchAlgorithmException | InvalidKeyException e) {
+			throw new IllegalStateException("HmacSHA256 is not available", e);
+		}
+	}
+
+	/**
+	 * PBKDF2-HMAC-SHA256 with the single iteration scrypt uses.
+	 */
+	private static byte[] pbkdf2(Mac mac, byte[] salt, int length) {
+		byte[] out = new byte[length];
+		byte[] block = new byte[mac.getMacLength()];
+		for (int i = 1, offset = 0; offset < length; i++, offset += block.length) {
+			mac.update(salt);
+			mac.update(new byte[] { (byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i });
+			try {
+				mac.doFinal(block, 0);
+			}
+			catch (GeneralSecurityException e) {
+				throw new IllegalStateException(e);
+			}
+			System.arraycopy(block, 0, out, offset, Math.min(block.length, length - offset));
+		}
+		return out;
+	}
+
+	/**
+	 * Mixes x, one block of 32 * r words, through the n blocks of v.
+	 */
+	private static void roMix(int[] x, int[] v, int[] scratch, int n, int r) {
+		int words = 32 * r;
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(x, 0, v, i * words, words);
+			blockMix(x, scratch, r);
+		}
+		for (int i = 0; i < n; i++) {
+			int j = x[(2 * r - 1) * 16] & (n - 1);
+			int offset = j * words;
+			for (int k = 0; k < words; k++) {
+				x[k] ^= v[offset + k];
+			}
+			blockMix(x, scratch, r);
+		}
+	}
+
+	/**
+	 * BlockMix with Salsa20/8 over the 2 * r 64 byte blocks of b, in place; y is scratch space of the same size.
+	 * Even output blocks go to the first half and odd ones to the second.
+	 */
+	private static void blockMix(int[] b, int[] y, int r) {
+		int[] x = new int[16];
+		System.arraycopy(b, (2 * r - 1) * 16, x, 0, 16);
+		for (int i = 0; i < 2 * r; i++) {
+			for (int k = 0; k < 16; k++) {
+				x[k] ^= b[i * 16 + k];
+			}
+			salsa20_8(x);
+			System.arraycopy(x, 0, y, ((i & 1) * r + (i >>> 1)) * 16, 16);
+		}
+		System.arraycopy(y, 0, b, 0, 32 * r);
+	}
+
+	private static void salsa20_8(int[] b) {
+		int x0 = b[0], x1 = b[1], x2 = b[2], x3 = b[3], x4 = b[4], x5 = b[5], x6 = b[6], x7 = b[7];
+		int x8 = b[8], x9 = b[9], x10 = b[10], x11 = b[11], x12 = b[12], x13 = b[13], x14 = b[14], x15 = b[15];
+		for (int i = 0; i < 8; i += 2) {
+			// columns
+			x4 ^= Integer.rotateLeft(x0 + x12, 7);
+			x8 ^= Integer.rotateLeft(x4 + x0, 9);
+			x12 ^= Integer.rotateLeft(x8 + x4, 13);
+			x0 ^= Integer.rotateLeft(x12 + x8, 18);
+			x9 ^= Integer.rotateLeft(x5 + x1, 7);
+			x13 ^= Integer.rotateLeft(x9 + x5, 9);
+			x1 ^= Integer.rotateLeft(x13 + x9, 13);
+			x5 ^= Integer.rotateLeft(x1 + x13, 18);
+			x14 ^= Integer.rotateLeft(x10 + x6, 7);
+			x2 ^= Integer.rotateLeft(x14 + x10, 9);
+			x6 ^= Integer.rotateLeft(x2 + x14, 13);
+			x10 ^= Integer.rotateLeft(x6 + x2, 18);
+			x3 ^= Integer.rotateLeft(x15 + x11, 7);
+			x7 ^= Integer.rotateLeft(x3 + x15, 9);
+			x11 ^= Integer.rotateLeft(x7 + x3, 13);
+			x15 ^= Integer.rotateLeft(x11 + x7, 18);
+			// rows
+			x1 ^= Integer.rotateLeft(x0 + x3, 7);
+			x2 ^= Integer.rotateLeft(x1 + x0, 9);
+			x3 ^= Integer.rotateLeft(x2 + x1, 13);
+			x0 ^= Integer.rotateLeft(x3 + x2, 18);
+			x6 ^= Integer.rotateLeft(x5 + x4, 7);
+			x7 ^= Integer.rotateLeft(x6 + x5, 9);
+			x4 ^= Integer.rotateLeft(x7 + x6, 13);
+			x5 ^= Integer.rotateLeft(x4 + x7, 18);
+			x11 ^= Integer.rotateLeft(x10 + x9, 7);
+			x8 ^= Integer.rotateLeft(x11 + x10, 9);
+			x9 ^= Integer.rotateLeft(x8 + x11, 13);
+			x10 ^= Integer.rotateLeft(x9 + x8, 18);
+			x12 ^= Integer.rotateLeft(x15 + x14, 7);
+			x13 ^= Integer.rotateLeft(x12 + x15, 9);
+			x14 ^= Integer.rotateLeft(x13 + x12, 13);
+			x15 ^= Integer.rotateLeft(x14 + x13, 18);
+		}
+		b[0] += x0; b[1] += x1; b[2] += x2; b[3] += x3; b[4] += x4; b[5] += x5; b[6] += x6; b[7] += x7;
+		b[8] += x8; b[9] += x9; b[10] += x10; b[11] += x11; b[12] += x12; b[13] += x13; b[14] += x14; b[15] += x15;
+	}
+
+	private static int readLittleEndian(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 | (bytes[offset + 2] & 0xFF) << 16
+				| (bytes[offset + 3] & 0xFF) << 24;
+	}
+
+	private static void writeLittleEndian(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) value;
+		bytes[offset + 1] = (byte) (value >>> 8);
+		bytes[offset + 2] = (byte) (value >>> 16);
+		bytes[offset + 3] = (byte) (value >>> 24);
+	}
+}
@@ -12,6 +12,8 @@ create table message (
     time_posted_epoch bigint,
     foreign key (posted_by) references  account(account_id)
 );
+-- per-user timelines: WHERE posted_by = ? ORDER BY message_id, and keyset pages within one user's messages
+create index message_posted_by_idx on message (posted_by, message_id);
 
 insert into account (username, password) values ('testuser1', 'password');
 insert into message (posted_by, message_text, time_posted_epoch) values (1,'test message 1',1669947792);
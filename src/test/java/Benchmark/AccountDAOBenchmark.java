@@ -0,0 +1,71 @@
+package Benchmark;
+
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import DAO.JdbcAccountDAO;
+import Model.Account;
+import Service.PasswordHasher;
+
+/**
+ * Measures registration and login against the seeded accounts, with and without the username Bloom filter.
+ *
+ * register inserts a new, never used username on every call; login looks up one of the seeded accounts and checks
+ * its password. The seeded passwords are stored in plaintext, so the check is a plain comparison and the figure is
+ * the cost of the lookup; LoginBenchmark measures logins against scrypt hashes.
+ *
+ * Run with: mvn -Pbench test -Djmh.include=AccountDAOBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkData.DB_URL)
+public class AccountDAOBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean usernameFilter;
+
+    private AccountDAO accountDAO;
+    private PasswordHasher passwordHasher;
+    private Random random;
+    private int registered;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchmarkData.seed(0);
+        accountDAO = new JdbcAccountDAO(usernameFilter);
+        passwordHasher = new PasswordHasher(14, 8, 1, 1, 0);
+        random = new Random(BenchmarkData.SEED);
+    }
+
+    @Benchmark
+    public Account register() {
+        return accountDAO.insertAccount("bench" + (++registered), "password");
+    }
+
+    @Benchmark
+    public Account login() {
+        int account_id = 1 + random.nextInt(BenchmarkData.ACCOUNTS);
+        Account account = accountDAO.getAccountByUsername(BenchmarkData.username(account_id));
+        return account != null && passwordHasher.verify(BenchmarkData.password(account_id), account.getPassword())
+                ? account
+                : null;
+    }
+}
@@ -0,0 +1,112 @@
+package Benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Random;
+
+import Util.ConnectionUtil;
+
+/**
+ * Seeded dataset shared by the DAO and service benchmarks.
+ *
+ * The benchmarks that use it run in a forked JVM with -Ddb.url pointing at a private in-memory database (see DB_URL),
+ * so ConnectionUtil, and every DAO behind it, talks to that database instead of ./h2/db. The schema is the real one
+ * from src/main/resources/SocialMedia.sql, and the rows are generated from a fixed seed, so every run measures the
+ * same data.
+ */
+final class BenchmarkData {
+
+    // Passed to the forked benchmark JVM with @Fork(jvmArgsAppend = ...)
+    static final String DB_URL = "-Ddb.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1";
+
+    static final long SEED = 42;
+    static final int ACCOUNTS = 100;
+    static final long FIRST_EPOCH = 1669947792L;
+
+    private static final int BATCH = 1000;
+
+    private BenchmarkData() {
+    }
+
+    // Username and password of the i-th seeded account, 1-based like account_id
+    static String username(int account_id) {
+        return "user" + account_id;
+    }
+
+    static String password(int account_id) {
+        return "password" + account_id;
+    }
+
+    // Recreates the schema and inserts ACCOUNTS accounts and the given number of messages, spread over the accounts
+    // at random; account i gets account_id i and message j gets message_id j
+    static void seed(int messages) throws SQLException {
+        ConnectionUtil.resetTestDatabase();
+        Random random = new Random(SEED);
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement clear = connection.prepareStatement("DELETE FROM message")) {
+                clear.executeUpdate();
+            }
+            try (PreparedStatement clear = connection.prepareStatement("DELETE FROM account")) {
+                clear.executeUpdate();
+            }
+            try (PreparedStatement restart = connection.prepareStatement(
+                    "ALTER TABLE message ALTER COLUMN message_id RESTART WITH 1")) {
+                restart.executeUpdate();
+            }
+            try (PreparedStatement restart = connection.prepareStatement(
+                    "ALTER TABLE account ALTER COLUMN account_id RESTART WITH 1")) {
+                restart.executeUpdate();
+            }
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO account(username, password) VALUES(?, ?)")) {
+                for (int i = 1; i <= ACCOUNTS; i++) {
+                    insert.setString(1, username(i));
+                    insert.setString(2, password(i));
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO message(posted_by, message_text, time_posted_epoch) VALUES(?, ?, ?)")) {
+                for (int i = 1; i <= messages; i++) {
+                    insert.setInt(1, 1 + random.nextInt(ACCOUNTS));
+                    insert.setString(2, text(random));
+                    insert.setLong(3, FIRST_EPOCH + i);
+                    insert.addBatch();
+                    if (i % BATCH == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    // Message text of 20 to 140 characters
+    static String text(Random random) {
+        int length = 20 + random.nextInt(121);
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(i % 6 == 5 ? ' ' : (char) ('a' + random.nextInt(26)));
+        }
+        return text.toString();
+    }
+
+    // Deletes a directory the benchmark wrote, with everything in it
+    static void delete(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        Files.deleteIfExists(directory.toPath());
+    }
+}
@@ -0,0 +1,140 @@
+package Benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Compares throughput and p99 latency of the API without and with the db.maxInFlight limit, at a concurrency well
+ * above the number of connections, to show what bounding the requests doing database work buys.
+ *
+ * Each mode starts the app on port 8080 with the message and timeline caches off, so every request blocks on JDBC,
+ * then runs a closed loop of `concurrency` clients issuing GET /accounts/1/messages for `seconds` seconds after a
+ * short warm-up. Requests turned away with 503 by the limit are counted as errors.
+ *
+ * This is a standalone program, not a JUnit test, so it never runs as part of mvn test:
+ * java -cp target/test-classes:target/classes:$(deps) Benchmark.InFlightLoadTest [concurrency] [seconds] [maxInFlight]
+ * Other settings, such as -Ddb.pool.enabled=true or -Dserver.maxThreads=400, are passed through to the app as usual.
+ */
+public class InFlightLoadTest {
+
+    private static final String URL = "http://localhost:8080/accounts/1/messages";
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int maxInFlight = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+        System.setProperty("cache.message.maxSize", "0");
+        System.setProperty("cache.timeline.maxAccounts", "0");
+
+        List<String> report = new ArrayList<>();
+        report.add(run("unlimited", 0, concurrency, seconds));
+        report.add(run("limit " + maxInFlight, maxInFlight, concurrency, seconds));
+
+        System.out.println();
+        System.out.println(String.format("%-10s %12s %10s %10s %10s %8s", "mode", "requests/s", "p50 ms", "p99 ms",
+                "max ms", "errors"));
+        report.forEach(System.out::println);
+    }
+
+    private static String run(String mode, int maxInFlight, int concurrency, int seconds) throws Exception {
+        System.setProperty("db.maxInFlight", String.valueOf(maxInFlight));
+        ConnectionUtil.resetTestDatabase();
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(8080);
+        try {
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+            load(client, concurrency, 2, null, null);
+            long[] latencies = new long[(int) Math.min(10_000_000L, (long) concurrency * seconds * 2000)];
+            AtomicLong recorded = new AtomicLong();
+            AtomicLong errors = new AtomicLong();
+            long started = System.nanoTime();
+            load(client, concurrency, seconds, new Recorder(latencies, recorded), errors);
+            double elapsed = (System.nanoTime() - started) / 1e9;
+
+            long[] sorted = Arrays.copyOf(latencies, (int) Math.min(recorded.get(), latencies.length));
+            Arrays.sort(sorted);
+            return String.format("%-10s %12.0f %10.2f %10.2f %10.2f %8d", mode, recorded.get() / elapsed,
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 1.0), errors.get());
+        }
+        finally {
+            app.stop();
+        }
+    }
+
+    // Runs `concurrency` clients in a closed loop for the given number of seconds
+    private static void load(HttpClient client, int concurrency, int seconds, Recorder recorder, AtomicLong errors)
+            throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(URL)).timeout(Duration.ofSeconds(30)).build();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200 && errors != null) {
+                                errors.incrementAndGet();
+                            }
+                            else if (recorder != null) {
+                                recorder.record(System.nanoTime() - start);
+                            }
+                        }
+                        catch (Exception e) {
+                            if (errors != null) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+                finally {
+                    done.countDown();
+                }
+            });
+            worker.setDaemon(true);
+            worker.start();
+        }
+        done.await();
+    }
+
+    // Latency in milliseconds at the given quantile of a sorted array of nanosecond samples
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    // Collects latency samples from many threads into one preallocated array
+    private static class Recorder {
+        private final long[] latencies;
+        private final AtomicLong next;
+
+        Recorder(long[] latencies, AtomicLong next) {
+            this.latencies = latencies;
+            this.next = next;
+        }
+
+        void record(long nanos) {
+            long index = next.getAndIncrement();
+            if (index < latencies.length) {
+                latencies[(int) index] = nanos;
+            }
+        }
+    }
+}
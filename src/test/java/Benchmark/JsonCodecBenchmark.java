@@ -0,0 +1,85 @@
+package Benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Account;
+import Model.Message;
+import Util.JsonCodec;
+
+/**
+ * Compares how the controller used to handle a message body, a new ObjectMapper per request reading from a String,
+ * with the shared JsonCodec reading from the request bytes and writing with the hand-written serializer.
+ *
+ * Also covers the account round trip and a 100-message listing.
+ *
+ * Run with: mvn -Pbench test -Djmh.include=JsonCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    private final String body = "{\"posted_by\":1,\"message_text\":\"hello message\",\"time_posted_epoch\":1669947792}";
+    private final byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+    private final byte[] accountBytes = "{\"username\":\"testuser1\",\"password\":\"password\"}".getBytes(StandardCharsets.UTF_8);
+    private final List<Message> listing = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        for (int i = 1; i <= 100; i++) {
+            listing.add(new Message(i, 1 + random.nextInt(BenchmarkData.ACCOUNTS), BenchmarkData.text(random),
+                    BenchmarkData.FIRST_EPOCH + i));
+        }
+    }
+
+    @Benchmark
+    public String perRequestMapper() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        Message message = mapper.readValue(new String(bodyBytes, StandardCharsets.UTF_8), Message.class);
+        message.setMessage_id(1);
+        return mapper.writeValueAsString(message);
+    }
+
+    @Benchmark
+    public byte[] sharedCodec() throws IOException {
+        Message message = JsonCodec.readMessage(new ByteArrayInputStream(bodyBytes));
+        message.setMessage_id(1);
+        return JsonCodec.writeMessage(message);
+    }
+
+    @Benchmark
+    public byte[] accountRoundTrip() throws IOException {
+        Account account = JsonCodec.readAccount(new ByteArrayInputStream(accountBytes));
+        account.setAccount_id(1);
+        return JsonCodec.writeAccount(account);
+    }
+
+    // A GET /messages response of 100 messages, as ctx.json writes it
+    @Benchmark
+    public byte[] messageListing() throws IOException {
+        return JsonCodec.MAPPER.writeValueAsBytes(listing);
+    }
+}
@@ -0,0 +1,274 @@
+package Benchmark;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import Controller.SocialMediaController;
+import Util.AppConfig;
+import io.javalin.Javalin;
+
+/**
+ * End-to-end load harness: starts the app in-process against a seeded database and drives a weighted mix of the
+ * eight routes at a fixed arrival rate, then reports per-route throughput and latency percentiles.
+ *
+ * This is an open model. Requests are sent asynchronously on a fixed schedule (request i is due at start + i / rate)
+ * whether or not earlier requests have completed, and each latency is measured from when the request was due, not from
+ * when it was actually sent. A server that stalls therefore shows up as queueing in the percentiles instead of quietly
+ * slowing the load down (coordinated omission).
+ *
+ * Latencies go into one HdrHistogram per route. The summary is printed, and each route's full percentile distribution
+ * is written in .hgrm format, in milliseconds, to target/load/<route>.hgrm for plotting or comparing runs.
+ *
+ * The run fails, by throwing from main, when the achieved throughput falls below load.minThroughputRatio of the
+ * target rate, when more than load.maxErrorRate of requests fail, or when a route's p99 exceeds load.maxP99Millis.
+ *
+ * Run with: mvn -Pload test -Dload.rate=500 -Dload.seconds=30
+ * All settings are system properties, listed in readme.md; any of the app's own settings can be passed the same way.
+ */
+public class LoadHarness {
+
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    // The eight routes and their default weight in the mix
+    enum Route {
+        register(2),
+        login(10),
+        createMessage(10),
+        getAllMessages(1),
+        getMessage(40),
+        deleteMessage(2),
+        updateMessage(10),
+        getAccountMessages(25);
+
+        final int defaultWeight;
+
+        Route(int defaultWeight) {
+            this.defaultWeight = defaultWeight;
+        }
+    }
+
+    private final String baseUrl;
+    private final int messages;
+    private final Random random = new Random(BenchmarkData.SEED);
+    private final AtomicLong registered = new AtomicLong();
+    private final Route[] schedule;
+
+    private final Map<Route, Histogram> histograms = new EnumMap<>(Route.class);
+    private final Map<Route, LongAdder> errors = new EnumMap<>(Route.class);
+
+    LoadHarness(String baseUrl, int messages, Map<Route, Integer> weights) {
+        this.baseUrl = baseUrl;
+        this.messages = messages;
+        int total = weights.values().stream().mapToInt(Integer::intValue).sum();
+        this.schedule = new Route[total];
+        int next = 0;
+        for (Map.Entry<Route, Integer> weight : weights.entrySet()) {
+            for (int i = 0; i < weight.getValue(); i++) {
+                schedule[next++] = weight.getKey();
+            }
+        }
+        for (Route route : Route.values()) {
+            histograms.put(route, new ConcurrentHistogram(HIGHEST_MICROS, 3));
+            errors.put(route, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rate = AppConfig.getInt("load.rate", 200);
+        int seconds = AppConfig.getInt("load.seconds", 30);
+        int warmupSeconds = AppConfig.getInt("load.warmupSeconds", 5);
+        int messages = AppConfig.getInt("load.messages", 10000);
+        int port = AppConfig.getInt("load.port", 8080);
+        Map<Route, Integer> weights = parseMix(AppConfig.getString("load.mix", ""));
+
+        System.out.println("Seeding " + BenchmarkData.ACCOUNTS + " accounts and " + messages + " messages");
+        BenchmarkData.seed(messages);
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(port);
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        try {
+            String baseUrl = "http://localhost:" + port;
+            if (warmupSeconds > 0) {
+                System.out.println("Warming up for " + warmupSeconds + "s at " + rate + " requests/s");
+                new LoadHarness(baseUrl, messages, weights).run(client, rate, warmupSeconds);
+            }
+            System.out.println("Measuring for " + seconds + "s at " + rate + " requests/s, mix " + weights);
+            LoadHarness harness = new LoadHarness(baseUrl, messages, weights);
+            double elapsed = harness.run(client, rate, seconds);
+            harness.report(rate, elapsed);
+        }
+        finally {
+            app.stop();
+        }
+    }
+
+    // Parses "route:weight,route:weight"; routes left out get weight 0, an empty mix means the default weights
+    static Map<Route, Integer> parseMix(String mix) {
+        Map<Route, Integer> weights = new EnumMap<>(Route.class);
+        if (mix.isBlank()) {
+            for (Route route : Route.values()) {
+                weights.put(route, route.defaultWeight);
+            }
+            return weights;
+        }
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("load.mix entries must look like route:weight, got " + entry);
+            }
+            weights.put(Route.valueOf(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("load.mix has no positive weights");
+        }
+        return weights;
+    }
+
+    // Sends requests on the fixed schedule for the given time, then waits for the stragglers
+    // Returns the measured time in seconds, from the first due time until the last response
+    double run(HttpClient client, int rate, int seconds) throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long total = (long) rate * seconds;
+        AtomicLong outstanding = new AtomicLong();
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long due = start + i * intervalNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Route route = schedule[random.nextInt(schedule.length)];
+            HttpRequest request = request(route);
+            outstanding.incrementAndGet();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                long micros = (System.nanoTime() - due) / 1000;
+                histograms.get(route).recordValue(Math.min(micros, HIGHEST_MICROS));
+                if (error != null || response.statusCode() >= 500) {
+                    errors.get(route).increment();
+                }
+                outstanding.decrementAndGet();
+            });
+        }
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    // Builds the next request for a route, drawing ids from the seeded dataset
+    private HttpRequest request(Route route) {
+        int account_id = 1 + random.nextInt(BenchmarkData.ACCOUNTS);
+        int message_id = 1 + random.nextInt(messages);
+        switch (route) {
+            case register:
+                return post("/register", "{\"username\":\"load" + registered.incrementAndGet() + "\",\"password\":\"password\"}");
+            case login:
+                return post("/login", "{\"username\":\"" + BenchmarkData.username(account_id) + "\",\"password\":\""
+                        + BenchmarkData.password(account_id) + "\"}");
+            case createMessage:
+                return post("/messages", "{\"posted_by\":" + account_id + ",\"message_text\":\"" + BenchmarkData.text(random)
+                        + "\",\"time_posted_epoch\":" + BenchmarkData.FIRST_EPOCH + "}");
+            case getAllMessages:
+                return get("/messages");
+            case getMessage:
+                return get("/messages/" + message_id);
+            case deleteMessage:
+                return builder("/messages/" + message_id).DELETE().build();
+            case updateMessage:
+                return builder("/messages/" + message_id)
+                        .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"" + BenchmarkData.text(random) + "\"}"))
+                        .build();
+            case getAccountMessages:
+                return get("/accounts/" + account_id + "/messages");
+            default:
+                throw new IllegalStateException(route.name());
+        }
+    }
+
+    private HttpRequest.Builder builder(String path) {
+        return HttpRequest.newBuilder().uri(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30));
+    }
+
+    private HttpRequest get(String path) {
+        return builder(path).GET().build();
+    }
+
+    private HttpRequest post(String path, String body) {
+        return builder(path).header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+
+    // Prints the per-route summary, writes the .hgrm files, and fails the run if a threshold was crossed
+    private void report(int rate, double elapsed) throws FileNotFoundException {
+        File directory = new File("target/load");
+        directory.mkdirs();
+        double maxP99Millis = Double.parseDouble(AppConfig.getString("load.maxP99Millis", "0"));
+        StringBuilder failures = new StringBuilder();
+
+        System.out.println();
+        System.out.println(String.format("%-20s %9s %10s %8s %10s %10s %10s %10s", "route", "requests", "req/s", "errors",
+                "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+        Histogram all = new Histogram(HIGHEST_MICROS, 3);
+        long allErrors = 0;
+        for (Route route : Route.values()) {
+            Histogram histogram = histograms.get(route);
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            all.add(histogram);
+            long routeErrors = errors.get(route).sum();
+            allErrors += routeErrors;
+            System.out.println(line(route.name(), histogram, elapsed, routeErrors));
+            try (PrintStream out = new PrintStream(new File(directory, route.name() + ".hgrm"))) {
+                histogram.outputPercentileDistribution(out, 1000.0);
+            }
+            double p99 = histogram.getValueAtPercentile(99) / 1000.0;
+            if (maxP99Millis > 0 && p99 > maxP99Millis) {
+                failures.append(String.format("%n  %s p99 %.2f ms is over load.maxP99Millis %.2f", route, p99, maxP99Millis));
+            }
+        }
+        System.out.println(line("all", all, elapsed, allErrors));
+        try (PrintStream out = new PrintStream(new File(directory, "all.hgrm"))) {
+            all.outputPercentileDistribution(out, 1000.0);
+        }
+        System.out.println("Histograms written to " + directory.getPath());
+
+        double achieved = all.getTotalCount() / elapsed;
+        double minRatio = Double.parseDouble(AppConfig.getString("load.minThroughputRatio", "0.95"));
+        if (achieved < rate * minRatio) {
+            failures.append(String.format("%n  achieved %.0f requests/s, under %.0f%% of the target %d", achieved,
+                    minRatio * 100, rate));
+        }
+        double maxErrorRate = Double.parseDouble(AppConfig.getString("load.maxErrorRate", "0.01"));
+        if (all.getTotalCount() > 0 && (double) allErrors / all.getTotalCount() > maxErrorRate) {
+            failures.append(String.format("%n  %d of %d requests failed, over load.maxErrorRate %.4f", allErrors,
+                    all.getTotalCount(), maxErrorRate));
+        }
+        if (failures.length() > 0) {
+            throw new IllegalStateException("Load test failed:" + failures);
+        }
+    }
+
+    private static String line(String name, Histogram histogram, double elapsed, long errors) {
+        return String.format("%-20s %9d %10.1f %8d %10.2f %10.2f %10.2f %10.2f", name, histogram.getTotalCount(),
+                histogram.getTotalCount() / elapsed, errors, histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+    }
+}
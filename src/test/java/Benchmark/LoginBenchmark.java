@@ -0,0 +1,77 @@
+package Benchmark;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.Storage;
+import Model.Account;
+import Service.AccountService;
+import Service.PasswordHasher;
+
+/**
+ * Measures login throughput with scrypt password hashes at several costs, four threads logging in to the seeded
+ * accounts through the service, with the verification on a hashing executor of four threads. Each step of log2N
+ * doubles the time and memory of a hash: 2^10 takes 1 MB, 2^14, the default, 16 MB. AccountDAOBenchmark's login is
+ * the plaintext comparison this replaces.
+ *
+ * Run with: mvn -Pbench test -Djmh.include=LoginBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = BenchmarkData.DB_URL)
+public class LoginBenchmark {
+
+    @Param({ "10", "12", "14" })
+    public int log2N;
+
+    private PasswordHasher passwordHasher;
+    private AccountService accountService;
+
+    // Logs in to every seeded account once, which replaces its plaintext password with a hash at this cost
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchmarkData.seed(0);
+        passwordHasher = new PasswordHasher(log2N, 8, 1, 4, 64);
+        accountService = new AccountService(Storage.jdbc().getAccountDAO(), passwordHasher);
+        for (int account_id = 1; account_id <= BenchmarkData.ACCOUNTS; account_id++) {
+            if (accountService.loginAccount(account(account_id)) == null) {
+                throw new IllegalStateException("Could not log in to seeded account " + account_id);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        passwordHasher.getExecutor().shutdown();
+    }
+
+    @Benchmark
+    public Account login() {
+        int account_id = 1 + ThreadLocalRandom.current().nextInt(BenchmarkData.ACCOUNTS);
+        return accountService.loginAccountAsync(account(account_id)).join();
+    }
+
+    private static Account account(int account_id) {
+        return new Account(BenchmarkData.username(account_id), BenchmarkData.password(account_id));
+    }
+}
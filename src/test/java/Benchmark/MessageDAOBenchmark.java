@@ -0,0 +1,114 @@
+package Benchmark;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.InMemoryStore;
+import DAO.MessageDAO;
+import DAO.Storage;
+import Model.Message;
+
+/**
+ * Measures every MessageDAO call the controller makes, against the real schema seeded with messageCount messages
+ * spread over BenchmarkData.ACCOUNTS accounts. The listings are the calls whose cost grows with the table.
+ * Each call is measured on both storage engines: jdbc, and memory, which is filled from the same seeded database.
+ *
+ * Run with: mvn -Pbench test -Djmh.include=MessageDAOBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkData.DB_URL)
+public class MessageDAOBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int messageCount;
+
+    @Param({ "jdbc", "memory" })
+    public String engine;
+
+    private MessageDAO messageDAO;
+    private Random random;
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchmarkData.seed(messageCount);
+        messageDAO = engine.equals("memory") ? Storage.inMemory(InMemoryStore.loadFromDatabase()).getMessageDAO()
+                : Storage.jdbc().getMessageDAO();
+        random = new Random(BenchmarkData.SEED);
+        text = BenchmarkData.text(random);
+    }
+
+    // A fresh message for each deleteMessage call, created outside the measured time, so the seeded rows are never
+    // deleted
+    @State(Scope.Thread)
+    public static class Victim {
+        int message_id;
+
+        @Setup(Level.Invocation)
+        public void create(MessageDAOBenchmark benchmark) {
+            message_id = benchmark.messageDAO.createMessage(1, "to be deleted", BenchmarkData.FIRST_EPOCH).getMessage_id();
+        }
+    }
+
+    private int anyMessage() {
+        return 1 + random.nextInt(messageCount);
+    }
+
+    private int anyAccount() {
+        return 1 + random.nextInt(BenchmarkData.ACCOUNTS);
+    }
+
+    @Benchmark
+    public Message createMessage() {
+        return messageDAO.createMessage(anyAccount(), text, BenchmarkData.FIRST_EPOCH);
+    }
+
+    @Benchmark
+    public Message getMessage() {
+        return messageDAO.getMessageByMessageID(anyMessage());
+    }
+
+    @Benchmark
+    public Message updateMessage() {
+        return messageDAO.updateMessageByMessageID(text, anyMessage());
+    }
+
+    @Benchmark
+    public Message deleteMessage(Victim victim) {
+        return messageDAO.deleteMessageByMessageID(victim.message_id);
+    }
+
+    @Benchmark
+    public List<Message> getAllMessages() {
+        return messageDAO.getAllMessages();
+    }
+
+    @Benchmark
+    public List<Message> getMessagesByUser() {
+        return messageDAO.getAllMessageByUserID(anyAccount());
+    }
+
+    @Benchmark
+    public List<Message> getMessagesPage() {
+        return messageDAO.getMessagesPage(null, anyMessage(), Integer.MAX_VALUE, 50);
+    }
+}
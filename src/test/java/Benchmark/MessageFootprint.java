@@ -0,0 +1,100 @@
+package Benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import DAO.HeapMessageTable;
+import DAO.MappedMessageTable;
+import DAO.MessageTable;
+import Model.Message;
+
+/**
+ * Reports how much memory the in-memory engine's message table takes per million messages, on the heap
+ * (HeapMessageTable) and in memory-mapped segments (MappedMessageTable), filled with the same generated messages.
+ *
+ * The heap figure is the growth of the used heap after a full collection. For the mapped table it is reported next to
+ * the bytes of its records, which live outside the heap, and the growth of the process's resident set, read from
+ * /proc/self/status where there is one. The mapped table is filled first, so the heap table's pages do not count
+ * towards its resident size.
+ *
+ * Run with: mvn -Pfootprint test -Dfootprint.messages=1000000
+ */
+public class MessageFootprint {
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        File directory = Files.createTempDirectory("footprint").toFile();
+        try {
+            MappedMessageTable mapped = new MappedMessageTable(directory, 64 * 1024 * 1024);
+            Measurement offHeap = fill(mapped, count);
+            Measurement onHeap = fill(new HeapMessageTable(), count);
+
+            double perMillion = 1_000_000.0 / count / (1024 * 1024);
+            System.out.printf("%,d messages, %,d text bytes%n", count, offHeap.textBytes);
+            System.out.printf("%-8s %14s %14s %14s%n", "table", "heap MB/1M", "off-heap MB/1M", "resident MB/1M");
+            System.out.printf("%-8s %14.1f %14s %14s%n", "heap", onHeap.heapBytes * perMillion, "-",
+                    onHeap.residentBytes < 0 ? "n/a" : String.format("%.1f", onHeap.residentBytes * perMillion));
+            System.out.printf("%-8s %14.1f %14.1f %14s%n", "mapped", offHeap.heapBytes * perMillion,
+                    mapped.getRecordBytes() * perMillion,
+                    offHeap.residentBytes < 0 ? "n/a" : String.format("%.1f", offHeap.residentBytes * perMillion));
+            System.out.printf("mapped table heap use is %.1f%% of the heap table's%n",
+                    100.0 * offHeap.heapBytes / onHeap.heapBytes);
+        }
+        finally {
+            BenchmarkData.delete(directory);
+        }
+    }
+
+    private static final class Measurement {
+        long heapBytes;
+        long residentBytes;
+        long textBytes;
+        // keeps the table reachable until the measurement is taken
+        MessageTable table;
+    }
+
+    private static Measurement fill(MessageTable table, int count) {
+        Random random = new Random(BenchmarkData.SEED);
+        Measurement measurement = new Measurement();
+        long heapBefore = usedHeap();
+        long residentBefore = residentBytes();
+        for (int message_id = 1; message_id <= count; message_id++) {
+            String text = BenchmarkData.text(random);
+            measurement.textBytes += text.length();
+            table.put(new Message(message_id, 1 + random.nextInt(BenchmarkData.ACCOUNTS), text,
+                    BenchmarkData.FIRST_EPOCH + message_id));
+        }
+        measurement.table = table;
+        measurement.heapBytes = usedHeap() - heapBefore;
+        long residentAfter = residentBytes();
+        measurement.residentBytes = residentBefore < 0 || residentAfter < 0 ? -1 : residentAfter - residentBefore;
+        return measurement;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    // VmRSS of this process in bytes, or -1 where /proc is not available
+    private static long residentBytes() {
+        try {
+            List<String> status = Files.readAllLines(new File("/proc/self/status").toPath());
+            for (String line : status) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        }
+        catch (IOException | NumberFormatException e) {
+            // not Linux
+        }
+        return -1;
+    }
+}
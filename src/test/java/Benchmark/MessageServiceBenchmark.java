@@ -0,0 +1,86 @@
+package Benchmark;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Model.Message;
+import Service.MessageService;
+
+/**
+ * Measures the MessageService calls behind the message routes, with its message and timeline caches at their
+ * defaults, against the seeded dataset. Compared with MessageDAOBenchmark this shows what the caches save on reads
+ * and what keeping them current costs on writes.
+ *
+ * Run with: mvn -Pbench test -Djmh.include=MessageServiceBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkData.DB_URL)
+public class MessageServiceBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int messageCount;
+
+    private MessageService messageService;
+    private Random random;
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchmarkData.seed(messageCount);
+        messageService = new MessageService();
+        random = new Random(BenchmarkData.SEED);
+        text = BenchmarkData.text(random);
+    }
+
+    private int anyMessage() {
+        return 1 + random.nextInt(messageCount);
+    }
+
+    private int anyAccount() {
+        return 1 + random.nextInt(BenchmarkData.ACCOUNTS);
+    }
+
+    @Benchmark
+    public Message addMessage() {
+        return messageService.addMessage(new Message(anyAccount(), text, BenchmarkData.FIRST_EPOCH));
+    }
+
+    @Benchmark
+    public Message getMessage() {
+        return messageService.getMessage(anyMessage());
+    }
+
+    @Benchmark
+    public Message modifyMessage() {
+        return messageService.modifyMessage(text, anyMessage());
+    }
+
+    @Benchmark
+    public List<Message> getMessagesByUser() {
+        return messageService.getMessages(anyAccount());
+    }
+
+    @Benchmark
+    public List<Message> getMessagesPageByUser() {
+        return messageService.getMessages(anyAccount(), 0, Integer.MAX_VALUE, 50);
+    }
+}
@@ -0,0 +1,84 @@
+package Benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import DAO.PersistentStore;
+import DAO.Storage;
+import DAO.WriteAheadLog;
+
+/**
+ * Measures how long the persistent storage engine takes to start: open the store directory, rebuild the store and
+ * close it again. The directory holds messageCount messages, with a tenth of them updated, either all in the write-ahead
+ * log (from=log) or all in a snapshot (from=snapshot), which is what recovery reads right after a snapshot.
+ *
+ * Run with: mvn -Pbench test -Djmh.include=PersistentStoreRecoveryBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkData.DB_URL)
+public class PersistentStoreRecoveryBenchmark {
+
+    @Param({ "10000", "100000" })
+    public int messageCount;
+
+    @Param({ "log", "snapshot" })
+    public String from;
+
+    private File directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        BenchmarkData.seed(0);
+        directory = Files.createTempDirectory("recovery-benchmark").toFile();
+        Random random = new Random(BenchmarkData.SEED);
+        try (PersistentStore persistentStore = PersistentStore.open(directory, WriteAheadLog.SyncMode.NONE, 10, 0, 0)) {
+            MessageDAO messageDAO = Storage.inMemory(persistentStore.getStore()).getMessageDAO();
+            for (int i = 0; i < messageCount; i++) {
+                messageDAO.createMessage(1 + random.nextInt(BenchmarkData.ACCOUNTS), BenchmarkData.text(random),
+                        BenchmarkData.FIRST_EPOCH + i);
+            }
+            for (int i = 0; i < messageCount / 10; i++) {
+                messageDAO.updateMessageByMessageID(BenchmarkData.text(random), 1 + random.nextInt(messageCount));
+            }
+            if (from.equals("snapshot")) {
+                persistentStore.snapshot();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkData.delete(directory);
+    }
+
+    // Every open starts a new, empty log segment, which adds nothing measurable to the next recovery
+    @Benchmark
+    public PersistentStore recover() throws IOException {
+        PersistentStore persistentStore = PersistentStore.open(directory, WriteAheadLog.SyncMode.NONE, 10, 0, 0);
+        persistentStore.close();
+        return persistentStore;
+    }
+}
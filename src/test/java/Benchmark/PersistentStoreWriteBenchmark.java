@@ -0,0 +1,92 @@
+package Benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.InMemoryStore;
+import DAO.MessageDAO;
+import DAO.PersistentStore;
+import DAO.Storage;
+import DAO.WriteAheadLog;
+import Model.Message;
+
+/**
+ * Measures write throughput of the persistent storage engine, four threads creating and updating messages, for each
+ * write-ahead log sync mode. sync=off is the memory engine without a log, the ceiling the log is paid for against.
+ * always shows how far group commit spreads each fsync over the writers waiting for it; it depends on the disk
+ * under java.io.tmpdir, where the store is written.
+ *
+ * Run with: mvn -Pbench test -Djmh.include=PersistentStoreWriteBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = BenchmarkData.DB_URL)
+public class PersistentStoreWriteBenchmark {
+
+    @Param({ "off", "none", "interval", "always" })
+    public String sync;
+
+    private File directory;
+    private PersistentStore persistentStore;
+    private MessageDAO messageDAO;
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        BenchmarkData.seed(1000);
+        if (sync.equals("off")) {
+            messageDAO = Storage.inMemory(InMemoryStore.loadFromDatabase()).getMessageDAO();
+        }
+        else {
+            directory = Files.createTempDirectory("wal-benchmark").toFile();
+            persistentStore = PersistentStore.open(directory, WriteAheadLog.SyncMode.valueOf(sync.toUpperCase(Locale.ROOT)), 10,
+                    0, 0);
+            messageDAO = Storage.inMemory(persistentStore.getStore()).getMessageDAO();
+        }
+        text = BenchmarkData.text(new Random(BenchmarkData.SEED));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (persistentStore != null) {
+            persistentStore.close();
+            BenchmarkData.delete(directory);
+        }
+    }
+
+    @Benchmark
+    public Message createMessage() {
+        return messageDAO.createMessage(1 + ThreadLocalRandom.current().nextInt(BenchmarkData.ACCOUNTS), text,
+                BenchmarkData.FIRST_EPOCH);
+    }
+
+    @Benchmark
+    public Message updateMessage() {
+        return messageDAO.updateMessageByMessageID(text, 1 + ThreadLocalRandom.current().nextInt(1000));
+    }
+}
@@ -0,0 +1,99 @@
+package Benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Util.ConnectionPool;
+
+/**
+ * Measures the per-call cost of the getMessageByMessageID query as the DAO issues it: borrow a connection, prepare
+ * the statement, bind, execute, read the row, close everything.
+ *
+ * statementCacheSize=0 prepares (parses and plans) the SQL on every call, which is what the DAO did before the
+ * statement cache; statementCacheSize=32 reuses the statement cached on the pooled connection.
+ *
+ * Run with: mvn -Pbench test -Djmh.include=StatementCacheBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatementCacheBenchmark {
+
+    private static final String SQL = "SELECT * FROM message WHERE message_id = ?";
+    private static final int ROWS = 10_000;
+
+    @Param({ "0", "32" })
+    public int statementCacheSize;
+
+    private ConnectionPool pool;
+    private Connection keepAlive;
+    private int nextId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:statementcache;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+
+        keepAlive = dataSource.getConnection();
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS message");
+            statement.execute("CREATE TABLE message (message_id INT PRIMARY KEY AUTO_INCREMENT, posted_by INT, "
+                    + "message_text VARCHAR(255), time_posted_epoch BIGINT)");
+        }
+        try (PreparedStatement insert = keepAlive.prepareStatement(
+                "INSERT INTO message(posted_by, message_text, time_posted_epoch) VALUES(?, ?, ?)")) {
+            for (int i = 0; i < ROWS; i++) {
+                insert.setInt(1, i % 100);
+                insert.setString(2, "message " + i);
+                insert.setLong(3, 1669947792L + i);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+
+        pool = new ConnectionPool(dataSource, 1, 1, 1000, 1, 5000, statementCacheSize);
+        pool.prefill();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        pool.close();
+        keepAlive.close();
+    }
+
+    @Benchmark
+    public String getMessageByMessageID() throws SQLException {
+        nextId = nextId % ROWS + 1;
+        try (Connection connection = pool.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(SQL)) {
+            preparedStatement.setInt(1, nextId);
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                return rs.next() ? rs.getString("message_text") : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.BloomFilter;
+
+public class BloomFilterTest {
+
+    /**
+     * Every string that was added must be reported as possibly present.
+     */
+    @Test
+    public void noFalseNegatives() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("user" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            Assert.assertTrue(filter.mightContain("user" + i));
+        }
+        Assert.assertEquals(10_000, filter.getInsertions());
+    }
+
+    /**
+     * At its designed capacity, the observed false positive rate should stay close to the requested rate.
+     */
+    @Test
+    public void falsePositiveRateIsNearTarget() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("user" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        double observed = falsePositives / 100_000.0;
+        Assert.assertTrue("observed false positive rate " + observed, observed < 0.02);
+        Assert.assertTrue(filter.expectedFalsePositiveRate() < 0.02);
+        Assert.assertTrue(filter.getMemoryBytes() < 16 * 1024);
+    }
+}
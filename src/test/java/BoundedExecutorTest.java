@@ -0,0 +1,76 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.BoundedExecutor;
+
+public class BoundedExecutorTest {
+    BoundedExecutor executor;
+    CountDownLatch release;
+
+    /**
+     * Before every test, create an executor with one thread and room for one queued task.
+     */
+    @Before
+    public void setUp() {
+        executor = new BoundedExecutor("test", 1, 1);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    private String block() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "done";
+    }
+
+    /**
+     * Work should run on a worker thread and complete the returned future with its result.
+     */
+    @Test
+    public void completesWithResult() throws Exception {
+        CompletableFuture<String> result = executor.submit(() -> Thread.currentThread().getName());
+        Assert.assertEquals("test-1", result.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Once the thread is busy and the queue is full, further work should be rejected straight away, not queued.
+     */
+    @Test
+    public void rejectsWhenSaturated() throws Exception {
+        CompletableFuture<String> running = executor.submit(this::block);
+        CompletableFuture<String> queued = executor.submit(this::block);
+        CompletableFuture<String> rejected = executor.submit(this::block);
+
+        Assert.assertTrue(rejected.isCompletedExceptionally());
+        try {
+            rejected.get();
+            Assert.fail("expected a rejection");
+        }
+        catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        Assert.assertEquals(1, executor.getRejectedCount());
+        Assert.assertEquals(1, executor.getQueueDepth());
+
+        release.countDown();
+        Assert.assertEquals("done", running.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("done", queued.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalListingTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path, String header, String value) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (header != null) {
+            request.header(header, value);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void post(String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).header("Content-Type", "application/json").build();
+        Assert.assertEquals(200, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with the ETag of the previous response
+     *
+     * Expected Response:
+     *  Status Code: 304 with an empty body while nothing has changed, and 200 with a new ETag after a message is
+     *  created
+     */
+    @Test
+    public void unchangedListingIsNotModified() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages", null, null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> repeat = get("/messages", "If-None-Match", etag);
+        Assert.assertEquals(304, repeat.statusCode());
+        Assert.assertEquals("", repeat.body());
+
+        post("/messages", "{\"posted_by\":1,\"message_text\":\"new message\",\"time_posted_epoch\":1669947793}");
+
+        HttpResponse<String> changed = get("/messages", "If-None-Match", etag);
+        Assert.assertEquals(200, changed.statusCode());
+        Assert.assertNotEquals(etag, changed.headers().firstValue("ETag").orElseThrow());
+        List<Message> messages = objectMapper.readValue(changed.body(), new TypeReference<List<Message>>() {});
+        Assert.assertEquals(2, messages.size());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages with If-Modified-Since, and with the ETag
+     * of the account's listing after another account posts
+     *
+     * Expected Response:
+     *  Status Code: 304 both times, since account 1's messages did not change
+     */
+    @Test
+    public void accountListingIgnoresOtherAccounts() throws IOException, InterruptedException {
+        post("/register", "{\"username\":\"testuser2\",\"password\":\"password\"}");
+        Thread.sleep(1100);
+
+        HttpResponse<String> first = get("/accounts/1/messages", null, null);
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+        String lastModified = first.headers().firstValue("Last-Modified").orElseThrow();
+        Assert.assertEquals(304, get("/accounts/1/messages", "If-Modified-Since", lastModified).statusCode());
+
+        post("/messages", "{\"posted_by\":2,\"message_text\":\"from account 2\",\"time_posted_epoch\":1669947793}");
+        Assert.assertEquals(304, get("/accounts/1/messages", "If-None-Match", etag).statusCode());
+        Assert.assertEquals(200, get("/accounts/2/messages", "If-None-Match", etag).statusCode());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages that accepts gzip, once the listing is large
+     *
+     * Expected Response:
+     *  Status Code: 200, gzip encoded, with the same messages as the uncompressed listing
+     */
+    @Test
+    public void largeListingIsCompressed() throws IOException, InterruptedException {
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            batch.append(i == 0 ? "" : ",").append("{\"posted_by\":1,\"message_text\":\"message number ").append(i)
+                    .append("\",\"time_posted_epoch\":1669947793}");
+        }
+        post("/messages/batch", batch.append(']').toString());
+
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages"))
+                .header("Accept-Encoding", "gzip").build();
+        HttpResponse<InputStream> response = webClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(""));
+        List<Message> messages;
+        try (InputStream body = new GZIPInputStream(response.body())) {
+            messages = objectMapper.readValue(body, new TypeReference<List<Message>>() {});
+        }
+        Assert.assertEquals(101, messages.size());
+
+        HttpResponse<String> plain = get("/messages", null, null);
+        Assert.assertFalse(plain.headers().firstValue("Content-Encoding").isPresent());
+        Assert.assertEquals(messages, objectMapper.readValue(plain.body(), new TypeReference<List<Message>>() {}));
+    }
+}
@@ -0,0 +1,168 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+
+public class ConnectionPoolTest {
+    JdbcDataSource dataSource;
+    ConnectionPool pool;
+
+    /**
+     * Before every test, create a small pool against a private in-memory database.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        pool = new ConnectionPool(dataSource, 1, 2, 200, 1, 0, 2);
+        pool.prefill();
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    /**
+     * Closing a pooled connection should return the same physical connection to the pool instead of closing it.
+     */
+    @Test
+    public void closedConnectionsAreReused() throws SQLException {
+        Assert.assertEquals(1, pool.getIdleCount());
+
+        Connection first = pool.getConnection();
+        Assert.assertEquals(1, pool.getActiveCount());
+        Assert.assertEquals(0, pool.getIdleCount());
+        first.close();
+        Assert.assertTrue(first.isClosed());
+
+        Connection second = pool.getConnection();
+        Assert.assertEquals(1, pool.getTotalCount());
+        second.close();
+        Assert.assertEquals(0, pool.getActiveCount());
+        Assert.assertEquals(1, pool.getIdleCount());
+    }
+
+    /**
+     * A handle must not be usable once it has been returned, and closing it twice must not return it twice.
+     */
+    @Test
+    public void closedHandleCannotBeUsed() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.close();
+        connection.close();
+        Assert.assertEquals(1, pool.getIdleCount());
+
+        try {
+            connection.prepareStatement("SELECT 1");
+            Assert.fail("expected an SQLException");
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+    /**
+     * An exhausted pool should make callers wait, report them as waiting, and time out with an SQLException.
+     */
+    @Test
+    public void exhaustedPoolTimesOut() throws Exception {
+        Connection a = pool.getConnection();
+        Connection b = pool.getConnection();
+        Assert.assertEquals(2, pool.getActiveCount());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch started = new CountDownLatch(1);
+        Future<?> waiter = executor.submit(() -> {
+            started.countDown();
+            try {
+                pool.getConnection();
+                Assert.fail("expected a timeout");
+            } catch (SQLException e) {
+                // expected
+            }
+            return null;
+        });
+        started.await();
+        Thread.sleep(50);
+        Assert.assertEquals(1, pool.getWaitingCount());
+
+        waiter.get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(0, pool.getWaitingCount());
+        executor.shutdown();
+
+        a.close();
+        b.close();
+        Assert.assertEquals(2, pool.getIdleCount());
+    }
+
+    /**
+     * Uncommitted work must be rolled back before the connection is handed to the next borrower.
+     */
+    @Test
+    public void returnedConnectionIsReset() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.setAutoCommit(false);
+        connection.close();
+
+        Connection next = pool.getConnection();
+        Assert.assertTrue(next.getAutoCommit());
+        next.close();
+    }
+
+    /**
+     * Preparing the same SQL again on a pooled connection should be served from the statement cache, with the
+     * parameters of the previous use cleared.
+     */
+    @Test
+    public void preparedStatementsAreCached() throws SQLException {
+        String sql = "SELECT CAST(? AS INT)";
+        for (int i = 0; i < 3; i++) {
+            try (Connection connection = pool.getConnection();
+                    PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                preparedStatement.setInt(1, i);
+                try (ResultSet rs = preparedStatement.executeQuery()) {
+                    Assert.assertTrue(rs.next());
+                    Assert.assertEquals(i, rs.getInt(1));
+                }
+            }
+        }
+        Assert.assertEquals(1, pool.getStatementCacheMisses());
+        Assert.assertEquals(2, pool.getStatementCacheHits());
+    }
+
+    /**
+     * Statements pushed out of the cache are closed, and a statement left open by its borrower is reclaimed when
+     * the connection is returned.
+     */
+    @Test
+    public void statementCacheEvictsAndReclaims() throws SQLException {
+        PreparedStatement leaked;
+        try (Connection connection = pool.getConnection()) {
+            leaked = connection.prepareStatement("SELECT 1");
+            connection.prepareStatement("SELECT 2").close();
+            connection.prepareStatement("SELECT 3").close();
+            Assert.assertFalse(leaked.isClosed());
+        }
+        Assert.assertTrue(leaked.isClosed());
+        try (Connection connection = pool.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement("SELECT 3")) {
+            Assert.assertEquals(1, pool.getStatementCacheHits());
+            Assert.assertFalse(preparedStatement.isClosed());
+        }
+    }
+}
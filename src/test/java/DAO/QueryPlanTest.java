@@ -0,0 +1,143 @@
+package DAO;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.h2.tools.RunScript;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs EXPLAIN on every SQL statement the DAOs issue, against the real schema in src/main/resources/SocialMedia.sql,
+ * and fails if a statement that should be answered from an index would scan a whole table instead.
+ *
+ * The statements are discovered from the SQL_ constants of each DAO, so a new query is covered as soon as it is added.
+ * Statements that read the whole table by design are listed in FULL_SCANS_ALLOWED.
+ */
+public class QueryPlanTest {
+
+    private static final Class<?>[] DAOS = { JdbcMessageDAO.class, JdbcAccountDAO.class, InMemoryStore.class };
+
+    // Queries whose job is to read every row, where a table scan is the correct plan
+    private static final Set<String> FULL_SCANS_ALLOWED = Set.of(
+            "JdbcMessageDAO.SQL_SELECT_ALL_ORDERED",
+            "JdbcAccountDAO.SQL_SELECT_ALL_USERNAMES",
+            "InMemoryStore.SQL_LOAD_ACCOUNTS",
+            "InMemoryStore.SQL_LOAD_MESSAGES");
+
+    private static final Pattern DELTA_TABLE = Pattern.compile(
+            "SELECT .* FROM (?:OLD|NEW|FINAL) TABLE \\((.*)\\)", Pattern.CASE_INSENSITIVE);
+
+    Connection connection;
+
+    /**
+     * Before every test, build the schema in a private in-memory database.
+     */
+    @Before
+    public void setUp() throws SQLException, IOException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:queryplan", "sa", "sa");
+        try (FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql")) {
+            RunScript.execute(connection, sqlReader);
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    /**
+     * Every DAO statement should be explainable, and none outside FULL_SCANS_ALLOWED should plan a table scan.
+     */
+    @Test
+    public void hotQueriesUseIndexes() throws Exception {
+        Map<String, String> statements = daoStatements();
+        Assert.assertFalse("no DAO statements found", statements.isEmpty());
+
+        List<String> failures = new ArrayList<>();
+        for (Map.Entry<String, String> statement : statements.entrySet()) {
+            String plan = explain(innerStatement(statement.getValue()));
+            if (plan.contains(".tableScan") && !FULL_SCANS_ALLOWED.contains(statement.getKey())) {
+                failures.add(statement.getKey() + " scans a table:\n    " + plan.replace('\n', ' '));
+            }
+        }
+        Assert.assertTrue(String.join("\n", failures), failures.isEmpty());
+    }
+
+    /**
+     * The secondary indexes this harness relies on should exist in the schema.
+     */
+    @Test
+    public void secondaryIndexesExist() throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getIndexInfo(null, "PUBLIC", "MESSAGE", false, false)) {
+            List<String> indexes = new ArrayList<>();
+            while (rs.next()) {
+                indexes.add(rs.getString("INDEX_NAME"));
+            }
+            Assert.assertTrue(indexes.toString(), indexes.contains("MESSAGE_POSTED_BY_IDX"));
+        }
+    }
+
+    // Collects the SQL_ constants of every DAO, keyed by Class.FIELD
+    private static Map<String, String> daoStatements() throws IllegalAccessException {
+        Map<String, String> statements = new LinkedHashMap<>();
+        for (Class<?> dao : DAOS) {
+            for (Field field : dao.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) && field.getType() == String.class && field.getName().startsWith("SQL_")) {
+                    field.setAccessible(true);
+                    statements.put(dao.getSimpleName() + "." + field.getName(), (String) field.get(null));
+                }
+            }
+        }
+        return statements;
+    }
+
+    // For a data change delta table, SELECT * FROM OLD|NEW|FINAL TABLE (DML), returns the DML, since the plan of the
+    // outer SELECT only describes the read of the delta rows; returns any other statement unchanged
+    private static String innerStatement(String sql) {
+        Matcher matcher = DELTA_TABLE.matcher(sql);
+        return matcher.matches() ? matcher.group(1) : sql;
+    }
+
+    // Returns H2's plan for the statement, binding a dummy value of the right type to every parameter
+    private String explain(String sql) throws SQLException {
+        try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql)) {
+            ParameterMetaData parameters = explain.getParameterMetaData();
+            for (int i = 1; i <= parameters.getParameterCount(); i++) {
+                int type = parameters.getParameterType(i);
+                if (type == Types.VARCHAR || type == Types.CHAR) {
+                    explain.setString(i, "x");
+                }
+                else if (type == Types.ARRAY) {
+                    explain.setObject(i, new Integer[] { 1, 2 });
+                }
+                else {
+                    explain.setInt(i, 1);
+                }
+            }
+            try (ResultSet rs = explain.executeQuery()) {
+                Assert.assertTrue(rs.next());
+                return rs.getString(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.GroupCommitWriter;
+import DAO.JdbcMessageDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+
+public class GroupCommitWriterTest {
+    MessageDAO messageDAO;
+    GroupCommitWriter writer;
+
+    /**
+     * Before every test, reset the database and start a writer with a window long enough to catch concurrent inserts.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new JdbcMessageDAO();
+        writer = new GroupCommitWriter(messageDAO, 50, 64, 1024);
+    }
+
+    @After
+    public void tearDown() {
+        writer.close();
+    }
+
+    /**
+     * Concurrent inserts should share transactions, and every caller should get back its own generated message_id.
+     */
+    @Test
+    public void concurrentInsertsShareTransactions() throws Exception {
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            String text = "grouped " + i;
+            futures.add(executor.submit(() -> {
+                start.await();
+                return writer.createMessage(new Message(1, text, 1669947800));
+            }));
+        }
+        start.countDown();
+
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < threads; i++) {
+            Message created = futures.get(i).get();
+            Assert.assertNotNull(created);
+            Assert.assertEquals("grouped " + i, created.getMessage_text());
+            ids.add(created.getMessage_id());
+            Assert.assertEquals(created, messageDAO.getMessageByMessageID(created.getMessage_id()));
+        }
+        executor.shutdown();
+
+        Assert.assertEquals(threads, ids.size());
+        Assert.assertEquals(threads, writer.getMessageCount());
+        Assert.assertTrue(writer.toString(), writer.getBatchCount() < threads);
+        Assert.assertTrue(writer.toString(), writer.getMaxBatchSize() > 1);
+    }
+
+    /**
+     * A message that createMessage would reject should be rejected without failing the rest of its batch.
+     */
+    @Test
+    public void invalidInsertsDoNotFailTheBatch() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<Message> unknownUser = executor.submit(() -> writer.createMessage(new Message(99, "nobody", 1669947800)));
+        Future<Message> valid = executor.submit(() -> writer.createMessage(new Message(1, "somebody", 1669947800)));
+
+        Assert.assertNull(unknownUser.get());
+        Assert.assertNotNull(valid.get());
+        Assert.assertNull(writer.createMessage(new Message(1, "", 1669947800)));
+        Assert.assertEquals(0, writer.getFallbackCount());
+        executor.shutdown();
+    }
+
+    /**
+     * Once the queue is full, an insert should be written directly instead of waiting behind a stalled writer.
+     */
+    @Test
+    public void fullQueueWritesDirectly() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MessageDAO stalled = new JdbcMessageDAO() {
+            @Override
+            public Set<Integer> getExistingAccountIds(Set<Integer> account_ids) {
+                writing.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getExistingAccountIds(account_ids);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (GroupCommitWriter bounded = new GroupCommitWriter(stalled, 0, 1, 1)) {
+            Future<Message> inBatch = executor.submit(() -> bounded.createMessage(new Message(1, "in batch", 1669947800)));
+            Assert.assertTrue(writing.await(5, TimeUnit.SECONDS));
+            Future<Message> queued = executor.submit(() -> bounded.createMessage(new Message(1, "queued", 1669947800)));
+            while (bounded.getQueueDepth() < 1) {
+                Thread.sleep(1);
+            }
+
+            Message direct = bounded.createMessage(new Message(1, "direct", 1669947800));
+            Assert.assertNotNull(direct);
+            Assert.assertEquals(1, bounded.getOverflowCount());
+            Assert.assertFalse(inBatch.isDone());
+
+            release.countDown();
+            Assert.assertNotNull(inBatch.get());
+            Assert.assertNotNull(queued.get());
+            Assert.assertEquals(2, bounded.getMessageCount());
+        }
+        finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+}
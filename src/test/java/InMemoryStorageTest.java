@@ -0,0 +1,155 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.AccountDAO;
+import DAO.InMemoryStore;
+import DAO.MappedMessageTable;
+import DAO.MessageDAO;
+import DAO.Storage;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+public class InMemoryStorageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    Storage jdbc;
+    Storage memory;
+
+    /**
+     * Before every test, reset the database, add accounts and messages with gaps in the message_ids through the JDBC
+     * engine, and load an in-memory engine from the result.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        jdbc = Storage.jdbc();
+        AccountDAO accounts = jdbc.getAccountDAO();
+        MessageDAO messages = jdbc.getMessageDAO();
+        accounts.insertAccount("testuser2", "password");
+        accounts.insertAccount("testuser3", "password");
+        for (int i = 0; i < 30; i++) {
+            messages.createMessage(1 + i % 3, "message " + i, 1669947800 + i);
+        }
+        for (int message_id = 5; message_id <= 30; message_id += 7) {
+            messages.deleteMessageByMessageID(message_id);
+        }
+        memory = Storage.inMemory(InMemoryStore.loadFromDatabase());
+    }
+
+    /**
+     * Every listing and page should be the same on both engines, including cursors beyond either end of the ids.
+     */
+    @Test
+    public void listingsMatchTheJdbcEngine() {
+        MessageDAO expected = jdbc.getMessageDAO();
+        MessageDAO actual = memory.getMessageDAO();
+        Assert.assertEquals(expected.getAllMessages(), actual.getAllMessages());
+        int[] cursors = { Integer.MIN_VALUE, -1, 0, 1, 5, 12, 31, 40, Integer.MAX_VALUE };
+        for (Integer posted_by : new Integer[] { null, 1, 2, 3, 4 }) {
+            if (posted_by != null) {
+                Assert.assertEquals(expected.getAllMessageByUserID(posted_by), actual.getAllMessageByUserID(posted_by));
+            }
+            for (int after : cursors) {
+                for (int before : cursors) {
+                    for (int limit : new int[] { 1, 4, 100 }) {
+                        Assert.assertEquals(posted_by + " " + after + " " + before + " " + limit,
+                                expected.getMessagesPage(posted_by, after, before, limit),
+                                actual.getMessagesPage(posted_by, after, before, limit));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * New messages should continue the loaded ids, need an existing author, and stay in message_id order in their
+     * author's listing when created concurrently.
+     */
+    @Test
+    public void concurrentCreatesKeepTimelinesOrdered() throws Exception {
+        MessageDAO messages = memory.getMessageDAO();
+        Assert.assertNull(messages.createMessage(99, "no such author", 1669947900));
+        Assert.assertEquals(32, messages.createMessage(1, "after load", 1669947900).getMessage_id());
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 500; i++) {
+                    Assert.assertNotNull(messages.createMessage(2, "concurrent", 1669947900));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        List<Message> timeline = messages.getAllMessageByUserID(2);
+        for (int i = 1; i < timeline.size(); i++) {
+            Assert.assertTrue(timeline.get(i - 1).getMessage_id() < timeline.get(i).getMessage_id());
+        }
+        Assert.assertEquals(messages.getAllMessages().size() - messages.getAllMessageByUserID(1).size()
+                - messages.getAllMessageByUserID(3).size(), timeline.size());
+        Assert.assertTrue(memory.getAccountDAO().searchUsername("testuser3"));
+        Assert.assertNull(memory.getAccountDAO().insertAccount("testuser3", "password"));
+        Assert.assertEquals(4, memory.getAccountDAO().insertAccount("testuser4", "password").getAccount_id());
+    }
+
+    /**
+     * A store keeping its messages in memory-mapped segments, small enough here that records fill several of them,
+     * should read back every create, update and delete exactly as the heap store does, multi-byte text included.
+     * A service on it should not keep heap copies of its messages in its caches unless one is configured.
+     */
+    @Test
+    public void mappedMessageTableMatchesTheHeap() throws Exception {
+        Storage mapped = Storage.inMemory(InMemoryStore.loadFromDatabase(
+                new MappedMessageTable(folder.newFolder("segments"), 4096)));
+        for (Storage storage : new Storage[] { memory, mapped }) {
+            MessageDAO messages = storage.getMessageDAO();
+            for (int i = 0; i < 200; i++) {
+                messages.createMessage(1 + i % 3, "caf\u00e9 \u2603 \ud83d\ude00 " + i + " " + "x".repeat(i % 200),
+                        1669948000 + i);
+            }
+            for (int message_id = 40; message_id < 80; message_id++) {
+                messages.updateMessageByMessageID("updated " + message_id, message_id);
+            }
+            messages.deleteMessageByMessageID(41);
+            messages.deleteMessageByMessageID(230);
+        }
+        MessageDAO expected = memory.getMessageDAO();
+        MessageDAO actual = mapped.getMessageDAO();
+        Assert.assertEquals(expected.getAllMessages(), actual.getAllMessages());
+        for (int posted_by = 1; posted_by <= 3; posted_by++) {
+            Assert.assertEquals(expected.getAllMessageByUserID(posted_by), actual.getAllMessageByUserID(posted_by));
+            Assert.assertEquals(expected.getMessagesPage(posted_by, 50, 150, 20),
+                    actual.getMessagesPage(posted_by, 50, 150, 20));
+        }
+        Assert.assertEquals(expected.getMessageByMessageID(231), actual.getMessageByMessageID(231));
+        Assert.assertNull(actual.getMessageByMessageID(41));
+        Assert.assertNull(actual.deleteMessageByMessageID(41));
+        Assert.assertNull(actual.updateMessageByMessageID("no such message", 100000));
+
+        MessageService onMapped = new MessageService(actual);
+        Assert.assertNull(onMapped.getMessageCache());
+        Assert.assertNull(onMapped.getTimelineCache());
+        Assert.assertNotNull(new MessageService(expected).getTimelineCache());
+    }
+}
@@ -0,0 +1,78 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.LruCache;
+
+public class LruCacheTest {
+
+    /**
+     * A read-through get should call the loader once and serve the second read from the cache.
+     */
+    @Test
+    public void readThroughLoadsOnce() {
+        LruCache<Integer, String> cache = new LruCache<>(10, 0);
+        AtomicInteger loads = new AtomicInteger();
+
+        Assert.assertEquals("v1", cache.get(1, key -> { loads.incrementAndGet(); return "v" + key; }));
+        Assert.assertEquals("v1", cache.get(1, key -> { loads.incrementAndGet(); return "v" + key; }));
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    /**
+     * A null load result means "not found" and must not be cached.
+     */
+    @Test
+    public void nullIsNotCached() {
+        LruCache<Integer, String> cache = new LruCache<>(10, 0);
+        Assert.assertNull(cache.get(1, key -> null));
+        Assert.assertEquals("found", cache.get(1, key -> "found"));
+    }
+
+    /**
+     * The least recently used entry should be evicted once the cache is full.
+     */
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        LruCache<Integer, String> cache = new LruCache<>(2, 0);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.getIfPresent(1);
+        cache.put(3, "c");
+
+        Assert.assertEquals("a", cache.getIfPresent(1));
+        Assert.assertNull(cache.getIfPresent(2));
+        Assert.assertEquals("c", cache.getIfPresent(3));
+        Assert.assertEquals(1, cache.getEvictions());
+    }
+
+    /**
+     * Entries older than the time-to-live should no longer be returned.
+     */
+    @Test
+    public void expiresAfterTtl() throws InterruptedException {
+        LruCache<Integer, String> cache = new LruCache<>(10, 20);
+        cache.put(1, "a");
+        Assert.assertEquals("a", cache.getIfPresent(1));
+        Thread.sleep(40);
+        Assert.assertNull(cache.getIfPresent(1));
+        Assert.assertEquals(1, cache.getEvictions());
+    }
+
+    /**
+     * A load that raced with an invalidation of its segment must not put its possibly stale value in the cache.
+     */
+    @Test
+    public void loadRacingInvalidationIsNotCached() {
+        LruCache<Integer, String> cache = new LruCache<>(10, 0);
+        String loaded = cache.get(1, key -> {
+            cache.invalidate(key);
+            return "stale";
+        });
+        Assert.assertEquals("stale", loaded);
+        Assert.assertNull(cache.getIfPresent(1));
+    }
+}
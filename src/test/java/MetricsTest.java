@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+    }
+
+    // Value of the sample with exactly this name and labels, or -1 if it is missing
+    private static double sample(String metrics, String series) {
+        Matcher matcher = Pattern.compile("^" + Pattern.quote(series) + " (\\S+)$", Pattern.MULTILINE).matcher(metrics);
+        return matcher.find() ? Double.parseDouble(matcher.group(1)) : -1;
+    }
+
+    /**
+     * Sending requests and then an http request to GET localhost:8080/metrics
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text with the requests counted by route and status, their latency histograms, and
+     *  the DAO calls they made, and the username Bloom filter's size and observed false positive rate
+     */
+    @Test
+    public void metricsCountRequestsByRouteAndStatus() throws IOException, InterruptedException {
+        String before = send(request("/metrics")).body();
+        double ok = Math.max(0, sample(before, "http_requests_total{method=\"GET\",route=\"/messages/{message_id}\",status=\"200\"}"));
+        double rejected = Math.max(0, sample(before, "http_requests_total{method=\"PATCH\",route=\"/messages/{message_id}\",status=\"400\"}"));
+        double queries = Math.max(0, sample(before, "db_query_duration_seconds_count{dao=\"MessageDAO\",method=\"deleteMessageByMessageID\"}"));
+
+        send(request("/messages/1"));
+        send(request("/messages/1"));
+        send(request("/messages/1").method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"\"}")));
+        send(request("/messages/1").DELETE());
+
+        HttpResponse<String> response = send(request("/metrics"));
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+        String metrics = response.body();
+
+        Assert.assertEquals(ok + 2, sample(metrics, "http_requests_total{method=\"GET\",route=\"/messages/{message_id}\",status=\"200\"}"), 0);
+        Assert.assertEquals(rejected + 1, sample(metrics, "http_requests_total{method=\"PATCH\",route=\"/messages/{message_id}\",status=\"400\"}"), 0);
+        Assert.assertEquals(queries + 1, sample(metrics, "db_query_duration_seconds_count{dao=\"MessageDAO\",method=\"deleteMessageByMessageID\"}"), 0);
+        Assert.assertTrue(metrics.contains("# TYPE http_request_duration_seconds histogram"));
+        Assert.assertTrue(sample(metrics, "http_request_duration_seconds_bucket{method=\"GET\",route=\"/messages/{message_id}\",le=\"+Inf\"}") >= 2);
+        Assert.assertTrue(sample(metrics, "username_filter_memory_bytes") > 0);
+        double falsePositiveRate = sample(metrics, "username_filter_false_positive_rate");
+        Assert.assertTrue(falsePositiveRate >= 0 && falsePositiveRate <= 1);
+    }
+}
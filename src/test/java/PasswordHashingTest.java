@@ -0,0 +1,121 @@
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.InMemoryStore;
+import DAO.Storage;
+import Model.Account;
+import Service.AccountService;
+import Service.PasswordHasher;
+import Util.ConnectionUtil;
+import Util.Scrypt;
+
+public class PasswordHashingTest {
+
+    PasswordHasher hasher;
+
+    /**
+     * Before every test, reset the database, which holds testuser1 with its password in plaintext. The hasher uses a
+     * low cost so the tests stay fast.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        hasher = new PasswordHasher(4, 8, 1, 2, 16);
+    }
+
+    /**
+     * Scrypt should reproduce the test vectors of RFC 7914, section 12.
+     */
+    @Test
+    public void scryptMatchesRfc7914() {
+        Assert.assertEquals("fdbabe1c9d3472007856e7190d01e9fe7c6ad7cbc8237830e77376634b373162"
+                + "2eaf30d92e22a3886ff109279d9830dac727afb94a83ee6d8360cbdfa2cc0640",
+                hex(Scrypt.scrypt(bytes("password"), bytes("NaCl"), 1024, 8, 16, 64)));
+        Assert.assertEquals("7023bdcb3afd7348461c06cd81fd38ebfda8fbba904f8e3ea9b543f6545da1f2"
+                + "d5432955613f0fcf62d49705242a9af9e61e85dc0d651e40dfcf017b45575887",
+                hex(Scrypt.scrypt(bytes("pleaseletmein"), bytes("SodiumChloride"), 16384, 8, 1, 64)));
+    }
+
+    /**
+     * A hash should verify only its own password, carry a fresh salt each time, and ask to be redone once the cost
+     * changes; a plaintext password from before hashing should still verify, and malformed hashes should match nothing.
+     */
+    @Test
+    public void hashesVerifyTheirOwnPassword() {
+        String hash = hasher.hash("password");
+        Assert.assertTrue(hash, hash.startsWith("$scrypt$ln=4,r=8,p=1$"));
+        Assert.assertNotEquals(hash, hasher.hash("password"));
+        Assert.assertTrue(hasher.verify("password", hash));
+        Assert.assertFalse(hasher.verify("passwore", hash));
+        Assert.assertFalse(hasher.verify("", hash));
+        Assert.assertFalse(hasher.needsRehash(hash));
+        Assert.assertTrue(new PasswordHasher(5, 8, 1, 1, 0).needsRehash(hash));
+
+        Assert.assertTrue(hasher.verify("password", "password"));
+        Assert.assertFalse(hasher.verify("passwore", "password"));
+        Assert.assertTrue(hasher.needsRehash("password"));
+
+        Assert.assertFalse(hasher.verify("password", "$scrypt$ln=4,r=8,p=1$not base64!$"));
+        Assert.assertFalse(hasher.verify("password", hash.replace("ln=4", "ln=30")));
+        Assert.assertFalse(hasher.verify("password", hash.replace("ln=4,r=8", "ln=24,r=32")));
+        Assert.assertFalse(hasher.verify("password", hash.replace("ln=4,r=8", "ln=18,r=16")));
+        Assert.assertFalse(hasher.verify("password", hash.substring(0, hash.lastIndexOf('$'))));
+    }
+
+    /**
+     * A cost above 256 MB per hash should be refused when configured, as it is in a stored hash.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void costIsBounded() {
+        new PasswordHasher(18, 16, 1, 1, 0);
+    }
+
+    /**
+     * Registration should store a hash but answer with the password as given, and logins should work on both
+     * engines, upgrading the seeded plaintext password to a hash the first time it is used.
+     */
+    @Test
+    public void accountsAreStoredHashed() {
+        checkAccounts(Storage.jdbc().getAccountDAO());
+        ConnectionUtil.resetTestDatabase();
+        checkAccounts(Storage.inMemory(InMemoryStore.loadFromDatabase()).getAccountDAO());
+    }
+
+    private void checkAccounts(AccountDAO accounts) {
+        AccountService service = new AccountService(accounts, hasher);
+
+        Account registered = service.addAccountAsync(new Account("testuser2", "secret")).join();
+        Assert.assertEquals(new Account(2, "testuser2", "secret"), registered);
+        String stored = accounts.getAccountByUsername("testuser2").getPassword();
+        Assert.assertTrue(stored, stored.startsWith("$scrypt$"));
+        Assert.assertNull(service.addAccountAsync(new Account("testuser2", "secret")).join());
+        Assert.assertNull(service.addAccountAsync(new Account("testuser3", "abc")).join());
+        Assert.assertEquals(registered, service.loginAccountAsync(new Account("testuser2", "secret")).join());
+        Assert.assertNull(service.loginAccountAsync(new Account("testuser2", "secrets")).join());
+        Assert.assertNull(service.loginAccountAsync(new Account("nobody", "secret")).join());
+
+        Assert.assertEquals("password", accounts.getAccountByUsername("testuser1").getPassword());
+        Account seeded = new Account(1, "testuser1", "password");
+        Assert.assertEquals(seeded, service.loginAccountAsync(new Account("testuser1", "password")).join());
+        String upgraded = accounts.getAccountByUsername("testuser1").getPassword();
+        Assert.assertTrue(upgraded, upgraded.startsWith("$scrypt$"));
+        Assert.assertEquals(seeded, service.loginAccount(new Account("testuser1", "password")));
+        Assert.assertEquals(upgraded, accounts.getAccountByUsername("testuser1").getPassword());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder out = new StringBuilder();
+        for (byte b : bytes) {
+            out.append(String.format("%02x", b));
+        }
+        return out.toString();
+    }
+}
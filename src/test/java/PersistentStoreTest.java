@@ -0,0 +1,137 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import DAO.PersistentStore;
+import DAO.Storage;
+import DAO.WriteAheadLog;
+import Model.Account;
+import Model.Message;
+import Service.PasswordHasher;
+import Util.ConnectionUtil;
+
+public class PersistentStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    File directory;
+
+    /**
+     * Before every test, reset the database, which fills each new store directory with its one account and message.
+     */
+    @Before
+    public void setUp() throws IOException {
+        ConnectionUtil.resetTestDatabase();
+        directory = folder.newFolder("store");
+    }
+
+    private PersistentStore open() throws IOException {
+        return PersistentStore.open(directory, WriteAheadLog.SyncMode.ALWAYS, 10, 0, 0);
+    }
+
+    /**
+     * Writes made before and after a snapshot, including concurrent ones, should all be there after reopening, and
+     * the ids of deleted messages should not be handed out again.
+     */
+    @Test
+    public void reopenRecoversSnapshotAndLog() throws Exception {
+        List<Message> expected;
+        try (PersistentStore store = open()) {
+            Storage storage = Storage.inMemory(store.getStore());
+            MessageDAO messages = storage.getMessageDAO();
+            AccountDAO accounts = storage.getAccountDAO();
+            Assert.assertEquals(2, accounts.insertAccount("testuser2", "password").getAccount_id());
+            for (int i = 0; i < 10; i++) {
+                messages.createMessage(1 + i % 2, "before snapshot " + i, 1669947800 + i);
+            }
+            messages.updateMessageByMessageID("updated before snapshot", 3);
+            store.snapshot();
+            messages.deleteMessageByMessageID(4);
+            messages.updateMessageByMessageID("updated after snapshot", 5);
+
+            int threads = 4;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 100; i++) {
+                        Message created = messages.createMessage(2, "concurrent", 1669947900);
+                        messages.updateMessageByMessageID("concurrent update", created.getMessage_id());
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            // the newest message, 411
+            messages.deleteMessageByMessageID(messages.getAllMessages().size() + 1);
+            expected = messages.getAllMessages();
+        }
+
+        try (PersistentStore store = open()) {
+            Storage storage = Storage.inMemory(store.getStore());
+            MessageDAO messages = storage.getMessageDAO();
+            Assert.assertEquals(expected, messages.getAllMessages());
+            Assert.assertEquals("updated before snapshot", messages.getMessageByMessageID(3).getMessage_text());
+            Assert.assertEquals("updated after snapshot", messages.getMessageByMessageID(5).getMessage_text());
+            Assert.assertNull(messages.getMessageByMessageID(4));
+            Assert.assertEquals(404, messages.getAllMessageByUserID(2).size());
+            Assert.assertEquals(412, messages.createMessage(1, "after reopen", 1669948000).getMessage_id());
+            Account account = storage.getAccountDAO().getAccountByUsername("testuser2");
+            Assert.assertEquals(2, account.getAccount_id());
+            Assert.assertTrue(new PasswordHasher(4, 8, 1, 1, 0).verify("password", account.getPassword()));
+            Assert.assertNull(storage.getAccountDAO().insertAccount("testuser2", "password"));
+        }
+    }
+
+    /**
+     * A record cut short by a crash at the end of the log should be dropped, and the store should open and take new
+     * writes as if the write that tore had never happened.
+     */
+    @Test
+    public void tornTailIsTruncated() throws Exception {
+        List<Message> expected;
+        try (PersistentStore store = open()) {
+            MessageDAO messages = Storage.inMemory(store.getStore()).getMessageDAO();
+            for (int i = 0; i < 5; i++) {
+                messages.createMessage(1, "message " + i, 1669947800 + i);
+            }
+            expected = messages.getAllMessages();
+        }
+        File segment = new File(directory, String.format("wal-%020d.log", 1));
+        long length = segment.length();
+        try (FileOutputStream out = new FileOutputStream(segment, true)) {
+            // the length and CRC of a 40 byte record, but only part of its body
+            out.write(new byte[] { 0, 0, 0, 40, 1, 2, 3, 4, 2, 0, 0 });
+        }
+
+        try (PersistentStore store = open()) {
+            MessageDAO messages = Storage.inMemory(store.getStore()).getMessageDAO();
+            Assert.assertEquals(length, segment.length());
+            Assert.assertEquals(expected, messages.getAllMessages());
+            expected.add(messages.createMessage(1, "after recovery", 1669948000));
+        }
+        try (PersistentStore store = open()) {
+            Assert.assertEquals(expected, Storage.inMemory(store.getStore()).getMessageDAO().getAllMessages());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.QueryProfiler;
+
+public class QueryProfilerTest {
+    JdbcDataSource dataSource;
+    Connection keepAlive;
+    ByteArrayOutputStream slowLog;
+
+    /**
+     * Before every test, create a small table in a private in-memory database.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:profilertest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        keepAlive = dataSource.getConnection();
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS item");
+            statement.execute("CREATE TABLE item (id INT PRIMARY KEY, name VARCHAR(255))");
+            statement.execute("INSERT INTO item VALUES (1, 'one'), (2, 'two'), (3, 'three')");
+        }
+        slowLog = new ByteArrayOutputStream();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        keepAlive.close();
+    }
+
+    /**
+     * Queries and updates should be counted under their normalized SQL, with the rows they fetched or changed.
+     */
+    @Test
+    public void executionsAreAggregatedByNormalizedSql() throws SQLException {
+        QueryProfiler profiler = new QueryProfiler(-1, new PrintStream(slowLog));
+        try (Connection connection = profiler.wrap(dataSource.getConnection())) {
+            for (int i = 0; i < 2; i++) {
+                try (PreparedStatement select = connection.prepareStatement("SELECT * FROM item WHERE id <= ?")) {
+                    select.setInt(1, 2);
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            Assert.assertNotNull(rs.getString("name"));
+                        }
+                    }
+                }
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("UPDATE item SET name = 'uno' WHERE id = 1");
+                statement.executeUpdate("UPDATE item SET name = 'dos'   WHERE id = 2");
+            }
+        }
+
+        QueryProfiler.QueryStats select = profiler.getStatistics("SELECT * FROM item WHERE id <= ?");
+        Assert.assertEquals(2, select.getExecutions());
+        Assert.assertEquals(4, select.getRows());
+        Assert.assertTrue(select.getFetchNanos() > 0);
+
+        QueryProfiler.QueryStats update = profiler.getStatistics("UPDATE item SET name = ? WHERE id = ?");
+        Assert.assertEquals(2, update.getExecutions());
+        Assert.assertEquals(2, update.getRows());
+        Assert.assertEquals(0, profiler.getSlowQueryCount());
+        Assert.assertEquals(0, slowLog.size());
+    }
+
+    /**
+     * Executions over the threshold should be logged as JSON with their row count and parameter shapes, but never
+     * their parameter values.
+     */
+    @Test
+    public void slowQueriesAreLoggedWithParameterShapes() throws SQLException {
+        QueryProfiler profiler = new QueryProfiler(0, new PrintStream(slowLog));
+        try (Connection connection = profiler.wrap(dataSource.getConnection());
+                PreparedStatement insert = connection.prepareStatement("INSERT INTO item VALUES (?, ?)")) {
+            insert.setInt(1, 4);
+            insert.setString(2, "secret");
+            insert.addBatch();
+            insert.setInt(1, 5);
+            insert.setNull(2, java.sql.Types.VARCHAR);
+            insert.addBatch();
+            insert.executeBatch();
+        }
+
+        String log = new String(slowLog.toByteArray(), StandardCharsets.UTF_8);
+        Assert.assertEquals(1, profiler.getSlowQueryCount());
+        Assert.assertTrue(log, log.startsWith("{\"event\":\"slow_query\""));
+        Assert.assertTrue(log, log.contains("\"sql\":\"INSERT INTO item VALUES (?, ?)\""));
+        Assert.assertTrue(log, log.contains("\"rows\":2"));
+        Assert.assertTrue(log, log.contains("\"batch_size\":2"));
+        Assert.assertTrue(log, log.contains("\"parameters\":[\"INT\",\"NULL\"]"));
+        Assert.assertFalse(log, log.contains("secret"));
+    }
+}
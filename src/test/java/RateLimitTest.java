@@ -0,0 +1,86 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RateLimitTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with rate limits of a burst of 2 logins and 3
+     * message creations per client, and create a new webClient for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("ratelimit.enabled", "true");
+        System.setProperty("ratelimit.routes", "POST /login=0.1/2,POST /messages=0.1/3");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("ratelimit.enabled");
+        System.clearProperty("ratelimit.routes");
+    }
+
+    private HttpResponse<String> post(String path, String body, String token) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json");
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Sending three http requests to POST localhost:8080/login from the same address, then POST
+     * localhost:8080/messages four times with the session token of the first login
+     *
+     * Expected Response:
+     *  Status Code: 200 for the first two logins, then 429 with a Retry-After header. The message creations are limited
+     *  per account, so the first three get 200 and the fourth 429
+     */
+    @Test
+    public void requestsOverTheLimitGet429() throws IOException, InterruptedException {
+        String login = "{\"username\":\"testuser1\",\"password\":\"password\"}";
+        HttpResponse<String> first = post("/login", login, null);
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals(200, post("/login", login, null).statusCode());
+        HttpResponse<String> limited = post("/login", login, null);
+        Assert.assertEquals(429, limited.statusCode());
+        long retryAfter = Long.parseLong(limited.headers().firstValue("Retry-After").orElseThrow());
+        Assert.assertTrue(String.valueOf(retryAfter), retryAfter >= 1 && retryAfter <= 10);
+
+        String token = first.headers().firstValue("X-Session-Token").orElseThrow();
+        String message = "{\"posted_by\":1,\"message_text\":\"limited\",\"time_posted_epoch\":1669947792}";
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(200, post("/messages", message, token).statusCode());
+        }
+        Assert.assertEquals(429, post("/messages", message, token).statusCode());
+
+        HttpResponse<String> metrics = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics")).build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertTrue(metrics.body(),
+                metrics.body().contains("ratelimit_rejected_total{method=\"POST\",route=\"/login\"} 1.0"));
+    }
+}
@@ -0,0 +1,38 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.RateLimiter;
+
+public class RateLimiterTest {
+
+    /**
+     * A key should get its burst at once and then one request per interval, and idle buckets should be dropped once
+     * the limiter is full, with new keys sharing the overflow bucket while it cannot make room.
+     */
+    @Test
+    public void limiterRefillsAndEvicts() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(20, 2, 2);
+        Assert.assertEquals(0, limiter.acquire("a"));
+        Assert.assertEquals(0, limiter.acquire("a"));
+        long wait = limiter.acquire("a");
+        Assert.assertTrue(String.valueOf(wait), wait > 0 && wait <= 50_000_000L);
+        Assert.assertEquals(0, limiter.acquire("b"));
+        Assert.assertEquals(2, limiter.size());
+
+        Thread.sleep(60);
+        Assert.assertEquals(0, limiter.acquire("a"));
+        Assert.assertTrue(limiter.acquire("a") > 0);
+
+        Thread.sleep(150);
+        Assert.assertEquals(0, limiter.acquire("c"));
+        Assert.assertEquals(1, limiter.size());
+        Assert.assertEquals(2, limiter.getEvicted());
+
+        RateLimiter full = new RateLimiter(0.1, 1, 1);
+        Assert.assertEquals(0, full.acquire("a"));
+        Assert.assertEquals(0, full.acquire("b"));
+        Assert.assertTrue(full.acquire("c") > 0);
+        Assert.assertEquals(2, full.getOverflowed());
+        Assert.assertEquals(1, full.size());
+    }
+}
@@ -0,0 +1,161 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesPageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Four more messages are posted so that there are five in total.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        postMessages();
+    }
+
+    // Posts messages 2 to 5 for account 1; the in-memory engine starts empty with each app, so this runs again
+    // after a restart
+    private void postMessages() throws IOException, InterruptedException {
+        for (int i = 2; i <= 5; i++) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"message " + i + "\", " +
+                            "\"time_posted_epoch\": " + (1669947792 + i) + " }"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Message> messages(HttpResponse<String> response) throws IOException {
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?limit=2 and following the next cursor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: pages of at most two messages in message_id order, with X-Next-Cursor until the last page
+     */
+    @Test
+    public void getAllMessagesFollowsNextCursor() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages?limit=2");
+        Assert.assertEquals(200, first.statusCode());
+        List<Message> firstPage = messages(first);
+        Assert.assertEquals(2, firstPage.size());
+        Assert.assertEquals(1, firstPage.get(0).getMessage_id());
+        Assert.assertEquals(2, firstPage.get(1).getMessage_id());
+        Assert.assertEquals("2", first.headers().firstValue("X-Next-Cursor").orElse(null));
+
+        HttpResponse<String> second = get("/messages?limit=2&after=2");
+        List<Message> secondPage = messages(second);
+        Assert.assertEquals(3, secondPage.get(0).getMessage_id());
+        Assert.assertEquals(4, secondPage.get(1).getMessage_id());
+        Assert.assertEquals("3", second.headers().firstValue("X-Prev-Cursor").orElse(null));
+
+        HttpResponse<String> last = get("/messages?limit=2&after=4");
+        List<Message> lastPage = messages(last);
+        Assert.assertEquals(1, lastPage.size());
+        Assert.assertEquals(5, lastPage.get(0).getMessage_id());
+        Assert.assertFalse(last.headers().firstValue("X-Next-Cursor").isPresent());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages?limit=2&before=5
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the two messages just before message 5, oldest first
+     */
+    @Test
+    public void getMessagesForUserBeforeCursor() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/accounts/1/messages?limit=2&before=5");
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> page = messages(response);
+        Assert.assertEquals(2, page.size());
+        Assert.assertEquals(new Message(3, 1, "message 3", 1669947795), page.get(0));
+        Assert.assertEquals(new Message(4, 1, "message 4", 1669947796), page.get(1));
+        Assert.assertEquals("3", response.headers().firstValue("X-Prev-Cursor").orElse(null));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages without paging parameters, with api.page.defaultLimit=2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: only the first two messages, with X-Next-Cursor pointing at the rest
+     */
+    @Test
+    public void getAllMessagesAppliesDefaultLimit() throws IOException, InterruptedException {
+        app.stop();
+        System.setProperty("api.page.defaultLimit", "2");
+        try {
+            app = new SocialMediaController().startAPI();
+            app.start(8080);
+            Thread.sleep(1000);
+            postMessages();
+            HttpResponse<String> response = get("/messages");
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertEquals(2, messages(response).size());
+            Assert.assertEquals("2", response.headers().firstValue("X-Next-Cursor").orElse(null));
+        }
+        finally {
+            System.clearProperty("api.page.defaultLimit");
+        }
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with an out of range limit
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getAllMessagesInvalidLimit() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages?limit=0").statusCode());
+        Assert.assertEquals(400, get("/messages?limit=abc").statusCode());
+    }
+}
@@ -0,0 +1,43 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Service.SessionStore;
+
+public class SessionStoreTest {
+
+    /**
+     * A session should stay valid while it keeps being used within its time to live, and expire once it is not.
+     */
+    @Test
+    public void expirySlidesWithUse() throws InterruptedException {
+        SessionStore sessions = new SessionStore(10, 200);
+        String token = sessions.create(7);
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(100);
+            Assert.assertEquals(Integer.valueOf(7), sessions.authenticate(token));
+        }
+        Thread.sleep(300);
+        Assert.assertNull(sessions.authenticate(token));
+        Assert.assertEquals(1, sessions.getExpired());
+        Assert.assertNull(sessions.authenticate("unknown"));
+    }
+
+    /**
+     * A full store should make room by dropping the session used longest ago, and tokens should not repeat.
+     */
+    @Test
+    public void fullStoreEvictsLeastRecentlyUsed() {
+        SessionStore sessions = new SessionStore(4, 60000);
+        String[] tokens = new String[4];
+        for (int i = 0; i < 4; i++) {
+            tokens[i] = sessions.create(i + 1);
+        }
+        Assert.assertEquals(Integer.valueOf(1), sessions.authenticate(tokens[0]));
+        String fifth = sessions.create(5);
+        Assert.assertNotEquals(tokens[0], fifth);
+        Assert.assertEquals(Integer.valueOf(1), sessions.authenticate(tokens[0]));
+        Assert.assertNull(sessions.authenticate(tokens[1]));
+        Assert.assertEquals(Integer.valueOf(5), sessions.authenticate(fifth));
+        Assert.assertEquals(4, sessions.size());
+    }
+}
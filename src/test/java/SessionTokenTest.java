@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SessionTokenTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> send(String method, String path, String body, String token)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json");
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String login(String username) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "/login",
+                "{\"username\":\"" + username + "\",\"password\":\"password\"}", null);
+        Assert.assertEquals(200, response.statusCode());
+        return response.headers().firstValue("X-Session-Token").orElseThrow();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/login, then POST localhost:8080/messages with the returned token
+     * and no posted_by
+     *
+     * Expected Response:
+     *  Status Code: 200 for the login, with the account as the body and the token in X-Session-Token, and 200 for the
+     *  message, posted by the token's account
+     */
+    @Test
+    public void loginTokenAuthenticatesMessageWrites() throws IOException, InterruptedException {
+        HttpResponse<String> loginResponse = send("POST", "/login",
+                "{\"username\":\"testuser1\",\"password\":\"password\"}", null);
+        Assert.assertEquals(new Account(1, "testuser1", "password"),
+                objectMapper.readValue(loginResponse.body(), Account.class));
+        String token = loginResponse.headers().firstValue("X-Session-Token").orElseThrow();
+
+        HttpResponse<String> created = send("POST", "/messages",
+                "{\"message_text\":\"with a token\",\"time_posted_epoch\":1669947800}", token);
+        Assert.assertEquals(200, created.statusCode());
+        Message message = objectMapper.readValue(created.body(), Message.class);
+        Assert.assertEquals(new Message(2, 1, "with a token", 1669947800), message);
+
+        HttpResponse<String> updated = send("PATCH", "/messages/2", "{\"message_text\":\"updated\"}", token);
+        Assert.assertEquals(200, updated.statusCode());
+        HttpResponse<String> batch = send("POST", "/messages/batch",
+                "[{\"message_text\":\"one\",\"time_posted_epoch\":1669947801}]", token);
+        Assert.assertEquals(200, batch.statusCode());
+        Assert.assertTrue(batch.body().contains("\"status\":200"));
+
+        HttpResponse<String> deleted = send("DELETE", "/messages/2", null, token);
+        Assert.assertEquals(200, deleted.statusCode());
+        Assert.assertEquals(new Message(2, 1, "updated", 1669947800), objectMapper.readValue(deleted.body(), Message.class));
+    }
+
+    /**
+     * Sending message writes with an unknown token, a token that was logged out, and a token of another account
+     *
+     * Expected Response:
+     *  Status Code: 401 for the unknown and logged out tokens, 403 for writes to another account's messages
+     */
+    @Test
+    public void invalidAndForeignTokensAreRejected() throws IOException, InterruptedException {
+        String body = "{\"posted_by\":1,\"message_text\":\"hello\",\"time_posted_epoch\":1669947800}";
+        Assert.assertEquals(401, send("POST", "/messages", body, "not-a-token").statusCode());
+
+        Assert.assertEquals(200, send("POST", "/register",
+                "{\"username\":\"testuser2\",\"password\":\"password\"}", null).statusCode());
+        String other = login("testuser2");
+        Assert.assertEquals(403, send("POST", "/messages", body, other).statusCode());
+        Assert.assertEquals(403, send("PATCH", "/messages/1", "{\"message_text\":\"mine now\"}", other).statusCode());
+        Assert.assertEquals(403, send("DELETE", "/messages/1", null, other).statusCode());
+        Assert.assertEquals("test message 1", objectMapper.readValue(
+                send("GET", "/messages/1", null, null).body(), Message.class).getMessage_text());
+
+        Assert.assertEquals(204, send("POST", "/logout", null, other).statusCode());
+        Assert.assertEquals(401, send("POST", "/messages",
+                "{\"message_text\":\"after logout\",\"time_posted_epoch\":1669947800}", other).statusCode());
+    }
+}
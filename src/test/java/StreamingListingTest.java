@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import DAO.JdbcMessageDAO;
+import DAO.MessageDAO;
+import Util.AppConfig;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class StreamingListingTest {
+
+    private static final int MESSAGES = 100_000;
+
+    MessageDAO messageDAO;
+
+    /**
+     * Before every test, reset the database and fill the message table with MESSAGES messages of testuser1.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        ConnectionUtil.resetTestDatabase();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO message(posted_by, message_text, time_posted_epoch) "
+                             + "SELECT 1, 'streamed message ' || X, 1669947800 + X FROM SYSTEM_RANGE(1, ?)")) {
+            insert.setInt(1, MESSAGES);
+            insert.executeUpdate();
+        }
+        messageDAO = new JdbcMessageDAO();
+    }
+
+    /**
+     * Streaming a large table should hand over the first row long before the last, rather than after the whole result
+     * has been built, and should leave the connection's session as it found it.
+     */
+    @Test
+    public void firstRowArrivesBeforeTheQueryFinishes() throws IOException, SQLException {
+        // once through first, so the measured run is not the one loading classes and pages
+        messageDAO.forEachMessage(null, message -> { });
+        long started = System.nanoTime();
+        long[] firstRow = new long[1];
+        int[] rows = new int[1];
+        messageDAO.forEachMessage(null, message -> {
+            if (rows[0]++ == 0) {
+                firstRow[0] = System.nanoTime() - started;
+            }
+        });
+        long total = System.nanoTime() - started;
+        Assert.assertEquals(MESSAGES + 1, rows[0]);
+        Assert.assertTrue("first row after " + firstRow[0] / 1_000_000 + " ms of " + total / 1_000_000 + " ms",
+                firstRow[0] < total / 10);
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement query = connection.prepareStatement(
+                     "SELECT SETTING_VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE SETTING_NAME = 'LAZY_QUERY_EXECUTION'");
+             ResultSet rs = query.executeQuery()) {
+            Assert.assertTrue(!rs.next() || !Boolean.parseBoolean(rs.getString(1)));
+        }
+    }
+
+    /**
+     * A query that fails partway through should throw, not end quietly as if every row had been streamed.
+     */
+    @Test
+    public void failedQueryThrows() throws SQLException {
+        int[] rows = new int[1];
+        try {
+            messageDAO.forEachMessage(null, message -> {
+                if (rows[0]++ == 0) {
+                    abortStreamingSession();
+                }
+            });
+            Assert.fail("streamed " + rows[0] + " rows of an aborted query");
+        }
+        catch (IOException e) {
+            Assert.assertTrue(String.valueOf(rows[0]), rows[0] < MESSAGES + 1);
+        }
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with streamed, unpaged listings, and aborting the query after
+     * the first part of the response has arrived
+     *
+     * Expected Response:
+     *  Status Code: 200, then the connection is cut before the end of the body, rather than the array being closed
+     *  early as if the listing were complete
+     */
+    @Test
+    public void failedStreamAbortsTheResponse() throws IOException, InterruptedException {
+        // the memory and persistent engines stream from the heap, so there is no query session to abort
+        Assume.assumeTrue(AppConfig.getString("storage.engine", "jdbc").equals("jdbc"));
+        System.setProperty("api.json.streaming", "true");
+        System.setProperty("api.page.defaultLimit", "0");
+        Javalin app = new SocialMediaController().startAPI();
+        try {
+            app.start(8080);
+            Thread.sleep(1000);
+            HttpResponse<InputStream> response = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages"))
+                            .header("Accept-Encoding", "identity").build(),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            Assert.assertEquals(200, response.statusCode());
+            try (InputStream body = response.body()) {
+                byte[] buffer = new byte[65536];
+                Assert.assertTrue(body.read(buffer) > 0);
+                abortStreamingSession();
+                long read = 0;
+                int n;
+                while ((n = body.read(buffer)) > 0) {
+                    read += n;
+                }
+                Assert.fail("the response ended normally after " + read + " more bytes");
+            }
+            catch (IOException e) {
+                // the connection was cut
+            }
+        }
+        finally {
+            app.stop();
+            System.clearProperty("api.json.streaming");
+            System.clearProperty("api.page.defaultLimit");
+        }
+    }
+
+    // Closes the session running the streaming query, the only other session, from a new one
+    private static void abortStreamingSession() {
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement abort = connection.prepareStatement("SELECT ABORT_SESSION(SESSION_ID) "
+                     + "FROM INFORMATION_SCHEMA.SESSIONS WHERE SESSION_ID <> SESSION_ID()");
+             ResultSet rs = abort.executeQuery()) {
+            Assert.assertTrue(rs.next() && rs.getBoolean(1));
+        }
+        catch (SQLException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Model.Message;
+import Service.TimelineCache;
+
+public class TimelineCacheTest {
+
+    private List<Message> timelineOf(int... ids) {
+        List<Message> messages = new ArrayList<>();
+        for (int id : ids) {
+            messages.add(new Message(id, 1, "message " + id, 1669947792 + id));
+        }
+        return messages;
+    }
+
+    /**
+     * A timeline should be loaded once, sorted by message_id, and then served from memory, the cold read counting a
+     * single miss.
+     */
+    @Test
+    public void loadsOnceAndSorts() {
+        TimelineCache cache = new TimelineCache(10, 100);
+        AtomicInteger loads = new AtomicInteger();
+
+        List<Message> first = cache.get(1, id -> { loads.incrementAndGet(); return timelineOf(3, 1, 2); });
+        List<Message> second = cache.get(1, id -> { loads.incrementAndGet(); return timelineOf(); });
+
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(timelineOf(1, 2, 3), first);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, cache.getCache().getMisses());
+        Assert.assertEquals(1, cache.getCache().getHits());
+    }
+
+    /**
+     * Appends and removes should patch a cached timeline in place of a reload, and be idempotent.
+     */
+    @Test
+    public void patchesCachedTimeline() {
+        TimelineCache cache = new TimelineCache(10, 100);
+        cache.get(1, id -> timelineOf(1, 2));
+
+        Message added = new Message(5, 1, "message 5", 1669947797);
+        cache.append(added);
+        cache.append(added);
+        Assert.assertEquals(timelineOf(1, 2, 5), cache.getIfPresent(1));
+
+        cache.remove(new Message(2, 1, "message 2", 1669947794));
+        Assert.assertEquals(timelineOf(1, 5), cache.getIfPresent(1));
+    }
+
+    /**
+     * Patching an account whose timeline is not cached must not load it, and must stop an in-flight load from being
+     * cached, since that load may not include the new message.
+     */
+    @Test
+    public void patchDuringLoadIsNotLost() {
+        TimelineCache cache = new TimelineCache(10, 100);
+        List<Message> loaded = cache.get(1, id -> {
+            cache.append(new Message(3, 1, "message 3", 1669947795));
+            return timelineOf(1, 2);
+        });
+        Assert.assertEquals(timelineOf(1, 2), loaded);
+        Assert.assertNull(cache.getIfPresent(1));
+    }
+
+    /**
+     * A load that failed should not be cached, so that the next read loads the timeline again instead of serving an
+     * empty timeline that later appends build on.
+     */
+    @Test
+    public void failedLoadIsNotCached() {
+        TimelineCache cache = new TimelineCache(10, 100);
+        Assert.assertNull(cache.get(1, id -> null));
+        Assert.assertNull(cache.getIfPresent(1));
+
+        cache.append(new Message(3, 1, "message 3", 1669947795));
+        Assert.assertEquals(timelineOf(1, 2), cache.get(1, id -> timelineOf(1, 2)));
+        Assert.assertEquals(timelineOf(1, 2), cache.getIfPresent(1));
+    }
+
+    /**
+     * Timelines longer than the limit are returned but not cached.
+     */
+    @Test
+    public void longTimelinesAreNotCached() {
+        TimelineCache cache = new TimelineCache(10, 2);
+        Assert.assertEquals(3, cache.get(1, id -> timelineOf(1, 2, 3)).size());
+        Assert.assertNull(cache.getIfPresent(1));
+    }
+}